@@ -0,0 +1,175 @@
+package loa;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+import ucb.util.CommandArgs;
+
+/** Timings of the evaluation functions, in evaluations per second, over a
+ *  fixed set of positions taken from random games.  Each evaluation is
+ *  timed both alone, on a position set up from scratch, and as it is used
+ *  at the leaves of a search: make a move, evaluate, retract it.
+ *  @author JuKyung Choi
+ */
+class Benchmark {
+
+    /** A benchmark over POSITIONS positions chosen with a generator seeded
+     *  by SEED. */
+    Benchmark(int positions, long seed) {
+        Random random = new Random(seed);
+        while (_boards.size() < positions) {
+            Board board = new Board();
+            for (int k = random.nextInt(MAX_PLIES); k > 0; k -= 1) {
+                ArrayList<Move> moves = new ArrayList<>();
+                for (Move move : board) {
+                    moves.add(move);
+                }
+                if (moves.isEmpty() || board.gameOver()) {
+                    break;
+                }
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+            if (!board.gameOver()) {
+                _boards.add(new Board(board.snapshot()));
+            }
+        }
+    }
+
+    /** Write the timings to OUT. */
+    void run(PrintStream out) {
+        out.printf("%-24s %14s%n", "evaluation", "evals/s");
+        time(out, "classic", () -> {
+            double sum = 0;
+            for (Board board : _boards) {
+                sum += MachinePlayer.eval(board, board.turn());
+            }
+            return sum;
+        }, _boards.size());
+        NeuralEvaluator neural =
+            new NeuralEvaluator(NeuralEvaluator.Network.standard());
+        time(out, "nnue refresh", () -> {
+            double sum = 0;
+            for (Board board : _boards) {
+                neural.boardReset(board);
+                sum += neural.evaluate(board.turn());
+            }
+            return sum;
+        }, _boards.size());
+        PatternEvaluator pattern =
+            new PatternEvaluator(PatternEvaluator.standard());
+        time(out, "pattern refresh", () -> {
+            double sum = 0;
+            for (Board board : _boards) {
+                pattern.boardReset(board);
+                sum += pattern.evaluate(board.turn());
+            }
+            return sum;
+        }, _boards.size());
+        int leaves = 0;
+        for (Board board : _boards) {
+            for (Iterator<Move> i = board.legalMoves(); i.hasNext();
+                 i.next()) {
+                leaves += 1;
+            }
+        }
+        time(out, "classic make/eval", () -> {
+            double sum = 0;
+            for (Board board : _boards) {
+                Piece side = board.turn();
+                for (Move move : board) {
+                    board.makeMove(move);
+                    sum += MachinePlayer.eval(board, side);
+                    board.retract();
+                }
+            }
+            return sum;
+        }, leaves);
+        LeafBatch batch = new LeafBatch();
+        time(out, "classic batch", () -> {
+            double sum = 0;
+            for (Board board : _boards) {
+                batch.clear();
+                for (Move move : board) {
+                    batch.add(board, move);
+                }
+                batch.evaluate();
+                for (int k = 0; k < batch.size(); k += 1) {
+                    sum += batch.value(k);
+                }
+            }
+            return sum;
+        }, leaves);
+        time(out, "nnue make/eval", () -> incremental(neural), leaves);
+        time(out, "pattern make/eval", () -> incremental(pattern), leaves);
+        out.flush();
+    }
+
+    /** Return the sum of the values given by EVALUATOR, listening to each
+     *  of my boards in turn, after each move from it. */
+    private double incremental(Evaluator evaluator) {
+        double sum = 0;
+        for (Board board : _boards) {
+            Piece side = board.turn();
+            board.setListener(evaluator);
+            for (Move move : board) {
+                board.makeMove(move);
+                sum += evaluator.evaluate(side);
+                board.retract();
+            }
+            board.setListener(null);
+        }
+        return sum;
+    }
+
+    /** A timed piece of work, returning a value so that it cannot be
+     *  optimized away. */
+    private interface Task {
+        /** Do the work, and return its result. */
+        double run();
+    }
+
+    /** Time TASK, which does COUNT evaluations, after warming it up, and
+     *  report the rate on OUT labeled LABEL. */
+    private void time(PrintStream out, String label, Task task, int count) {
+        for (int k = 0; k < WARMUP; k += 1) {
+            _sink += task.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int k = 0; k < TRIALS; k += 1) {
+            long start = System.nanoTime();
+            _sink += task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        out.printf("%-24s %14.0f%n", label,
+                   count * 1e9 / Math.max(1, best));
+    }
+
+    /** Run the benchmark as directed by the command-line options --bench
+     *  (the number of positions, by default DEFAULT_POSITIONS) and --seed
+     *  in OPTIONS, and exit. */
+    static void main(CommandArgs options) {
+        String positions = options.getFirst("--bench");
+        new Benchmark(positions == null || positions.isEmpty()
+                      ? DEFAULT_POSITIONS : Integer.parseInt(positions),
+                      options.contains("--seed")
+                      ? options.getLong("--seed") : 0).run(System.out);
+        System.exit(0);
+    }
+
+    /** Default number of positions. */
+    static final int DEFAULT_POSITIONS = 2000;
+    /** Largest number of random plies used to make a position. */
+    private static final int MAX_PLIES = 40;
+    /** Number of untimed runs of each task. */
+    private static final int WARMUP = 3;
+    /** Number of timed runs of each task, of which the fastest counts. */
+    private static final int TRIALS = 5;
+
+    /** The positions. */
+    private final ArrayList<Board> _boards = new ArrayList<>();
+    /** Accumulated results of the tasks. */
+    private double _sink;
+
+}
@@ -0,0 +1,95 @@
+package loa;
+
+/** A Bloom filter of 64-bit keys (such as those of Board.key()), held off
+ *  the Java heap (see DirectLongArray).  It answers whether a key might
+ *  have been added, with no false negatives and a false-positive rate
+ *  that depends on its size and fill.  The keys must already be well
+ *  mixed: the K bit positions of a key are derived from its two halves by
+ *  double hashing, with no further hashing.
+ *  @author JuKyung Choi
+ */
+final class BloomFilter {
+
+    /** A filter of at least BITS bits (rounded up to a power of 2), setting
+     *  HASHES bits per key. */
+    BloomFilter(long bits, int hashes) {
+        if (bits <= 0 || bits > MAX_BITS || hashes <= 0) {
+            throw new IllegalArgumentException("bad Bloom filter size");
+        }
+        long size = Long.highestOneBit(bits);
+        if (size < bits) {
+            size <<= 1;
+        }
+        size = Math.max(size, Long.SIZE);
+        _mask = size - 1;
+        _hashes = hashes;
+        _words = new DirectLongArray(size / Long.SIZE);
+    }
+
+    /** Return a filter sized to hold KEYS keys with a false-positive rate
+     *  of about RATE (0 < RATE < 1). */
+    static BloomFilter forKeys(long keys, double rate) {
+        if (!(rate > 0 && rate < 1)) {
+            throw new IllegalArgumentException("bad false-positive rate");
+        }
+        double ln2 = Math.log(2);
+        long bits =
+            (long) Math.ceil(-Math.max(1, keys) * Math.log(rate) / ln2 / ln2);
+        int hashes = (int) Math.max(1, Math.round(-Math.log(rate) / ln2));
+        return new BloomFilter(Math.min(bits, MAX_BITS), hashes);
+    }
+
+    /** Add KEY.  Return true iff it was not already possibly present (that
+     *  is, iff this changed the filter). */
+    boolean add(long key) {
+        long h = key, step = Long.rotateLeft(key, Integer.SIZE) | 1;
+        boolean changed = false;
+        for (int i = 0; i < _hashes; i += 1, h += step) {
+            long bit = h & _mask, word = _words.get(bit >>> 6),
+                mask = 1L << bit;
+            if ((word & mask) == 0) {
+                _words.set(bit >>> 6, word | mask);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /** Return false if KEY has certainly not been added. */
+    boolean mightContain(long key) {
+        long h = key, step = Long.rotateLeft(key, Integer.SIZE) | 1;
+        for (int i = 0; i < _hashes; i += 1, h += step) {
+            long bit = h & _mask;
+            if ((_words.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return my number of bits. */
+    long bits() {
+        return _mask + 1;
+    }
+
+    /** Return the number of bits I set per key. */
+    int hashes() {
+        return _hashes;
+    }
+
+    /** Return the number of bytes I occupy off the heap. */
+    long bytes() {
+        return _words.bytes();
+    }
+
+    /** Largest number of bits in a filter (32 GB). */
+    static final long MAX_BITS = 1L << 38;
+
+    /** My bits, 64 to a word. */
+    private final DirectLongArray _words;
+    /** Mask of a bit number (my number of bits less 1). */
+    private final long _mask;
+    /** Number of bits set per key. */
+    private final int _hashes;
+
+}
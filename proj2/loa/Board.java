@@ -2,7 +2,6 @@
 package loa;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Formatter;
 import java.util.NoSuchElementException;
@@ -50,15 +49,62 @@ class Board implements Iterable<Move> {
         copyFrom(board);
     }
 
+    /** A Board in POSITION, with no moves made. */
+    Board(Position position) {
+        initialize(position);
+    }
+
     /** Set my state to CONTENTS with SIDE to move. */
     void initialize(Piece[][] contents, Piece side) {
         _moves.clear();
+        _edited = false;
+        _statusKnown = false;
+        _black = _white = 0;
         for (int i = 0; i < M; i += 1) {
             for (int j = 0; j < M; j += 1) {
                 _content[i][j] = contents[i][j];
+                if (contents[i][j] == BP) {
+                    _black |= 1L << (i * M + j);
+                } else if (contents[i][j] == WP) {
+                    _white |= 1L << (i * M + j);
+                }
             }
         }
         _turn = side;
+        if (_listener != null) {
+            _listener.boardReset(this);
+        }
+    }
+
+    /** Set my state to POSITION, with no moves made. */
+    void initialize(Position position) {
+        Piece[][] contents = new Piece[M][M];
+        for (int r = 1; r <= M; r += 1) {
+            for (int c = 1; c <= M; c += 1) {
+                contents[r - 1][c - 1] = position.get(c, r);
+            }
+        }
+        initialize(contents, position.turn());
+    }
+
+    /** Set my state to the position denoted by SPEC in position notation
+     *  (see Notation), with no moves made.  Throws
+     *  IllegalArgumentException if SPEC is malformed. */
+    void initialize(String spec) {
+        initialize(Notation.parsePosition(spec));
+    }
+
+    /** Return my contents and side to move in position notation (see
+     *  Notation). */
+    String positionString() {
+        StringBuilder out = new StringBuilder();
+        Notation.formatPosition(snapshot(), out);
+        return out.toString();
+    }
+
+    /** Return an immutable snapshot of my contents and side to move. */
+    Position snapshot() {
+        return new Position(_black, _white, _turn);
     }
 
     /** Set me to the initial configuration. */
@@ -73,12 +119,32 @@ class Board implements Iterable<Move> {
         }
         _moves.clear();
         _moves.addAll(board._moves);
+        _edited = board._edited;
         _turn = board._turn;
+        _black = board._black;
+        _white = board._white;
+        _statusKnown = board._statusKnown;
+        _blackContiguous = board._blackContiguous;
+        _whiteContiguous = board._whiteContiguous;
         for (int i = 0; i < M; i++) {
             for (int j = 0; j < M; j++) {
                 this._content[i][j] = board._content[i][j];
             }
         }
+        if (_listener != null) {
+            _listener.boardReset(this);
+        }
+    }
+
+    /** Report every change to my contents to LISTENER (replacing any
+     *  previous listener), or to no one if LISTENER is null.  LISTENER is
+     *  first told of my current contents.  Copies of me do not inherit
+     *  LISTENER. */
+    void setListener(BoardListener listener) {
+        _listener = listener;
+        if (listener != null) {
+            listener.boardReset(this);
+        }
     }
 
     /**
@@ -103,10 +169,11 @@ class Board implements Iterable<Move> {
      * {@link get(String)}.
      */
     static int col(String sq) {
-        if (!ROW_COL.matcher(sq).matches()) {
+        int c = Notation.col(sq);
+        if (c < 0) {
             throw new IllegalArgumentException("bad square designator");
         }
-        return sq.charAt(0) - 'a' + 1;
+        return c;
     }
 
     /**
@@ -114,10 +181,11 @@ class Board implements Iterable<Move> {
      * {@link get(String)}.
      */
     static int row(String sq) {
-        if (!ROW_COL.matcher(sq).matches()) {
+        int r = Notation.row(sq);
+        if (r < 0) {
             throw new IllegalArgumentException("bad square designator");
         }
-        return sq.charAt(1) - '0';
+        return r;
     }
 
     /**
@@ -125,10 +193,13 @@ class Board implements Iterable<Move> {
      * move, if it is not null.
      */
     void set(int c, int r, Piece v, Piece next) {
-        _content[r - 1][c - 1] = v;
+        put(c, r, v);
         if (next != null) {
             _turn = next;
         }
+        if (!_moves.isEmpty()) {
+            _edited = true;
+        }
     }
 
     /** Set the square at column C, row R to V. */
@@ -136,6 +207,35 @@ class Board implements Iterable<Move> {
         set(c, r, v, null);
     }
 
+    /** Return true iff my contents were changed by set since the first of
+     *  the moves made, so that my moves do not lead from the position
+     *  found by retracting them to my current one. */
+    boolean edited() {
+        return _edited;
+    }
+
+    /** Set the square at column C, row R to V, without any other change
+     *  to my state. */
+    private void put(int c, int r, Piece v) {
+        Piece old = _content[r - 1][c - 1];
+        if (old != v) {
+            int sq = Lines.index(c, r);
+            long bit = 1L << sq;
+            _content[r - 1][c - 1] = v;
+            _black &= ~bit;
+            _white &= ~bit;
+            if (v == BP) {
+                _black |= bit;
+            } else if (v == WP) {
+                _white |= bit;
+            }
+            _statusKnown = false;
+            if (_listener != null) {
+                _listener.squareChanged(sq, old, v);
+            }
+        }
+    }
+
     /** Assuming isLegal(MOVE), make MOVE. */
     void makeMove(Move move) {
         assert isLegal(move);
@@ -144,10 +244,10 @@ class Board implements Iterable<Move> {
         int c0 = move.getCol0(), c1 = move.getCol1();
         int r0 = move.getRow0(), r1 = move.getRow1();
         if (replaced != EMP) {
-            set(c1, r1, EMP);
+            put(c1, r1, EMP);
         }
-        set(c1, r1, move.movedPiece());
-        set(c0, r0, EMP);
+        put(c1, r1, move.movedPiece());
+        put(c0, r0, EMP);
         _turn = _turn.opposite();
     }
 
@@ -162,11 +262,49 @@ class Board implements Iterable<Move> {
         int c0 = move.getCol0(), c1 = move.getCol1();
         int r0 = move.getRow0(), r1 = move.getRow1();
         Piece movedPiece = move.movedPiece();
-        set(c1, r1, replaced);
-        set(c0, r0, movedPiece);
+        put(c1, r1, replaced);
+        put(c0, r0, movedPiece);
         _turn = _turn.opposite();
+        if (_moves.isEmpty()) {
+            _edited = false;
+        }
+    }
+
+    /** Return the set of squares (as a bit mask, see Lines) holding SIDE's
+     *  pieces. */
+    long pieces(Piece side) {
+        return side == BP ? _black : _white;
+    }
+
+    /** Return the set of occupied squares (as a bit mask, see Lines). */
+    long occupied() {
+        return _black | _white;
+    }
+
+    /** Return a 64-bit hash key for this position (contents and side to
+     *  move, but not history). */
+    long key() {
+        return key(_black, _white, _turn);
+    }
+
+    /** Return the 64-bit hash key of the position with BLACK and WHITE
+     *  (bit masks as in Lines) and TURN to move. */
+    static long key(long black, long white, Piece turn) {
+        long h = mix(black + (turn == WP ? WHITE_TO_MOVE : 0));
+        return mix(h ^ white);
+    }
+
+    /** Return a scrambling of X in which each bit of X affects each bit of
+     *  the result. */
+    static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
     }
 
+    /** Offset distinguishing white-to-move positions in key(). */
+    private static final long WHITE_TO_MOVE = 0x9e3779b97f4a7c15L;
+
     /** Return the Piece representing who is next to move. */
     Piece turn() {
         return _turn;
@@ -174,33 +312,14 @@ class Board implements Iterable<Move> {
 
     /** Return true iff MOVE is legal for the player currently on move. */
     boolean isLegal(Move move) {
-        if (get(move.getCol0(), move.getRow0()).equals(_turn)) {
-            if (!get(move.getCol1(), move.getRow1()).equals(_turn)) {
-                if (move.length() == pieceCountAlong(move)) {
-                    if (move.length() == 1) {
-                        return true;
-                    }
-                    Direction dir = getDir(move);
-                    int dr = dir.dr;
-                    int dc = dir.dc;
-                    int col = move.getCol0();
-                    int row = move.getRow0();
-                    for (int i = 1; i < move.length(); i++) {
-                        col += dc;
-                        row += dr;
-                        if (!get(col, row).equals(EMP)
-                            && !get(col, row).equals(_turn)) {
-                            return false;
-                        } else {
-                            if (i == move.length() - 1) {
-                                return true;
-                            }
-                        }
-                    }
-                }
-            }
+        int from = Lines.index(move.getCol0(), move.getRow0());
+        int to = Lines.index(move.getCol1(), move.getRow1());
+        long mine = pieces(_turn), theirs = pieces(_turn.opposite());
+        if ((mine & (1L << from)) == 0 || (mine & (1L << to)) != 0) {
+            return false;
         }
-        return false;
+        return move.length() == pieceCountAlong(move)
+            && (theirs & Lines.BETWEEN[from][to]) == 0;
     }
 
     /** Return a sequence of all legal moves from this position. */
@@ -222,72 +341,146 @@ class Board implements Iterable<Move> {
 
     /** Return true iff either player has all his pieces continguous. */
     boolean gameOver() {
-        return piecesContiguous(BP) || piecesContiguous(WP);
+        return winner() != null;
+    }
+
+    /** Return the winner in this position: the side whose pieces are
+     *  contiguous or, if both sides' are, the side that just moved.
+     *  Return null if the game is not over. */
+    Piece winner() {
+        boolean black = piecesContiguous(BP), white = piecesContiguous(WP);
+        if (black && white) {
+            return _turn.opposite();
+        } else if (black) {
+            return BP;
+        } else if (white) {
+            return WP;
+        } else {
+            return null;
+        }
     }
 
-    /** Return true iff SIDE's pieces are continguous. */
+    /** Return true iff SIDE's pieces are continguous.  The answer for both
+     *  sides is computed once per position and kept until the contents of
+     *  the board next change. */
     boolean piecesContiguous(Piece side) {
-        Board cop = new Board(this);
-        int[] firstP = firstPiece(cop, side);
-        removeCont(cop, firstP, side);
-        for (int i = 0; i < M; i++) {
-            for (int j = 0; j < M; j++) {
-                if (cop._content[i][j].equals(side)) {
-                    return false;
-                }
-            }
+        if (!_statusKnown) {
+            _blackContiguous = computeContiguous(BP);
+            _whiteContiguous = computeContiguous(WP);
+            _statusKnown = true;
         }
-        return true;
+        return side == BP ? _blackContiguous : _whiteContiguous;
     }
 
-    /** Return indices of the position of first occurrence SIDE of BOARD. */
-    static int[] firstPiece(Board board, Piece side) {
-        for (int i = 0; i < M; i++) {
-            for (int j = 0; j < M; j++) {
-                if (board._content[i][j].equals(side)) {
-                    return new int[] { i, j };
-                }
-            }
-        }
-        return new int[] { -1, -1 };
+    /** Return true iff SIDE's pieces are continguous, computing it from
+     *  scratch.  A side with no pieces counts as contiguous. */
+    private boolean computeContiguous(Piece side) {
+        return contiguous(pieces(side));
     }
 
-    /** Return board after removing continuous pieces.
-     * Inside BOARD, of piece SIDE, and INDICES.
-     */
-    static Board removeCont(Board board, int[] indices, Piece side) {
-        Piece[][] content = board._content;
-        int i = indices[0];
-        int j = indices[1];
-        if (content[i][j].equals(side)) {
-            content[i][j] = EMP;
-            if (i != 0 && j != 0 && content[i - 1][j - 1].equals(side)) {
-                removeCont(board, new int[] { i - 1, j - 1 }, side);
-            }
-            if (i != 0 && content[i - 1][j].equals(side)) {
-                removeCont(board, new int[] { i - 1, j }, side);
-            }
-            if (i != 0 && j != M - 1 && content[i - 1][j + 1].equals(side)) {
-                removeCont(board, new int[] { i - 1, j + 1 }, side);
-            }
-            if (j != M - 1 && content[i][j + 1].equals(side)) {
-                removeCont(board, new int[] { i, j + 1 }, side);
-            }
-            if (i != M - 1 && j != M - 1
-                && content[i + 1][j + 1].equals(side)) {
-                removeCont(board, new int[] { i + 1, j + 1 }, side);
-            }
-            if (i != M - 1 && content[i + 1][j].equals(side)) {
-                removeCont(board, new int[] { i + 1, j }, side);
-            }
-            if (i != M - 1 && j != 0 && content[i + 1][j - 1].equals(side)) {
-                removeCont(board, new int[] { i + 1, j - 1 }, side);
-            }
-            if (j != 0 && content[i][j - 1].equals(side)) {
-                removeCont(board, new int[] { i, j - 1 }, side);
+    /** Return true iff the squares in MASK (a bit mask as in Lines) form a
+     *  single group of adjacent squares, or MASK is empty. */
+    static boolean contiguous(long mask) {
+        return mask == 0 || group(mask, mask & -mask) == mask;
+    }
+
+    /** Return the group of adjacent squares in MASK containing those in
+     *  SEED, which must be a subset of MASK. */
+    static long group(long mask, long seed) {
+        long grown = seed;
+        do {
+            seed = grown;
+            grown = Lines.adjacent(seed) & mask;
+        } while (grown != seed);
+        return grown;
+    }
+
+    /** Return the moves (possibly none) by which SIDE would get all its
+     *  pieces contiguous at once, were it SIDE's turn.  Such a move wins,
+     *  even if it also connects the opponent's pieces. */
+    ArrayList<Move> winningMoves(Piece side) {
+        ArrayList<Move> wins = new ArrayList<>();
+        findWins(side, wins);
+        return wins;
+    }
+
+    /** Return true iff SIDE, were it SIDE's turn, could get all its pieces
+     *  contiguous in one move. */
+    boolean hasWinningMove(Piece side) {
+        return findWins(side, null);
+    }
+
+    /** Return true iff the side with the pieces MINE, playing against
+     *  THEIRS, could get all its pieces contiguous in one move.  GROUPS is
+     *  scratch space of at least Lines.SQUARES elements. */
+    static boolean hasWinningMove(long mine, long theirs, long[] groups) {
+        return findWins(mine, theirs, groups, null, null);
+    }
+
+    /** Find the moves by which SIDE would connect its pieces at once,
+     *  adding them to WINS, or stopping at the first if WINS is null.
+     *  Return true iff there are any.  Rather than trying each move, this
+     *  first divides SIDE's pieces into groups: only moves whose target
+     *  square touches every group that the moving piece leaves behind
+     *  are checked in full. */
+    private boolean findWins(Piece side, ArrayList<Move> wins) {
+        if (_groups == null) {
+            _groups = new long[Lines.SQUARES];
+        }
+        return findWins(pieces(side), pieces(side.opposite()), _groups,
+                        this, wins);
+    }
+
+    /** Find the moves by which the side with the pieces MINE, playing
+     *  against THEIRS on BOARD, would connect its pieces at once, as for
+     *  findWins(side, WINS), using GROUPS as scratch space.  BOARD is
+     *  used only to create the moves, and may be null if WINS is. */
+    private static boolean findWins(long mine, long theirs, long[] groups,
+                                    Board board, ArrayList<Move> wins) {
+        long occupied = mine | theirs;
+        int ngroups = 0;
+        for (long rest = mine; rest != 0; ngroups += 1) {
+            groups[ngroups] = group(mine, rest & -rest);
+            rest &= ~groups[ngroups];
+        }
+        if (ngroups == 1) {
+            return false;
+        }
+        boolean found = false;
+        for (long rest = mine; rest != 0; rest &= rest - 1) {
+            int from = Long.numberOfTrailingZeros(rest);
+            long fromBit = 1L << from;
+            for (int d = 0; d < Lines.DIRS; d += 1) {
+                int[] targets = Lines.TARGET[from][d];
+                int n = Long.bitCount(occupied
+                                      & Lines.LINE[from][Lines.axis(d)]);
+                if (n > targets.length) {
+                    continue;
+                }
+                int to = targets[n - 1];
+                if ((mine & (1L << to)) != 0
+                    || (theirs & Lines.BETWEEN[from][to]) != 0) {
+                    continue;
+                }
+                boolean touchesAll = true;
+                for (int g = 0; g < ngroups && touchesAll; g += 1) {
+                    long others = groups[g] & ~fromBit;
+                    touchesAll = others == 0
+                        || (others & Lines.NEIGHBORS[to]) != 0;
+                }
+                if (touchesAll
+                    && contiguous((mine & ~fromBit) | (1L << to))) {
+                    if (wins == null) {
+                        return true;
+                    }
+                    found = true;
+                    wins.add(Move.create(Lines.col(from), Lines.row(from),
+                                         Lines.col(to), Lines.row(to),
+                                         board));
+                }
             }
         }
-        return board;
+        return found;
     }
 
     /**
@@ -299,15 +492,26 @@ class Board implements Iterable<Move> {
         return _moves.size();
     }
 
+    /** Return the Kth move made (numbering from 0), where
+     *  0 <= K < movesMade(). */
+    Move move(int k) {
+        return _moves.get(k);
+    }
+
+    /** Return true iff OBJ is a Board with the same contents and side to
+     *  move as mine (its history may differ). */
     @Override
     public boolean equals(Object obj) {
+        if (!(obj instanceof Board)) {
+            return false;
+        }
         Board b = (Board) obj;
-        return _content.equals(b._content);
+        return _black == b._black && _white == b._white && _turn == b._turn;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.deepHashCode(_content);
+        return Long.hashCode(key());
     }
 
     @Override
@@ -332,39 +536,8 @@ class Board implements Iterable<Move> {
 
     /** Return the direction of MOVE. */
     private Direction getDir(Move move) {
-        int hor = move.getCol1() - move.getCol0();
-        int vert = move.getRow1() - move.getRow0();
-        if (vert != 0) {
-            int temp = vert;
-            vert /= Math.abs(temp);
-            hor /= Math.abs(temp);
-        } else if (hor != 0) {
-            int temp = hor;
-            vert /= Math.abs(temp);
-            hor /= Math.abs(temp);
-        }
-        String s = "" + hor + vert;
-        Direction dir = NOWHERE;
-        switch (s) {
-        case "11":
-            return NE;
-        case "10":
-            return E;
-        case "1-1":
-            return SE;
-        case "0-1":
-            return S;
-        case "-1-1":
-            return SW;
-        case "-10":
-            return W;
-        case "-11":
-            return NW;
-        case "01":
-            return N;
-        default:
-            throw new IllegalArgumentException();
-        }
+        return Direction.between(move.getCol0(), move.getRow0(),
+                                 move.getCol1(), move.getRow1());
     }
 
     /**
@@ -372,35 +545,8 @@ class Board implements Iterable<Move> {
      * containing the square at column C and row R.
      */
     private int pieceCountAlong(int c, int r, Direction dir) {
-        int count = 0;
-        int tempC = c;
-        int tempR = r;
-        if (!this.get(c, r).equals(EMP)) {
-            count += 1;
-        }
-        while (r > 0 && r < M + 1 && c < M + 1 && c > 0) {
-            r -= dir.dr;
-            c -= dir.dc;
-            if (inBounds(c, r) && !this.get(c, r).equals(EMP)) {
-                count += 1;
-            }
-        }
-        while (tempR > 0 && tempR < M + 1 && tempC < M + 1 && tempC > 0) {
-            tempR += dir.dr;
-            tempC += dir.dc;
-            if (inBounds(tempC, tempR) && !this.get(tempC, tempR).equals(EMP)) {
-                count += 1;
-            }
-        }
-        return count;
-    }
-
-    /** Return true if combination of R, C are in bounds. */
-    private static boolean inBounds(int c, int r) {
-        if (c > 0 && c < M + 1 && r > 0 && r < M + 1) {
-            return true;
-        }
-        return false;
+        return Long.bitCount(occupied() & Lines.LINE[Lines.index(c, r)]
+                                                   [Lines.axis(dir.index())]);
     }
 
     /**
@@ -427,8 +573,23 @@ class Board implements Iterable<Move> {
 
     /** List of all unretracted moves on this board, in order. */
     private final ArrayList<Move> _moves = new ArrayList<>();
+    /** True iff set has been called since the first move in _moves. */
+    private boolean _edited;
     /** Current side on move. */
     private Piece _turn;
+    /** The squares holding black and white pieces, as bit masks indexed
+     *  as in Lines. */
+    private long _black, _white;
+    /** Scratch space for findWins: the groups of one side's pieces.
+     *  Allocated on first use. */
+    private long[] _groups;
+    /** True iff _blackContiguous and _whiteContiguous describe the current
+     *  contents. */
+    private boolean _statusKnown;
+    /** Cached contiguity of the black and white pieces. */
+    private boolean _blackContiguous, _whiteContiguous;
+    /** Observer of changes to my contents, or null. */
+    private BoardListener _listener;
 
     /** An iterator returning the legal moves from the current board. */
     private class MoveIterator implements Iterator<Move> {
@@ -518,7 +679,7 @@ class Board implements Iterable<Move> {
                     }
                 }
             }
-            if (_c == M && _r == M && _dir == NW && _move.equals(curr)) {
+            if (_c == M && _r == M && _dir == NW && _move == curr) {
                 _move = null;
             }
         }
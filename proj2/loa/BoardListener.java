@@ -0,0 +1,20 @@
+package loa;
+
+/** An observer of the contents of a Board, such as an evaluator that
+ *  keeps sums over the pieces up to date as moves are made and retracted
+ *  rather than recomputing them for every position.
+ *  @author JuKyung Choi
+ */
+interface BoardListener {
+
+    /** Note that the square SQ (indexed as in Lines) has changed from FROM
+     *  to TO (which differ).  A move changes at most three squares this
+     *  way: a captured piece leaves, the moving piece arrives, and it
+     *  leaves its starting square. */
+    void squareChanged(int sq, Piece from, Piece to);
+
+    /** Note that the contents of BOARD may have changed wholesale, as by
+     *  Board.initialize or copyFrom. */
+    void boardReset(Board board);
+
+}
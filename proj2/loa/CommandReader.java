@@ -0,0 +1,127 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Predicate;
+
+/** Reads command lines on a thread of its own and queues them, so that
+ *  the thread doing the playing (or searching) never blocks on input.
+ *  Lines for which an optional urgent-command handler returns true are
+ *  consumed by that handler as soon as they arrive and are not queued.
+ *  Alternatively, it may read directly on the thread taking the lines,
+ *  which then calls poll() while it waits on something else, so that
+ *  urgent commands are still handled promptly.
+ *  @author JuKyung Choi
+ */
+class CommandReader implements Runnable {
+
+    /** A CommandReader taking lines from INPUT and offering each of them
+     *  first to URGENT (which may be null). */
+    CommandReader(BufferedReader input, Predicate<String> urgent) {
+        _input = input;
+        _urgent = urgent;
+    }
+
+    /** Read lines on the thread that takes them, rather than on a thread
+     *  of my own.  Has no effect once reading has started. */
+    synchronized void readDirectly() {
+        _direct = _thread == null;
+    }
+
+    /** Start reading on a new thread, if not already started and not
+     *  reading directly. */
+    synchronized void start() {
+        if (_thread == null && !_direct) {
+            _thread = new Thread(this, "loa-input");
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+    }
+
+    /** Return the next queued line, waiting for one if needed, or null
+     *  once the input is exhausted. */
+    String take() throws IOException {
+        start();
+        while (_direct && _lines.isEmpty()) {
+            readLine();
+        }
+        try {
+            String line = _lines.take();
+            if (line == EOF) {
+                _lines.add(EOF);
+                if (_error != null) {
+                    throw _error;
+                }
+                return null;
+            }
+            return line;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /** When reading directly, read and handle the lines that have already
+     *  arrived, without waiting for more.  (A line that has only partly
+     *  arrived is waited for.) */
+    void poll() {
+        try {
+            while (_direct && !_ended && _input.ready()) {
+                readLine();
+            }
+        } catch (IOException excp) {
+            _error = excp;
+            _ended = true;
+            _lines.add(EOF);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (readLine()) {
+            continue;
+        }
+    }
+
+    /** Read a line and offer it to the urgent-command handler, queueing
+     *  it if the handler does not take it.  At the end of the input or on
+     *  an error, queue EOF instead.  Return false iff the input has
+     *  ended. */
+    private boolean readLine() {
+        try {
+            String line = _input.readLine();
+            if (line != null) {
+                if (_urgent == null || !_urgent.test(line.trim())) {
+                    _lines.add(line);
+                }
+                return true;
+            }
+        } catch (IOException excp) {
+            _error = excp;
+        }
+        _ended = true;
+        _lines.add(EOF);
+        return false;
+    }
+
+    /** Marks the end of the input in _lines.  Compared by identity. */
+    private static final String EOF = new String("<EOF>");
+
+    /** Source of command lines. */
+    private final BufferedReader _input;
+    /** Handler for lines that must not wait their turn, or null. */
+    private final Predicate<String> _urgent;
+    /** Lines read but not yet taken. */
+    private final BlockingQueue<String> _lines = new LinkedBlockingQueue<>();
+    /** True iff lines are read on the thread that takes them. */
+    private boolean _direct;
+    /** The reading thread, once started. */
+    private Thread _thread;
+    /** True once EOF has been queued. */
+    private volatile boolean _ended;
+    /** Error that ended the input, if any. */
+    private volatile IOException _error;
+
+}
@@ -0,0 +1,241 @@
+package loa;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ucb.util.CommandArgs;
+
+/** Generation of training data for evaluations by self-play.  Each of a
+ *  number of threads plays games between two copies of an AI searching a
+ *  fixed number of nodes per move, starting from a few random plies
+ *  chosen by the random source of a Game of its own, and records every
+ *  position after the opening with the value its search found and the
+ *  final result of the game.  Thread T writes its records to the shards
+ *  PREFIX-T-00000.bin, ... (see DataShardWriter).  The positions of a
+ *  game are held in arrays until it ends, so recording them allocates
+ *  nothing.
+ *  @author JuKyung Choi
+ */
+class DataGenerator {
+
+    /** A generator of POSITIONS records written to shards named after
+     *  PREFIX of RECORDS records each, by THREADS threads searching NODES
+     *  nodes per move with the AI settings SETTINGS (as for
+     *  MachinePlayer.setOptions) from openings of PLIES random plies, with
+     *  random choices made from SEED. */
+    DataGenerator(String prefix, long positions, int records, int threads,
+                  long nodes, String settings, int plies, long seed) {
+        _prefix = prefix;
+        _positions = positions;
+        _records = records;
+        _threads = Math.max(1, threads);
+        _settings = String.format("depth=%d,nodes=%d,%s", MAX_DEPTH, nodes,
+                                  settings);
+        _plies = plies;
+        _seed = seed;
+        if (positions < 0 || records <= 0) {
+            throw new IllegalArgumentException("bad number of positions");
+        }
+        MachinePlayer.checkOptions(_settings);
+    }
+
+    /** Generate the data.  Throws IOException if a shard cannot be
+     *  written, and rethrows any RuntimeException raised by a worker. */
+    void run() throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        for (int t = 0; t < _threads; t += 1) {
+            int worker = t;
+            pool.execute(() -> work(worker));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        Exception error = _error.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error != null) {
+            throw (RuntimeException) error;
+        }
+    }
+
+    /** Return the number of records written. */
+    long positions() {
+        return Math.min(_claimed.get(), _positions);
+    }
+
+    /** Return the number of games whose positions were written. */
+    long games() {
+        return _games.get();
+    }
+
+    /** Return the number of shards begun. */
+    long shards() {
+        return _shards.get();
+    }
+
+    /** Play games as worker WORKER until enough positions are claimed,
+     *  recording any error in _error. */
+    private void work(int worker) {
+        Game game = new Game(null, NULL_STREAM);
+        game.setSeed(_seed + worker * SEED_STRIDE);
+        MachinePlayer player = new MachinePlayer(Piece.BP, null);
+        player.setOptions(_settings);
+        Board board = game.getBoard();
+        long[] black = new long[Tournament.MAX_MOVES],
+            white = new long[black.length];
+        Piece[] turn = new Piece[black.length];
+        double[] value = new double[black.length];
+        ArrayList<Move> moves = new ArrayList<>();
+        try (DataShardWriter out =
+             new DataShardWriter(_prefix + "-" + worker, _records)) {
+            try {
+                while (_error.get() == null
+                       && _claimed.get() < _positions) {
+                    opening(board, game, moves);
+                    int n = 0;
+                    while (!board.gameOver() && n < black.length) {
+                        black[n] = board.pieces(Piece.BP);
+                        white[n] = board.pieces(Piece.WP);
+                        turn[n] = board.turn();
+                        Move move = player.search(board);
+                        if (move == null) {
+                            break;
+                        }
+                        value[n] = player.value();
+                        n += 1;
+                        board.makeMove(move);
+                    }
+                    Piece winner = board.gameOver() ? board.winner() : null;
+                    long first = _claimed.getAndAdd(n);
+                    n = (int) Math.max(0, Math.min(n, _positions - first));
+                    for (int k = 0; k < n; k += 1) {
+                        out.add(black[k], white[k], turn[k], value[k],
+                                winner);
+                    }
+                    if (n > 0) {
+                        _games.incrementAndGet();
+                    }
+                }
+            } finally {
+                _shards.addAndGet(out.shards());
+            }
+        } catch (IOException | RuntimeException excp) {
+            _error.compareAndSet(null, excp);
+        }
+    }
+
+    /** Set BOARD to the position after _plies random moves from the
+     *  initial position, chosen by GAME, stopping short of any
+     *  game-ending move.  MOVES is scratch space. */
+    private void opening(Board board, Game game, ArrayList<Move> moves) {
+        board.clear();
+        for (int k = 0; k < _plies; k += 1) {
+            moves.clear();
+            for (Iterator<Move> i = board.legalMoves(); i.hasNext();) {
+                Move move = i.next();
+                board.makeMove(move);
+                if (!board.gameOver()) {
+                    moves.add(move);
+                }
+                board.retract();
+            }
+            if (moves.isEmpty()) {
+                break;
+            }
+            board.makeMove(moves.get(game.randInt(moves.size())));
+        }
+    }
+
+    /** Generate data as directed by the command-line OPTIONS: shards named
+     *  after --generate=PREFIX holding --positions=N positions in all,
+     *  with the AI settings --first searching --nodes nodes per move,
+     *  with --plies, --seed, and --threads as for matches.  Reports the
+     *  speed, in positions per second per thread, at the end. */
+    static void main(CommandArgs options) {
+        try {
+            int threads = options.contains("--threads")
+                ? options.getInt("--threads")
+                : Runtime.getRuntime().availableProcessors();
+            DataGenerator generator =
+                new DataGenerator(options.getFirst("--generate"),
+                                  options.contains("--positions")
+                                  ? options.getLong("--positions")
+                                  : DEFAULT_POSITIONS,
+                                  SHARD_RECORDS, threads,
+                                  options.contains("--nodes")
+                                  ? options.getLong("--nodes")
+                                  : DEFAULT_NODES,
+                                  options.contains("--first")
+                                  ? options.getFirst("--first") : "",
+                                  options.contains("--plies")
+                                  ? options.getInt("--plies")
+                                  : DEFAULT_PLIES,
+                                  options.contains("--seed")
+                                  ? options.getLong("--seed") : 0);
+            long start = System.nanoTime();
+            generator.run();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double rate = generator.positions() / seconds;
+            System.out.printf("%d positions from %d games in %d shards, "
+                              + "%.1f s: %.0f positions/s, %.0f per "
+                              + "thread%n", generator.positions(),
+                              generator.games(), generator.shards(),
+                              seconds, rate, rate / Math.max(1, threads));
+        } catch (IllegalArgumentException | IOException excp) {
+            Main.error(1, "%s%n", excp.getMessage());
+        } catch (InterruptedException excp) {
+            Main.error(1, "interrupted%n");
+        }
+        System.exit(0);
+    }
+
+    /** Default number of positions generated. */
+    static final long DEFAULT_POSITIONS = 1000000;
+    /** Default number of nodes searched per move. */
+    static final long DEFAULT_NODES = 1000;
+    /** Default number of random plies per opening. */
+    static final int DEFAULT_PLIES = 8;
+    /** Number of records per shard (about 20 MB). */
+    static final int SHARD_RECORDS = 1 << 20;
+    /** Depth limit of searches, which are limited by nodes instead. */
+    private static final int MAX_DEPTH = 64;
+    /** Multiplier separating the seeds of the workers. */
+    private static final long SEED_STRIDE = 0x9e3779b97f4a7c15L;
+    /** A stream that discards everything written to it. */
+    private static final PrintStream NULL_STREAM =
+        new PrintStream(OutputStream.nullOutputStream());
+
+    /** Start of the names of the shards. */
+    private final String _prefix;
+    /** Number of positions to record. */
+    private final long _positions;
+    /** Number of records per shard. */
+    private final int _records;
+    /** Number of threads on which to play. */
+    private final int _threads;
+    /** AI settings of the players. */
+    private final String _settings;
+    /** Number of random plies per opening. */
+    private final int _plies;
+    /** Seed for random choices. */
+    private final long _seed;
+    /** Number of positions claimed by workers, some of which may not be
+     *  written once the total exceeds _positions. */
+    private final AtomicLong _claimed = new AtomicLong();
+    /** Number of games whose positions were written. */
+    private final AtomicLong _games = new AtomicLong();
+    /** Number of shards begun. */
+    private final AtomicLong _shards = new AtomicLong();
+    /** The first error in writing a shard or playing a game, if any: an
+     *  IOException or RuntimeException. */
+    private final AtomicReference<Exception> _error =
+        new AtomicReference<>();
+
+}
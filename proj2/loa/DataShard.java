@@ -0,0 +1,79 @@
+package loa;
+
+import java.nio.ByteBuffer;
+
+import static loa.Piece.*;
+
+/** The layout of shards of training data, as written by DataShardWriter.
+ *  A shard is a headerless sequence of records of RECORD_BYTES bytes
+ *  each, so that record K starts at K * RECORD_BYTES and a shard may be
+ *  mapped and read in place.  A record is
+ *
+ *      a Position, in its serialized form (see Position.write);
+ *      the value found by a search of it for the side to move, in units
+ *          of 1 / SCORE_SCALE (a short);
+ *      the result of the game in which it arose (NO_RESULT, BLACK_WON, or
+ *          WHITE_WON, as in GameArchive; a byte).
+ *
+ *  All numbers are big-endian.
+ *  @author JuKyung Choi
+ */
+final class DataShard {
+
+    /** Not instantiable. */
+    private DataShard() {
+    }
+
+    /** Size of one record. */
+    static final int RECORD_BYTES = Position.BYTES + Short.BYTES + 1;
+    /** Offsets of the fields of a record. */
+    static final int BLACK = 0, WHITE = Long.BYTES, TURN = 2 * Long.BYTES,
+        SCORE = Position.BYTES, RESULT = Position.BYTES + Short.BYTES;
+    /** Units of a stored score per unit of value. */
+    static final int SCORE_SCALE = 256;
+
+    /** Return the stored form of the search value VALUE. */
+    static short score(double value) {
+        long units = Math.round(value * SCORE_SCALE);
+        return (short) Math.max(Short.MIN_VALUE,
+                                Math.min(Short.MAX_VALUE, units));
+    }
+
+    /** Return the black pieces of record K of SHARD. */
+    static long black(ByteBuffer shard, int k) {
+        return shard.getLong(k * RECORD_BYTES + BLACK);
+    }
+
+    /** Return the white pieces of record K of SHARD. */
+    static long white(ByteBuffer shard, int k) {
+        return shard.getLong(k * RECORD_BYTES + WHITE);
+    }
+
+    /** Return the side to move in record K of SHARD. */
+    static Piece turn(ByteBuffer shard, int k) {
+        return shard.get(k * RECORD_BYTES + TURN) == WP.ordinal() ? WP : BP;
+    }
+
+    /** Return the search value in record K of SHARD. */
+    static double value(ByteBuffer shard, int k) {
+        return (double) shard.getShort(k * RECORD_BYTES + SCORE)
+            / SCORE_SCALE;
+    }
+
+    /** Return the winner in record K of SHARD, or null if none. */
+    static Piece winner(ByteBuffer shard, int k) {
+        return GameArchive.winner(shard.get(k * RECORD_BYTES + RESULT));
+    }
+
+    /** Return the position in record K of SHARD. */
+    static Position position(ByteBuffer shard, int k) {
+        return Position.read(shard.duplicate()
+                             .position(k * RECORD_BYTES));
+    }
+
+    /** Return the number of records in SHARD. */
+    static int size(ByteBuffer shard) {
+        return shard.limit() / RECORD_BYTES;
+    }
+
+}
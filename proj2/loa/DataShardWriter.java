@@ -0,0 +1,108 @@
+package loa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+import static loa.DataShard.*;
+
+/** Writes training data (see DataShard) to a series of shards named
+ *  PREFIX-00000.bin, PREFIX-00001.bin, ..., each holding the same number
+ *  of records except possibly the last.  Records are gathered in one
+ *  direct buffer and written through a file channel as it fills, so
+ *  adding a record allocates nothing.
+ *  @author JuKyung Choi
+ */
+class DataShardWriter implements AutoCloseable {
+
+    /** A writer of shards named after PREFIX, each holding RECORDS
+     *  records. */
+    DataShardWriter(String prefix, int records) {
+        if (records <= 0) {
+            throw new IllegalArgumentException("bad shard size");
+        }
+        _prefix = prefix;
+        _recordsPerShard = records;
+    }
+
+    /** Return the name of shard K of the series named after PREFIX. */
+    static Path shard(String prefix, int k) {
+        return Path.of(String.format("%s-%05d.bin", prefix, k));
+    }
+
+    /** Add the record of the position with BLACK and WHITE pieces and
+     *  TURN to move, whose search value is VALUE, arising in a game won
+     *  by WINNER (null if none). */
+    void add(long black, long white, Piece turn, double value, Piece winner)
+        throws IOException {
+        if (_out == null) {
+            _out = FileChannel.open(shard(_prefix, _shards),
+                                    CREATE, TRUNCATE_EXISTING, WRITE);
+            _shards += 1;
+        }
+        _buffer.putLong(black).putLong(white).put((byte) turn.ordinal())
+            .putShort(score(value))
+            .put((byte) GameArchive.resultFlag(winner));
+        _records += 1;
+        _inShard += 1;
+        if (_inShard == _recordsPerShard) {
+            flush();
+            _out.close();
+            _out = null;
+            _inShard = 0;
+        } else if (_buffer.remaining() < RECORD_BYTES) {
+            flush();
+        }
+    }
+
+    /** Return the number of records added. */
+    long size() {
+        return _records;
+    }
+
+    /** Return the number of shards begun. */
+    int shards() {
+        return _shards;
+    }
+
+    /** Write any buffered records and close the current shard. */
+    @Override
+    public void close() throws IOException {
+        if (_out != null) {
+            flush();
+            _out.close();
+            _out = null;
+        }
+    }
+
+    /** Write the buffered records to the current shard. */
+    private void flush() throws IOException {
+        _buffer.flip();
+        while (_buffer.hasRemaining()) {
+            _out.write(_buffer);
+        }
+        _buffer.clear();
+    }
+
+    /** Number of records held in the buffer. */
+    private static final int BUFFER_RECORDS = 4096;
+
+    /** Start of the names of my shards. */
+    private final String _prefix;
+    /** Number of records in a full shard. */
+    private final int _recordsPerShard;
+    /** Records not yet written. */
+    private final ByteBuffer _buffer =
+        ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_BYTES);
+    /** The current shard, or null if none is open. */
+    private FileChannel _out;
+    /** Number of shards begun. */
+    private int _shards;
+    /** Number of records in the current shard. */
+    private int _inShard;
+    /** Number of records added. */
+    private long _records;
+
+}
@@ -0,0 +1,175 @@
+package loa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import ucb.util.CommandArgs;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/** Removal of repeated positions from streams of 64-bit position keys
+ *  (as from Board.key()) too large to hold in a set, in two passes over
+ *  the same keys.  The first pass (scan) sends each key through a Bloom
+ *  filter and records those the filter may have seen before, which are
+ *  all the repeated keys and a few false positives, in an exact set.  The
+ *  second (keep) accepts a key unless it is in that set and has already
+ *  been accepted once.  Only the filter, of about 10 bits per key, and
+ *  sets of the repeated keys are held in memory, all off the heap (see
+ *  DirectLongArray), where they count against the JVM's limit on direct
+ *  memory: by default the maximum heap size (-Xmx), or else the value of
+ *  -XX:MaxDirectMemorySize.
+ *
+ *  Its main() removes repeated positions from shards of training data
+ *  (see DataShard), which are read through memory maps, so that the data
+ *  itself may be far larger than the heap.
+ *  @author JuKyung Choi
+ */
+class Deduplicator {
+
+    /** A deduplicator of about KEYS keys, whose Bloom filter has a
+     *  false-positive rate of about RATE. */
+    Deduplicator(long keys, double rate) {
+        _filter = BloomFilter.forKeys(keys, rate);
+        long capacity = Math.max(1, keys / REPEATS_PER_KEY);
+        _repeated = new LongHashSet(capacity);
+        _kept = new LongHashSet(capacity);
+    }
+
+    /** In the first pass, see KEY. */
+    void scan(long key) {
+        if (!_filter.add(key)) {
+            _repeated.add(key);
+        }
+    }
+
+    /** In the second pass, return true iff KEY is seen here for the first
+     *  time. */
+    boolean keep(long key) {
+        return !_repeated.contains(key) || _kept.add(key);
+    }
+
+    /** Return the number of keys that the first pass found might be
+     *  repeated. */
+    long repeated() {
+        return _repeated.size();
+    }
+
+    /** Return the number of bytes I occupy off the heap. */
+    long bytes() {
+        return _filter.bytes() + _repeated.bytes() + _kept.bytes();
+    }
+
+    /** Return the key of record K of SHARD. */
+    static long key(ByteBuffer shard, int k) {
+        return Board.key(DataShard.black(shard, k), DataShard.white(shard, k),
+                         DataShard.turn(shard, k));
+    }
+
+    /** Return the shards of training data named after PREFIX (see
+     *  DataShardWriter and DataGenerator), in order of name. */
+    static List<Path> shards(String prefix) throws IOException {
+        Path start = Path.of(prefix).toAbsolutePath();
+        String name = start.getFileName() + "-";
+        ArrayList<Path> result = new ArrayList<>();
+        try (Stream<Path> files = Files.list(start.getParent())) {
+            files.filter(f -> f.getFileName().toString().startsWith(name)
+                         && f.toString().endsWith(".bin"))
+                .sorted().forEach(result::add);
+        }
+        return result;
+    }
+
+    /** Return the total number of records in SHARDS. */
+    static long records(List<Path> shards) throws IOException {
+        long result = 0;
+        for (Path shard : shards) {
+            result += Files.size(shard) / DataShard.RECORD_BYTES;
+        }
+        return result;
+    }
+
+    /** Return SHARD mapped into memory. */
+    static MappedByteBuffer map(Path shard) throws IOException {
+        try (FileChannel channel = FileChannel.open(shard, READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        }
+    }
+
+    /** Copy the records of INPUTS to OUT, dropping all but the first of
+     *  each position, with a Bloom filter of false-positive rate RATE.
+     *  Return the deduplicator used. */
+    static Deduplicator copy(List<Path> inputs, DataShardWriter out,
+                             double rate) throws IOException {
+        Deduplicator dedup = new Deduplicator(records(inputs), rate);
+        for (Path shard : inputs) {
+            MappedByteBuffer map = map(shard);
+            for (int k = 0, n = DataShard.size(map); k < n; k += 1) {
+                dedup.scan(key(map, k));
+            }
+        }
+        for (Path shard : inputs) {
+            MappedByteBuffer map = map(shard);
+            for (int k = 0, n = DataShard.size(map); k < n; k += 1) {
+                if (dedup.keep(key(map, k))) {
+                    out.add(DataShard.black(map, k), DataShard.white(map, k),
+                            DataShard.turn(map, k), DataShard.value(map, k),
+                            DataShard.winner(map, k));
+                }
+            }
+        }
+        return dedup;
+    }
+
+    /** Remove repeated positions from the shards named after
+     *  --dedup=PREFIX, writing the rest to shards named after --output
+     *  (by default, PREFIX.unique), and report the counts, memory used,
+     *  and speed. */
+    static void main(CommandArgs options) {
+        String prefix = options.getFirst("--dedup");
+        String output = options.contains("--output")
+            ? options.getFirst("--output") : prefix + ".unique";
+        try (DataShardWriter out =
+             new DataShardWriter(output, DataGenerator.SHARD_RECORDS)) {
+            List<Path> inputs = shards(prefix);
+            long records = records(inputs);
+            long start = System.nanoTime();
+            Deduplicator dedup = copy(inputs, out, DEFAULT_RATE);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Runtime runtime = Runtime.getRuntime();
+            System.out.printf("%d of %d positions kept (%d possibly "
+                              + "repeated) from %d shards in %.1f s: "
+                              + "%.0f positions/s%n", out.size(), records,
+                              dedup.repeated(), inputs.size(), seconds,
+                              records / seconds);
+            System.out.printf("memory: %.1f MB off the heap, %.1f MB of "
+                              + "heap in use%n", dedup.bytes() / 1e6,
+                              (runtime.totalMemory() - runtime.freeMemory())
+                              / 1e6);
+        } catch (IllegalArgumentException | IOException excp) {
+            Main.error(1, "%s%n", excp.getMessage());
+        }
+        System.exit(0);
+    }
+
+    /** Default false-positive rate of the Bloom filter. */
+    static final double DEFAULT_RATE = 0.01;
+    /** Expected number of keys per repeated key, by which the sets of
+     *  repeated keys are first sized. */
+    private static final long REPEATS_PER_KEY = 16;
+
+    /** Filter of the keys seen in the first pass. */
+    private final BloomFilter _filter;
+    /** Keys that the first pass found might be repeated. */
+    private final LongHashSet _repeated;
+    /** Repeated keys accepted in the second pass. */
+    private final LongHashSet _kept;
+
+}
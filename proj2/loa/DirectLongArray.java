@@ -0,0 +1,65 @@
+package loa;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/** A fixed-length array of longs, initially zero, held outside the Java
+ *  heap in direct buffers of at most SEGMENT longs each, so that it may be
+ *  larger than one buffer can be.  Its memory is limited not by the heap
+ *  but by the JVM's limit on direct memory, which is the maximum heap
+ *  size (-Xmx) unless set by -XX:MaxDirectMemorySize; an array larger
+ *  than the heap needs that option.  Its memory is released when it
+ *  becomes garbage.
+ *  @author JuKyung Choi
+ */
+final class DirectLongArray {
+
+    /** An array of LENGTH zeros. */
+    DirectLongArray(long length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("negative length");
+        }
+        _length = length;
+        int segments = (int) ((length + SEGMENT - 1) >>> SEGMENT_BITS);
+        _segments = new LongBuffer[segments];
+        for (int s = 0; s < segments; s += 1) {
+            long size = Math.min(SEGMENT, length - ((long) s << SEGMENT_BITS));
+            _segments[s] =
+                ByteBuffer.allocateDirect((int) size * Long.BYTES)
+                .asLongBuffer();
+        }
+    }
+
+    /** Return my length. */
+    long length() {
+        return _length;
+    }
+
+    /** Return the number of bytes I occupy. */
+    long bytes() {
+        return _length * Long.BYTES;
+    }
+
+    /** Return element K. */
+    long get(long k) {
+        return _segments[(int) (k >>> SEGMENT_BITS)].get((int) (k & MASK));
+    }
+
+    /** Set element K to VALUE. */
+    void set(long k, long value) {
+        _segments[(int) (k >>> SEGMENT_BITS)].put((int) (k & MASK), value);
+    }
+
+    /** Log base 2 of the number of longs in a full segment. */
+    static final int SEGMENT_BITS = 27;
+    /** Number of longs in a full segment (1 GB). */
+    static final long SEGMENT = 1L << SEGMENT_BITS;
+    /** Mask of the index within a segment. */
+    private static final long MASK = SEGMENT - 1;
+
+    /** My length. */
+    private final long _length;
+    /** My elements, SEGMENT to a buffer. */
+    private final LongBuffer[] _segments;
+
+}
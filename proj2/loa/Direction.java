@@ -25,8 +25,45 @@ enum Direction {
         return (this == NW) ? null : values()[ordinal() + 1];
     }
 
+    /** Return my index among the compass directions: 0 for N, up to 7 for
+     *  NW.  Opposite directions differ by 4. */
+    int index() {
+        return ordinal() - 1;
+    }
+
+    /** Return the compass direction with index K (see index()). */
+    static Direction fromIndex(int k) {
+        return COMPASS[k];
+    }
+
+    /** Return the direction of a step by DC columns and DR rows, each of
+     *  which is -1, 0, or 1.  The step (0, 0) gives NOWHERE. */
+    static Direction of(int dc, int dr) {
+        return BY_STEP[dc + 1][dr + 1];
+    }
+
+    /** Return the direction in which a piece at column C0, row R0 moves
+     *  to reach column C1, row R1, assuming they share a line. */
+    static Direction between(int c0, int r0, int c1, int r1) {
+        return of(Integer.signum(c1 - c0), Integer.signum(r1 - r0));
+    }
+
     /** Direction vector. */
     protected final int dc, dr;
 
+    /** The compass directions, by index. */
+    private static final Direction[] COMPASS = {
+        N, NE, E, SE, S, SW, W, NW
+    };
+
+    /** BY_STEP[DC + 1][DR + 1] is the direction with vector (DC, DR). */
+    private static final Direction[][] BY_STEP = new Direction[3][3];
+
+    static {
+        for (Direction dir : values()) {
+            BY_STEP[dir.dc + 1][dir.dr + 1] = dir;
+        }
+    }
+
 }
 
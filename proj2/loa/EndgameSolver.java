@@ -0,0 +1,292 @@
+package loa;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import ucb.util.CommandArgs;
+
+import static java.nio.file.StandardOpenOption.*;
+import static loa.EndgameTable.*;
+
+/** Builds an endgame table (see EndgameTable) by retrograde analysis.
+ *  The classes are solved in order of their total number of pieces, those
+ *  with the same total together, since a move leads from a class with M
+ *  pieces to move and T others to one with T (or, after a capture, T - 1)
+ *  to move and M others.  Positions in which either side's pieces are
+ *  contiguous are decided by the rules (see Board.winner), and those with
+ *  no legal move are drawn (as in the search).  The rest are decided in
+ *  passes: in pass P, a position is won in P plies if one of its moves
+ *  leads to a position lost in fewer than P, and lost in P plies if all
+ *  its moves lead to positions won in fewer than P.  Positions still
+ *  undecided when a pass decides nothing new are drawn.  Values and
+ *  distances are held off the heap (see DirectLongArray) while solving.
+ *  @author JuKyung Choi
+ */
+class EndgameSolver {
+
+    /** A solver for all positions with from 2 to MAXPIECES pieces per
+     *  side.  Throws IllegalArgumentException unless MAXPIECES is from
+     *  MIN_PIECES to MAX_PIECES, since larger tables could not be read. */
+    EndgameSolver(int maxPieces) {
+        if (maxPieces < MIN_PIECES || maxPieces > MAX_PIECES) {
+            throw new IllegalArgumentException("bad number of pieces: "
+                                               + "must be from "
+                                               + MIN_PIECES + " to "
+                                               + MAX_PIECES);
+        }
+        _maxPieces = maxPieces;
+        _values = new DirectLongArray[maxPieces + 1][maxPieces + 1];
+        _distances = new DirectLongArray[maxPieces + 1][maxPieces + 1];
+    }
+
+    /** Solve all classes, writing a line of progress for each group of
+     *  classes to OUT. */
+    void solve(PrintStream out) {
+        for (int total = 2 * MIN_PIECES; total <= 2 * _maxPieces;
+             total += 1) {
+            long start = System.currentTimeMillis();
+            int lo = Math.max(MIN_PIECES, total - _maxPieces),
+                hi = Math.min(_maxPieces, total - MIN_PIECES);
+            int maxBefore = _maxDistance;
+            long positions = 0;
+            _wins = _losses = 0;
+            for (int m = lo; m <= hi; m += 1) {
+                int t = total - m;
+                positions += size(m, t);
+                _values[m][t] = new DirectLongArray(valueWords(size(m, t)));
+                _distances[m][t] =
+                    new DirectLongArray(distanceWords(size(m, t)));
+                _pass = 0;
+                visit(m, t);
+            }
+            int pass;
+            for (pass = 1;; pass += 1) {
+                if (pass > MAX_DISTANCE) {
+                    throw new IllegalStateException("distance too long");
+                }
+                _pass = pass;
+                _changed = false;
+                for (int m = lo; m <= hi; m += 1) {
+                    visit(m, total - m);
+                }
+                if (!_changed && pass > maxBefore) {
+                    break;
+                }
+            }
+            out.printf("%d pieces: %d positions (%d won, %d lost, "
+                       + "%d drawn), %d passes, longest %d plies, %d ms%n",
+                       total,
+                       positions, _wins, _losses,
+                       positions - _wins - _losses, pass, _maxDistance,
+                       System.currentTimeMillis() - start);
+            out.flush();
+        }
+    }
+
+    /** Return the value of the position with MINE to move and THEIRS,
+     *  which must have been solved. */
+    int value(long mine, long theirs) {
+        long k = index(mine, theirs);
+        long word = _values[Long.bitCount(mine)][Long.bitCount(theirs)]
+            .get(k / VALUES_PER_WORD);
+        return (int) (word >>> (k % VALUES_PER_WORD * 2)) & 3;
+    }
+
+    /** Return the distance of the position with MINE to move and THEIRS,
+     *  which must have been solved. */
+    int distance(long mine, long theirs) {
+        long k = index(mine, theirs);
+        long word = _distances[Long.bitCount(mine)][Long.bitCount(theirs)]
+            .get(k / Long.BYTES);
+        return (int) (word >>> (k % Long.BYTES * Byte.SIZE)) & 0xff;
+    }
+
+    /** Write the solved table to FILE, with distances iff DISTANCES. */
+    void write(Path file, boolean distances) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        try (FileChannel out =
+             FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(_maxPieces)
+                .putInt(distances ? HAS_DISTANCE : 0);
+            for (int m = MIN_PIECES; m <= _maxPieces; m += 1) {
+                for (int t = MIN_PIECES; t <= _maxPieces; t += 1) {
+                    write(out, buffer, _values[m][t]);
+                    if (distances) {
+                        write(out, buffer, _distances[m][t]);
+                    }
+                }
+            }
+            flush(out, buffer);
+        }
+    }
+
+    /** Write the elements of WORDS to OUT through BUFFER. */
+    private static void write(FileChannel out, ByteBuffer buffer,
+                              DirectLongArray words) throws IOException {
+        for (long i = 0; i < words.length(); i += 1) {
+            if (buffer.remaining() < Long.BYTES) {
+                flush(out, buffer);
+            }
+            buffer.putLong(words.get(i));
+        }
+    }
+
+    /** Write the contents of BUFFER to OUT and clear it. */
+    private static void flush(FileChannel out, ByteBuffer buffer)
+        throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /** Visit every undecided position with M pieces to move and T others,
+     *  in order of index, deciding those that can be decided in pass
+     *  _pass (0 for the positions decided by the rules). */
+    private void visit(int m, int t) {
+        DirectLongArray values = _values[m][t],
+            distances = _distances[m][t];
+        int[] free = new int[Lines.SQUARES];
+        long mine = (1L << m) - 1, mines = BINOMIAL[Lines.SQUARES][m],
+            theirsPerMine = BINOMIAL[Lines.SQUARES - m][t];
+        for (long rankMine = 0; rankMine < mines;
+             rankMine += 1, mine = next(mine)) {
+            int nfree = 0;
+            for (long rest = ~mine; rest != 0; rest &= rest - 1) {
+                free[nfree] = Long.numberOfTrailingZeros(rest);
+                nfree += 1;
+            }
+            long chosen = (1L << t) - 1;
+            for (long rankTheirs = 0; rankTheirs < theirsPerMine;
+                 rankTheirs += 1, chosen = next(chosen)) {
+                long k = rankMine * theirsPerMine + rankTheirs;
+                long word = values.get(k / VALUES_PER_WORD);
+                int shift = (int) (k % VALUES_PER_WORD * 2);
+                if ((word >>> shift & 3) != DRAW) {
+                    continue;
+                }
+                long theirs = 0;
+                for (long rest = chosen; rest != 0; rest &= rest - 1) {
+                    theirs |= 1L << free[Long.numberOfTrailingZeros(rest)];
+                }
+                int value = _pass == 0 ? decided(mine, theirs)
+                    : decide(mine, theirs);
+                if (value != DRAW) {
+                    values.set(k / VALUES_PER_WORD,
+                               word | (long) value << shift);
+                    long dword = distances.get(k / Long.BYTES);
+                    int dshift = (int) (k % Long.BYTES * Byte.SIZE);
+                    distances.set(k / Long.BYTES,
+                                  dword | (long) _pass << dshift);
+                    _changed = true;
+                    if (value == WIN) {
+                        _wins += 1;
+                    } else {
+                        _losses += 1;
+                    }
+                    _maxDistance = Math.max(_maxDistance, _pass);
+                }
+            }
+        }
+    }
+
+    /** Return the value, by the rules, of the position with MINE to move
+     *  and THEIRS: WIN or LOSS if either side's pieces are contiguous, and
+     *  otherwise DRAW (undecided). */
+    private static int decided(long mine, long theirs) {
+        if (Board.contiguous(theirs)) {
+            return LOSS;
+        } else if (Board.contiguous(mine)) {
+            return WIN;
+        } else {
+            return DRAW;
+        }
+    }
+
+    /** Return the value in pass _pass of the undecided position with MINE
+     *  to move and THEIRS: WIN if a move leads to a position lost in fewer
+     *  than _pass plies, LOSS if all do to positions won in fewer, and
+     *  otherwise DRAW (still undecided). */
+    private int decide(long mine, long theirs) {
+        long occupied = mine | theirs;
+        boolean anyMove = false, allWon = true;
+        for (long rest = mine; rest != 0; rest &= rest - 1) {
+            int from = Long.numberOfTrailingZeros(rest);
+            for (int d = 0; d < Lines.DIRS; d += 1) {
+                int[] targets = Lines.TARGET[from][d];
+                int n = Long.bitCount(occupied
+                                      & Lines.LINE[from][Lines.axis(d)]);
+                if (n > targets.length) {
+                    continue;
+                }
+                int to = targets[n - 1];
+                long toBit = 1L << to;
+                if ((mine & toBit) != 0
+                    || (theirs & Lines.BETWEEN[from][to]) != 0) {
+                    continue;
+                }
+                anyMove = true;
+                long nextMine = theirs & ~toBit,
+                    nextTheirs = mine ^ (1L << from) ^ toBit;
+                int value = decided(nextMine, nextTheirs), distance = 0;
+                if (value == DRAW) {
+                    value = value(nextMine, nextTheirs);
+                    distance = distance(nextMine, nextTheirs);
+                }
+                if (distance < _pass) {
+                    if (value == LOSS) {
+                        return WIN;
+                    } else if (value != WIN) {
+                        allWon = false;
+                    }
+                } else {
+                    allWon = false;
+                }
+            }
+        }
+        return anyMove && allWon ? LOSS : DRAW;
+    }
+
+    /** Build the table of positions with up to --endgame=N pieces per
+     *  side, writing it to --output (by default, endgame-N.tbl), with
+     *  distances if --distances is given. */
+    static void main(CommandArgs options) {
+        int maxPieces = options.getInt("--endgame");
+        Path file = Path.of(options.contains("--output")
+                            ? options.getFirst("--output")
+                            : "endgame-" + maxPieces + ".tbl");
+        try {
+            EndgameSolver solver = new EndgameSolver(maxPieces);
+            solver.solve(System.out);
+            solver.write(file, options.contains("--distances"));
+        } catch (IllegalArgumentException | IllegalStateException
+                 | IOException excp) {
+            Main.error(1, "%s%n", excp.getMessage());
+        }
+        System.exit(0);
+    }
+
+    /** Size of the buffer through which tables are written. */
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    /** Largest number of pieces per side. */
+    private final int _maxPieces;
+    /** The values of each class, by numbers of pieces. */
+    private final DirectLongArray[][] _values;
+    /** The distances of each class, by numbers of pieces. */
+    private final DirectLongArray[][] _distances;
+    /** The current pass. */
+    private int _pass;
+    /** True iff the current pass has decided any position. */
+    private boolean _changed;
+    /** Numbers of positions won and lost in the current group of
+     *  classes. */
+    private long _wins, _losses;
+    /** Largest distance of any position decided so far. */
+    private int _maxDistance;
+
+}
@@ -0,0 +1,222 @@
+package loa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/** A database of the game-theoretic values of all positions in which each
+ *  side has from 2 to some maximum number of pieces, as built by
+ *  EndgameSolver, read from a file through memory maps.
+ *
+ *  Since the rules treat the two colors alike, a position is described by
+ *  the pieces of the side to move (MINE) and of the other side (THEIRS),
+ *  and its value is WIN, LOSS, or DRAW for the side to move.  The
+ *  positions with M and T pieces form a class of size(M, T) positions,
+ *  numbered by index(): the combinatorial rank of MINE among the sets of
+ *  M squares, times the number of sets of T squares of the other 64 - M,
+ *  plus the rank of THEIRS among those.  (The rank of a set of squares
+ *  S1 < S2 < ... < Sk is the sum of C(Si, i).)
+ *
+ *  The file is a header (MAGIC, VERSION, the maximum number of pieces N,
+ *  and flags, all ints) followed by a section for each class, for M from
+ *  2 to N and, for each, T from 2 to N.  A section is the values of its
+ *  positions, 2 bits each, 32 to a long (the first in the low bits), then,
+ *  if the flags include HAS_DISTANCE, the distances of its positions, a
+ *  byte each, 8 to a long (likewise).  The distance of a won or lost
+ *  position is the number of plies to the end of the game under best play
+ *  (the winner hastening it and the loser delaying it); that of a drawn
+ *  position is 0.  All numbers are big-endian.  Sections are limited to
+ *  2 GB, which limits tables to MAX_PIECES (3) pieces per side.
+ *  @author JuKyung Choi
+ */
+class EndgameTable {
+
+    /** First four bytes of every table ("LOAE"). */
+    static final int MAGIC = 0x4c4f4145;
+    /** Format version. */
+    static final int VERSION = 1;
+    /** Size of the header. */
+    static final int HEADER_BYTES = 4 * Integer.BYTES;
+    /** Flag marking a table holding distances. */
+    static final int HAS_DISTANCE = 1;
+    /** Values of positions, for the side to move. */
+    static final int DRAW = 0, WIN = 1, LOSS = 2;
+    /** Least number of pieces per side in a table. */
+    static final int MIN_PIECES = 2;
+    /** Largest distance that can be stored. */
+    static final int MAX_DISTANCE = 255;
+    /** Largest number of pieces per side in a table, set below. */
+    static final int MAX_PIECES;
+
+    /** C(N, K), for 0 <= K <= N <= 64. */
+    static final long[][] BINOMIAL =
+        new long[Lines.SQUARES + 1][Lines.SQUARES + 1];
+
+    static {
+        for (int n = 0; n <= Lines.SQUARES; n += 1) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k += 1) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1]
+                    + (k < n ? BINOMIAL[n - 1][k] : 0);
+            }
+        }
+        int n;
+        for (n = MIN_PIECES; fits(n + 1); n += 1) {
+            continue;
+        }
+        MAX_PIECES = n;
+    }
+
+    /** Return true iff every section of a table with up to N pieces per
+     *  side (all of whose largest sections have N of each) is within the
+     *  2 GB mapping limit. */
+    private static boolean fits(int n) {
+        return 2 * n <= Lines.SQUARES
+            && distanceWords(size(n, n)) * Long.BYTES <= Integer.MAX_VALUE;
+    }
+
+    /** Return the number of positions with M pieces to move and T
+     *  others. */
+    static long size(int m, int t) {
+        return BINOMIAL[Lines.SQUARES][m] * BINOMIAL[Lines.SQUARES - m][t];
+    }
+
+    /** Return the number of the position with MINE to move and THEIRS
+     *  (disjoint bit masks, as in Lines) in its class. */
+    static long index(long mine, long theirs) {
+        long rankMine = 0, rankTheirs = 0;
+        int i = 1;
+        for (long rest = mine; rest != 0; rest &= rest - 1, i += 1) {
+            rankMine += BINOMIAL[Long.numberOfTrailingZeros(rest)][i];
+        }
+        i = 1;
+        for (long rest = theirs; rest != 0; rest &= rest - 1, i += 1) {
+            int sq = Long.numberOfTrailingZeros(rest);
+            int free = sq - Long.bitCount(mine & ((1L << sq) - 1));
+            rankTheirs += BINOMIAL[free][i];
+        }
+        return rankMine * BINOMIAL[Lines.SQUARES - Long.bitCount(mine)]
+            [Long.bitCount(theirs)] + rankTheirs;
+    }
+
+    /** Return the next set of as many squares as MASK after MASK in order
+     *  of rank (Gosper's method).  The result is meaningless if MASK is
+     *  the last. */
+    static long next(long mask) {
+        long low = mask & -mask, ripple = mask + low;
+        return (((ripple ^ mask) >>> 2) / low) | ripple;
+    }
+
+    /** Return the number of longs holding the values of N positions. */
+    static long valueWords(long n) {
+        return (n + VALUES_PER_WORD - 1) / VALUES_PER_WORD;
+    }
+
+    /** Return the number of longs holding the distances of N
+     *  positions. */
+    static long distanceWords(long n) {
+        return (n + Long.BYTES - 1) / Long.BYTES;
+    }
+
+    /** A table read from FILE.  Throws IOException if FILE cannot be
+     *  read or is not a table. */
+    EndgameTable(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                continue;
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES
+                || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(file + ": not an endgame table");
+            }
+            _maxPieces = header.getInt();
+            boolean distances = (header.getInt() & HAS_DISTANCE) != 0;
+            if (_maxPieces < MIN_PIECES || _maxPieces > MAX_PIECES) {
+                throw new IOException(file + ": bad endgame table");
+            }
+            _values = new MappedByteBuffer[_maxPieces + 1][_maxPieces + 1];
+            _distances = new MappedByteBuffer[_maxPieces + 1][_maxPieces + 1];
+            long offset = HEADER_BYTES;
+            for (int m = MIN_PIECES; m <= _maxPieces; m += 1) {
+                for (int t = MIN_PIECES; t <= _maxPieces; t += 1) {
+                    long bytes = valueWords(size(m, t)) * Long.BYTES;
+                    _values[m][t] = map(channel, file, offset, bytes);
+                    offset += bytes;
+                    if (distances) {
+                        bytes = distanceWords(size(m, t)) * Long.BYTES;
+                        _distances[m][t] = map(channel, file, offset, bytes);
+                        offset += bytes;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return the BYTES bytes at OFFSET in CHANNEL, reading FILE, mapped
+     *  into memory. */
+    private static MappedByteBuffer map(FileChannel channel, Path file,
+                                        long offset, long bytes)
+        throws IOException {
+        if (bytes > Integer.MAX_VALUE || offset + bytes > channel.size()) {
+            throw new IOException(file + ": bad endgame table");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes);
+    }
+
+    /** Return the largest number of pieces per side that I cover. */
+    int maxPieces() {
+        return _maxPieces;
+    }
+
+    /** Return true iff I hold distances. */
+    boolean hasDistances() {
+        return _distances[MIN_PIECES][MIN_PIECES] != null;
+    }
+
+    /** Return true iff I hold the position with MINE to move and
+     *  THEIRS. */
+    boolean covers(long mine, long theirs) {
+        int m = Long.bitCount(mine), t = Long.bitCount(theirs);
+        return m >= MIN_PIECES && m <= _maxPieces
+            && t >= MIN_PIECES && t <= _maxPieces;
+    }
+
+    /** Return the value of the position with MINE to move and THEIRS,
+     *  which I must cover. */
+    int value(long mine, long theirs) {
+        long k = index(mine, theirs);
+        long word = _values[Long.bitCount(mine)][Long.bitCount(theirs)]
+            .getLong((int) (k / VALUES_PER_WORD) * Long.BYTES);
+        return (int) (word >>> (k % VALUES_PER_WORD * 2)) & 3;
+    }
+
+    /** Return the distance of the position with MINE to move and THEIRS,
+     *  which I must cover, or 0 if I hold no distances. */
+    int distance(long mine, long theirs) {
+        MappedByteBuffer distances =
+            _distances[Long.bitCount(mine)][Long.bitCount(theirs)];
+        if (distances == null) {
+            return 0;
+        }
+        long k = index(mine, theirs);
+        long word = distances.getLong((int) (k / Long.BYTES) * Long.BYTES);
+        return (int) (word >>> (k % Long.BYTES * Byte.SIZE)) & 0xff;
+    }
+
+    /** Number of values held in one long. */
+    static final int VALUES_PER_WORD = Long.SIZE / 2;
+
+    /** Largest number of pieces per side covered. */
+    private final int _maxPieces;
+    /** The values of each class, by numbers of pieces. */
+    private final MappedByteBuffer[][] _values;
+    /** The distances of each class, by numbers of pieces, or null. */
+    private final MappedByteBuffer[][] _distances;
+
+}
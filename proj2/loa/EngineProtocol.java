@@ -0,0 +1,276 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/** A line-based protocol through which other programs (GUIs, match
+ *  managers, analysis scripts) drive the AI.  Each input line is one
+ *  command; output lines are machine-readable replies.  The commands are
+ *
+ *      loa                 Identify the engine; answered by id lines,
+ *                          option lines, and "loaok".
+ *      isready             Answered by "readyok".
+ *      setoption name N value V
+ *                          Set AI option N to V for later searches (see
+ *                          MachinePlayer.setOption).
+ *      newgame             Return to the initial position, ending the
+ *                          game for the learning cache, if any.
+ *      position startpos [moves M1 M2 ...]
+ *      position ROWS TURN [moves M1 M2 ...]
+ *                          Set up the initial position, or the one given
+ *                          in position notation (see Notation), then make
+ *                          the given moves (in the standard notation).
+ *      go [depth D] [movetime T] [nodes N] [infinite]
+ *                          Start searching the current position for the
+ *                          side to move, within the given limits (which
+ *                          override the options for this search only).
+ *                          While it runs, "info ..." lines report each
+ *                          completed depth; it ends with "bestmove M"
+ *                          ("bestmove none" if there is no legal move).
+ *      stop                End the current search at once.
+ *      quit                End the program.
+ *
+ *  Errors are reported on lines starting "info string error".  The
+ *  search runs on its own thread, so commands are read while it is in
+ *  progress; setoption, newgame, position, and go first stop it (as
+ *  stop does), so that its bestmove precedes their effects.  The end of
+ *  the input acts as stop followed by quit.
+ *  @author JuKyung Choi
+ */
+class EngineProtocol {
+
+    /** A protocol session reading commands from INPUT and writing replies
+     *  to OUTPUT. */
+    EngineProtocol(BufferedReader input, PrintStream output) {
+        _input = input;
+        _out = output;
+        _player.setInfoStream(output);
+        _limits.put("depth", Integer.toString(MachinePlayer.DEPTH));
+        _limits.put("movetime", "0");
+        _limits.put("nodes", "0");
+    }
+
+    /** Process commands until quit or the end of the input. */
+    void run() throws IOException {
+        for (String line = _input.readLine(); line != null;
+             line = _input.readLine()) {
+            if (!process(line.trim())) {
+                break;
+            }
+        }
+        stopSearch();
+    }
+
+    /** Process the command LINE.  Return false iff it is quit. */
+    boolean process(String line) {
+        String[] words = line.split("\\s+");
+        try {
+            switch (words[0]) {
+            case "":
+                break;
+            case "loa":
+                send("id name loa %s", Main.VERSION);
+                send("id author JuKyung Choi");
+                send("option name depth type spin default %d",
+                     MachinePlayer.DEPTH);
+                send("option name movetime type spin default 0");
+                send("option name nodes type spin default 0");
+                send("option name eval type combo default classic "
+                     + "var classic var nnue var pattern");
+                send("option name mobility type string default 0");
+                send("option name nnue type string default <empty>");
+                send("option name weights type string default <empty>");
+                send("option name endgame type string default none");
+                send("option name learn type string default none");
+                send("loaok");
+                break;
+            case "isready":
+                send("readyok");
+                break;
+            case "setoption":
+                stopSearch();
+                setOption(words);
+                break;
+            case "newgame":
+                stopSearch();
+                if (_player.learningCache() != null) {
+                    _player.learningCache().gameEnded();
+                }
+                _board.clear();
+                break;
+            case "position":
+                stopSearch();
+                position(words);
+                break;
+            case "go":
+                stopSearch();
+                go(words);
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "quit":
+                stopSearch();
+                return false;
+            default:
+                error("unknown command: %s", words[0]);
+            }
+        } catch (IllegalArgumentException excp) {
+            error("%s", excp.getMessage());
+        }
+        return true;
+    }
+
+    /** Set the AI settings SPEC (as for MachinePlayer.setOptions) as if
+     *  by setoption commands.  Throws IllegalArgumentException, changing
+     *  nothing, if SPEC is invalid. */
+    void setOptions(String spec) {
+        MachinePlayer.checkOptions(spec);
+        stopSearch();
+        _player.setOptions(spec);
+        for (String setting : spec.split(",")) {
+            int eq = setting.indexOf('=');
+            if (eq >= 0) {
+                recordLimit(setting.substring(0, eq).trim(),
+                            setting.substring(eq + 1).trim());
+            }
+        }
+    }
+
+    /** Remember VALUE as the setting of option NAME if NAME is one of the
+     *  limits that go may override. */
+    private void recordLimit(String name, String value) {
+        name = name.toLowerCase();
+        if (_limits.containsKey(name)) {
+            _limits.put(name, value);
+        }
+    }
+
+    /** Process "setoption name N value V" in WORDS. */
+    private void setOption(String[] words) {
+        if (words.length != 5 || !words[1].equals("name")
+            || !words[3].equals("value")) {
+            throw new IllegalArgumentException("bad setoption");
+        }
+        _player.setOption(words[2], words[4]);
+        recordLimit(words[2], words[4]);
+    }
+
+    /** Process "position ..." in WORDS. */
+    private void position(String[] words) {
+        int k = 1;
+        Board board = new Board();
+        if (k < words.length && words[k].equals("startpos")) {
+            k += 1;
+        } else if (k + 1 < words.length) {
+            board.initialize(words[k] + " " + words[k + 1]);
+            k += 2;
+        } else {
+            throw new IllegalArgumentException("bad position");
+        }
+        if (k < words.length) {
+            if (!words[k].equals("moves")) {
+                throw new IllegalArgumentException("bad position");
+            }
+            for (k += 1; k < words.length; k += 1) {
+                Move move = Move.create(words[k], board);
+                if (move == null || !board.isLegal(move)) {
+                    throw new IllegalArgumentException("illegal move: "
+                                                       + words[k]);
+                }
+                board.makeMove(move);
+            }
+        }
+        _board = board;
+    }
+
+    /** Process "go ..." in WORDS, starting a search thread. */
+    private void go(String[] words) {
+        MachinePlayer engine = _player;
+        for (Map.Entry<String, String> limit : _limits.entrySet()) {
+            engine.setOption(limit.getKey(), limit.getValue());
+        }
+        for (int k = 1; k < words.length; k += 1) {
+            switch (words[k]) {
+            case "infinite":
+                engine.setOption("depth", Integer.toString(MAX_DEPTH));
+                engine.setOption("movetime", "0");
+                engine.setOption("nodes", "0");
+                break;
+            case "depth": case "movetime": case "nodes":
+                if (k + 1 == words.length) {
+                    throw new IllegalArgumentException("missing value");
+                }
+                engine.setOption(words[k], words[k + 1]);
+                k += 1;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown go option: "
+                                                   + words[k]);
+            }
+        }
+        Board board = new Board(_board);
+        _search = new Thread(() -> {
+            Move best = engine.search(board);
+            send("bestmove %s", best == null ? "none" : best);
+        }, "loa-search");
+        _search.start();
+    }
+
+    /** Stop any search in progress and wait for its bestmove.  The stop
+     *  request is repeated until the search thread ends, since a search
+     *  that has not yet begun would clear it. */
+    private void stopSearch() {
+        if (_search == null) {
+            return;
+        }
+        try {
+            while (_search.isAlive()) {
+                _player.stop();
+                _search.join(STOP_POLL);
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        _search = null;
+    }
+
+    /** Send the reply formatted from FORMAT and ARGS (as for printf) as one
+     *  line. */
+    private void send(String format, Object... args) {
+        synchronized (_out) {
+            _out.printf(format, args);
+            _out.println();
+            _out.flush();
+        }
+    }
+
+    /** Report an error, formatted from FORMAT and ARGS. */
+    private void error(String format, Object... args) {
+        send("info string error " + String.format(format, args));
+    }
+
+    /** Depth used by "go infinite". */
+    private static final int MAX_DEPTH = 64;
+    /** Milliseconds between repeated stop requests. */
+    private static final long STOP_POLL = 10;
+
+    /** Source of commands. */
+    private final BufferedReader _input;
+    /** Destination of replies. */
+    private final PrintStream _out;
+    /** The current position. */
+    private Board _board = new Board();
+    /** The engine, holding the options set by setoption, which does
+     *  every search. */
+    private final MachinePlayer _player = new MachinePlayer(Piece.BP, null);
+    /** The settings of the limits that go may override for one search,
+     *  restored before each search. */
+    private final HashMap<String, String> _limits = new HashMap<>();
+    /** The thread doing the current search, if any. */
+    private Thread _search;
+
+}
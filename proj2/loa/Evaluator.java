@@ -0,0 +1,15 @@
+package loa;
+
+/** An evaluation function that keeps whatever it needs up to date by
+ *  listening to the board being searched (see Board.setListener), so that
+ *  evaluating a position costs little more than combining a few sums.
+ *  @author JuKyung Choi
+ */
+interface Evaluator extends BoardListener {
+
+    /** Return the value of the current position of the board to which I
+     *  listen for SIDE: positive if good for SIDE, and less in magnitude
+     *  than a win. */
+    double evaluate(Piece side);
+
+}
@@ -1,14 +1,23 @@
 package loa;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Date;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
 import static loa.Piece.*;
-import static loa.Main.*;
 
 /**
  * Represents one game of Lines of Action.
@@ -16,14 +25,32 @@ import static loa.Main.*;
  */
 class Game {
 
-    /** A new series of Games. */
+    /** A new series of Games, reading the standard input and writing the
+     *  standard output. */
     Game() {
+        this(new BufferedReader(new InputStreamReader(System.in)),
+             System.out);
+    }
+
+    /** A new series of Games, reading commands from INPUT (which may be
+     *  null if commands are never read) and writing to OUTPUT. */
+    Game(BufferedReader input, PrintStream output) {
+        this(input, output, System.err);
+    }
+
+    /** A new series of Games, reading commands from INPUT (which may be
+     *  null if commands are never read), writing to OUTPUT, and reporting
+     *  errors on ERRORS. */
+    Game(BufferedReader input, PrintStream output, PrintStream errors) {
         _randomSource = new Random();
 
         _players = new Player[2];
-        _input = new BufferedReader(new InputStreamReader(System.in));
+        _input = new CommandReader(input, this::urgentCommand);
+        _out = output;
+        _err = errors;
+        _board = new Board();
         _players[0] = new HumanPlayer(BP, this);
-        _players[1] = new MachinePlayer(WP, this);
+        _players[1] = newMachinePlayer(WP);
         _playing = false;
     }
 
@@ -32,9 +59,95 @@ class Game {
         return _board;
     }
 
-    /** Quit the game. */
+    /** Return the stream to which this game writes its output. */
+    PrintStream output() {
+        return _out;
+    }
+
+    /** Make PLAYER play SIDE's pieces.  Stops any game in progress. */
+    void setPlayer(Piece side, Player player) {
+        _playing = false;
+        _players[side.ordinal()] = player;
+    }
+
+    /** Apply the AI settings SPEC (as for MachinePlayer.setOptions) to
+     *  every automated player, now and as they are created.  Throws
+     *  IllegalArgumentException if SPEC is invalid. */
+    void setMachineOptions(String spec) {
+        MachinePlayer.checkOptions(spec);
+        _machineOptions = spec;
+        for (Player player : _players) {
+            if (player instanceof MachinePlayer) {
+                ((MachinePlayer) player).setOptions(spec);
+            }
+        }
+    }
+
+    /** Return a new automated player of SIDE's pieces in this game, with
+     *  my AI settings. */
+    private MachinePlayer newMachinePlayer(Piece side) {
+        MachinePlayer player = new MachinePlayer(side, this);
+        player.setOptions(_machineOptions);
+        return player;
+    }
+
+    /** Read commands on the thread calling play(), rather than on a
+     *  thread of their own.  While an AI player searches on my search
+     *  pool, that thread checks for commands that must be obeyed at once
+     *  every INPUT_POLL milliseconds. */
+    void readCommandsDirectly() {
+        _input.readDirectly();
+    }
+
+    /** Return the move found by SEARCH, an AI search running on my search
+     *  pool, handling any urgent commands that arrive meanwhile. */
+    Move awaitSearch(Future<Move> search)
+        throws InterruptedException, ExecutionException {
+        while (true) {
+            try {
+                return search.get(INPUT_POLL, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException excp) {
+                _input.poll();
+            }
+        }
+    }
+
+    /** Make AI players search on POOL rather than on the thread calling
+     *  play(), or on the latter if POOL is null. */
+    void setSearchPool(ExecutorService pool) {
+        _searchPool = pool;
+    }
+
+    /** Return the pool on which AI players search, or null if they search
+     *  on the thread calling play(). */
+    ExecutorService searchPool() {
+        return _searchPool;
+    }
+
+    /** Record in LATENCY the time from reading each command to prompting
+     *  for the next, or record nothing if LATENCY is null. */
+    void setLatencyRecorder(LatencyRecorder latency) {
+        _latency = latency;
+    }
+
+    /** Publish each position and move of my games to SPECTATORS, or to no
+     *  one if SPECTATORS is null. */
+    void setSpectators(SpectatorServer spectators) {
+        _spectators = spectators;
+    }
+
+    /** Publish the current position to my spectators, if any, as reached
+     *  by MOVE, or as a new position if MOVE is null. */
+    private void publish(Move move) {
+        if (_spectators != null) {
+            _spectators.publish(_board, move);
+        }
+    }
+
+    /** Quit the game: play() returns as soon as the current move, if any,
+     *  is finished. */
     private void quit() {
-        System.exit(0);
+        _quit = true;
     }
 
     /**
@@ -44,13 +157,15 @@ class Game {
     Move getMove() {
         try {
             boolean playing0 = _playing;
-            while (_playing == playing0) {
+            while (_playing == playing0 && !_quit) {
                 prompt();
 
-                String line = _input.readLine();
+                String line = _input.take();
                 if (line == null) {
                     quit();
+                    break;
                 }
+                _commandStart = System.nanoTime();
 
                 line = line.trim();
                 if (!processCommand(line)) {
@@ -67,17 +182,57 @@ class Game {
                 }
             }
         } catch (IOException excp) {
-            error(1, "unexpected I/O error on input");
+            error("unexpected I/O error on input%n");
+            quit();
         }
         return null;
     }
 
     /** Print a prompt for a move. */
     private void prompt() {
-        System.out.print("> ");
-        System.out.flush();
+        if (_latency != null && _commandStart != 0) {
+            _latency.record(System.nanoTime() - _commandStart);
+            _commandStart = 0;
+        }
+        _out.print("> ");
+        _out.flush();
     }
 
+    /** Record that PLAYER is (if non-null) or is no longer (if null)
+     *  choosing a move without reading from the input. */
+    void setThinking(Player player) {
+        _thinking = player;
+    }
+
+    /** If LINE is a command that must be obeyed even while a player is
+     *  thinking, and one is, process it and return true.  Otherwise return
+     *  false.  Called from the input thread.  Commands handled here either
+     *  leave the official board alone or end the program. */
+    private boolean urgentCommand(String line) {
+        Player thinker = _thinking;
+        if (thinker == null) {
+            return false;
+        }
+        switch (line.toLowerCase()) {
+        case "stop":
+            thinker.stop();
+            return true;
+        case "dump":
+            _out.println(_board);
+            return true;
+        case "quit":
+            thinker.stop();
+            quit();
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /** Milliseconds between checks for urgent commands during a search
+     *  when reading commands directly. */
+    private static final long INPUT_POLL = 10;
+
     /** Describes a command with up to two arguments. */
     private static final Pattern COMMAND_PATN =
         Pattern.compile("(#|\\S+)\\s*(\\S*)\\s*(\\S*).*");
@@ -96,6 +251,7 @@ class Game {
             case "clear":
                 _playing = false;
                 _board.clear();
+                publish(null);
                 return true;
             case "start":
                 _playing = true;
@@ -116,15 +272,27 @@ class Game {
                 } else {
                     _board.setTurn(BP);
                 }
+                publish(null);
                 return true;
             case "dump":
-                System.out.println(_board);
+                _out.println(_board);
+                return true;
+            case "stop":
                 return true;
             case "#":
                 return true;
             case "seed":
                 seedCommand(command.group(2));
                 return true;
+            case "position":
+                positionCommand(command.group(2), command.group(3));
+                return true;
+            case "save":
+                saveCommand(command.group(2));
+                return true;
+            case "load":
+                loadCommand(command.group(2));
+                return true;
             case "quit":
                 quit();
                 return true;
@@ -222,7 +390,7 @@ class Game {
         try {
             Piece s = Piece.playerValueOf(player);
             _playing = false;
-            _players[s.ordinal()] = new MachinePlayer(s, this);
+            _players[s.ordinal()] = newMachinePlayer(s);
         } catch (IllegalArgumentException excp) {
             error("unknown player: %s", player);
         }
@@ -231,26 +399,94 @@ class Game {
     /** Seed random-number generator with SEED (as a long). */
     private void seedCommand(String seed) {
         try {
-            _randomSource.setSeed(Long.parseLong(seed));
+            setSeed(Long.parseLong(seed));
         } catch (NumberFormatException excp) {
             error("Invalid number: %s", seed);
         }
     }
 
-    /** Play this game, printing any results. */
+    /** Print the current position in position notation (see Notation)
+     *  if ROWS is empty; otherwise stop any game in progress and set up
+     *  the position whose rows are ROWS, with TURN to move. */
+    private void positionCommand(String rows, String turn) {
+        if (rows.isEmpty()) {
+            _out.println(_board.positionString());
+            return;
+        }
+        try {
+            _board.initialize(rows + " " + turn);
+            _playing = false;
+            publish(null);
+        } catch (IllegalArgumentException excp) {
+            error("%s%n", excp.getMessage());
+        }
+    }
+
+    /** Write a record of the current game to the file named FILE. */
+    private void saveCommand(String file) {
+        GameRecord record;
+        try {
+            record = GameRecord.of(_board);
+        } catch (IllegalArgumentException excp) {
+            error("cannot save this game: %s%n", excp.getMessage());
+            return;
+        }
+        record.setTag("Date", String.format("%tY.%<tm.%<td", new Date()));
+        record.setTag("Black", playerName(BP));
+        record.setTag("White", playerName(WP));
+        try (GameRecordWriter out =
+             new GameRecordWriter(new BufferedWriter(new FileWriter(file)))) {
+            out.write(record);
+        } catch (IOException excp) {
+            error("cannot write %s: %s%n", file, excp.getMessage());
+        }
+    }
+
+    /** Stop any game in progress and replace the board with the end of
+     *  the first game recorded in the file named FILE. */
+    private void loadCommand(String file) {
+        try (GameRecordReader in =
+             new GameRecordReader(new BufferedReader(new FileReader(file)))) {
+            GameRecord record = in.next();
+            if (record == null) {
+                error("no game in %s%n", file);
+                return;
+            }
+            Board board = record.replay(true);
+            _playing = false;
+            _board.copyFrom(board);
+            publish(null);
+        } catch (IOException | IllegalArgumentException excp) {
+            error("cannot load %s: %s%n", file, excp.getMessage());
+        }
+    }
+
+    /** Return a description of the player of SIDE's pieces, for game
+     *  records. */
+    private String playerName(Piece side) {
+        return _players[side.ordinal()] instanceof MachinePlayer
+            ? "auto" : "manual";
+    }
+
+    /** Play this game, printing any results, until told to quit or
+     *  interrupted. */
     public void play() {
         _board = new Board();
-        while (true) {
+        publish(null);
+        while (!_quit && !Thread.currentThread().isInterrupted()) {
             int playerInd = _board.turn().ordinal();
             Move next;
             if (_playing) {
                 if (_board.gameOver()) {
                     announceWinner();
+                    gameEnded();
                     _playing = false;
                     continue;
                 }
                 next = _players[playerInd].makeMove();
-                _win = _players[playerInd].getSide();
+                if (_quit || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
                 assert !_playing || next != null;
             } else {
                 getMove();
@@ -259,8 +495,10 @@ class Game {
             if (next != null) {
                 assert _board.isLegal(next);
                 _board.makeMove(next);
+                publish(next);
                 if (_board.gameOver()) {
                     announceWinner();
+                    gameEnded();
                     _playing = false;
                 }
             }
@@ -269,20 +507,57 @@ class Game {
 
     /** Print an announcement of the winner. */
     private void announceWinner() {
-        String opp = _board.getTurn().opposite().fullName();
-        String me = _board.getTurn().fullName();
-        String both = _win.fullName();
-        if (_board.piecesContiguous(_board.getTurn().opposite())
-                && _board.piecesContiguous(_board.getTurn())) {
-            System.out.println(both.substring(0, 1).toUpperCase()
-                    + both.substring(1) + " wins.");
-        } else if (_board.piecesContiguous(_board.getTurn().opposite())) {
-            System.out.println(opp.substring(0, 1).toUpperCase()
-                + opp.substring(1) + " wins.");
-        } else if (_board.piecesContiguous(_board.getTurn())) {
-            System.out.println(me.substring(0, 1).toUpperCase()
-                    + me.substring(1) + " wins.");
+        Piece winner = _board.winner();
+        if (winner != null) {
+            String name = winner.fullName();
+            _out.println(name.substring(0, 1).toUpperCase()
+                    + name.substring(1) + " wins.");
+        }
+    }
+
+    /** Tell the learning caches of my automated players, if any, that a
+     *  game has ended. */
+    private void gameEnded() {
+        LearningCache ended = null;
+        for (Player player : _players) {
+            if (player instanceof MachinePlayer) {
+                LearningCache cache = ((MachinePlayer) player).learningCache();
+                if (cache != null && cache != ended) {
+                    cache.gameEnded();
+                    ended = cache;
+                }
+            }
+        }
+    }
+
+    /** Play the current players against each other from the current
+     *  position, without reading any commands, until one side wins, the
+     *  side to move has no legal move, or MAXMOVES moves have been made.
+     *  Return the winner, or null if there is none. */
+    Piece playOut(int maxMoves) {
+        for (int n = 0; n < maxMoves; n += 1) {
+            if (_board.gameOver() || !_board.isLegalMove()) {
+                break;
+            }
+            Move next = _players[_board.turn().ordinal()].makeMove();
+            assert _board.isLegal(next);
+            _board.makeMove(next);
         }
+        gameEnded();
+        return _board.winner();
+    }
+
+    /** Report an error on my error stream.  FORMAT is the message format
+     *  (as for printf), and ARGS any additional arguments. */
+    private void error(String format, Object... args) {
+        _err.print("Error: ");
+        _err.printf(format, args);
+        _err.flush();
+    }
+
+    /** Seed my random-number generator with SEED. */
+    void setSeed(long seed) {
+        _randomSource.setSeed(seed);
     }
 
     /**
@@ -295,24 +570,32 @@ class Game {
 
     /** Print a help message. */
     void help() {
-        System.out.println("start     Start playing from the "
+        _out.println("start     Start playing from the "
                 + "current position.");
-        System.out.println("uv-xy     A move from square uv to square xy."
+        _out.println("uv-xy     A move from square uv to square xy."
                 + "  Here u and v are column designations (a-h) and v and"
                 + "y are row designations (1-8):");
-        System.out.println("clear     Stop game and return to initial"
+        _out.println("clear     Stop game and return to initial"
                 + " position.");
-        System.out.println("seed N    Seed the random number with integer N.");
-        System.out.println("auto P    P is white or black; makes P into"
+        _out.println("seed N    Seed the random number with integer N.");
+        _out.println("auto P    P is white or black; makes P into"
                 + " an AI. Stops game.");
-        System.out.println("manual P  P is white or black; takes moves for P"
+        _out.println("manual P  P is white or black; takes moves for P"
                 + " from terminal. Stops game.");
-        System.out.println("set cr P  Put P ('w', 'b', or empty) into"
+        _out.println("set cr P  Put P ('w', 'b', or empty) into"
                 + " square cr. Stops game.");
-        System.out.println("dump      Display the board in standard format.");
-        System.out.println("quit      End program.");
-        System.out.println("help");
-        System.out.println("?         This text.");
+        _out.println("position  Print the position in one-line notation.");
+        _out.println("position R T  Stop game and set up the position whose"
+                     + " rows (8 to 1) are R, with T to move.");
+        _out.println("save F    Write a record of the game to file F.");
+        _out.println("load F    Stop game and continue from the end of"
+                     + " the game recorded in file F.");
+        _out.println("dump      Display the board in standard format.");
+        _out.println("stop      Make an AI that is thinking move at"
+                + " once.");
+        _out.println("quit      End program.");
+        _out.println("help");
+        _out.println("?         This text.");
     }
 
     /** The official game board. */
@@ -328,7 +611,33 @@ class Game {
     private Random _randomSource;
 
     /** Input source. */
-    private BufferedReader _input;
+    private CommandReader _input;
+
+    /** Output destination. */
+    private PrintStream _out;
+
+    /** Destination of error messages. */
+    private PrintStream _err;
+
+    /** Settings applied to each automated player. */
+    private String _machineOptions = "";
+
+    /** Pool on which AI players search, or null. */
+    private ExecutorService _searchPool;
+
+    /** Where to publish positions and moves, or null. */
+    private SpectatorServer _spectators;
+
+    /** Where to record command latencies, or null. */
+    private LatencyRecorder _latency;
+
+    /** Time (as from System.nanoTime) at which the command being processed
+     *  was read, or 0. */
+    private long _commandStart;
+
+    /** The player currently choosing a move without reading the input, if
+     *  any. */
+    private volatile Player _thinking;
 
     /**
      * True if actually playing (game started and not stopped or finished).
@@ -337,8 +646,6 @@ class Game {
     /**
      * True if user wants to quit.
      */
-    private boolean _quit;
-    /** Winner if both pieces are contiguous. */
-    private Piece _win;
+    private volatile boolean _quit;
 
 }
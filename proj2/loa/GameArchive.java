@@ -0,0 +1,84 @@
+package loa;
+
+import static loa.Piece.*;
+
+/** The layout of binary game archives, as written by GameArchiveWriter
+ *  and read by GameArchiveReader.  An archive is
+ *
+ *      a header of HEADER_BYTES bytes: MAGIC, VERSION, GAMES_PER_BLOCK,
+ *          and the number of blocks (ints), then the number of games and
+ *          the offset of the index (longs);
+ *      the blocks, each holding GAMES_PER_BLOCK consecutive games (the
+ *          last possibly fewer), compressed by Deflate;
+ *      the index: for each block, its offset (a long) and its compressed
+ *          and uncompressed lengths (ints).
+ *
+ *  All numbers are big-endian.  Uncompressed, each game is a flags byte
+ *  (the winner, as NO_RESULT, BLACK_WON, or WHITE_WON, plus HAS_SETUP if
+ *  the game did not start from the initial position), the starting
+ *  Position (only if HAS_SETUP), the number of moves (an unsigned short),
+ *  and the moves, each a 12-bit code packed two to three bytes (the
+ *  first in the high bits), with an odd last code in two bytes (padded
+ *  by four zero bits).  A move's code holds its from-square (as in
+ *  Lines) in its top 6 bits, its direction index in the next 3, and its
+ *  length less 1 in the low 3.
+ *  @author JuKyung Choi
+ */
+class GameArchive {
+
+    /** First four bytes of every archive ("LOAA"). */
+    static final int MAGIC = 0x4c4f4141;
+    /** Format version. */
+    static final int VERSION = 1;
+    /** Size of the header. */
+    static final int HEADER_BYTES = 4 * Integer.BYTES + 2 * Long.BYTES;
+    /** Size of one index entry. */
+    static final int INDEX_BYTES = Long.BYTES + 2 * Integer.BYTES;
+    /** Number of games per compressed block. */
+    static final int GAMES_PER_BLOCK = 256;
+    /** Largest number of moves in one game. */
+    static final int MAX_MOVES = 0xffff;
+
+    /** Flag values for the winner of a game. */
+    static final int NO_RESULT = 0, BLACK_WON = 1, WHITE_WON = 2;
+    /** Mask of the winner in a flags byte. */
+    static final int RESULT_MASK = 3;
+    /** Flag marking a game with a non-standard starting position. */
+    static final int HAS_SETUP = 4;
+
+    /** Return the code of MOVE. */
+    static int encode(Move move) {
+        int c0 = move.getCol0(), r0 = move.getRow0();
+        Direction dir = Direction.between(c0, r0, move.getCol1(),
+                                          move.getRow1());
+        return Lines.index(c0, r0) << 6 | dir.index() << 3
+            | (move.length() - 1);
+    }
+
+    /** Return the move on BOARD whose code is CODE, or null if there is
+     *  none. */
+    static Move decode(int code, Board board) {
+        int sq = code >>> 6;
+        return Move.create(Lines.col(sq), Lines.row(sq), (code & 7) + 1,
+                           Direction.fromIndex((code >>> 3) & 7), board);
+    }
+
+    /** Return the flag value for a game won by WINNER (null if none). */
+    static int resultFlag(Piece winner) {
+        return winner == BP ? BLACK_WON : winner == WP ? WHITE_WON
+            : NO_RESULT;
+    }
+
+    /** Return the winner described by FLAGS, or null if none. */
+    static Piece winner(int flags) {
+        switch (flags & RESULT_MASK) {
+        case BLACK_WON:
+            return BP;
+        case WHITE_WON:
+            return WP;
+        default:
+            return null;
+        }
+    }
+
+}
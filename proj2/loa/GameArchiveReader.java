@@ -0,0 +1,208 @@
+package loa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static java.nio.file.StandardOpenOption.*;
+import static loa.GameArchive.*;
+
+/** Random access to the games of a binary archive (see GameArchive).  The
+ *  file is mapped into memory; a game is found through the index, its
+ *  block decompressed (the last block used is kept), and its moves made
+ *  directly on a board supplied by the caller, with no objects created
+ *  per move.  A reader is not safe for use by several threads at once,
+ *  but copy() makes another reader of the same mapping cheaply.  Each
+ *  reader holds a native decompressor, released by close().  Archives
+ *  are limited to 2 GB.
+ *  @author JuKyung Choi
+ */
+class GameArchiveReader implements AutoCloseable {
+
+    /** A reader of the archive in FILE. */
+    GameArchiveReader(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("archive too large");
+            }
+            _map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        }
+        if (_map.limit() < HEADER_BYTES || _map.getInt(0) != MAGIC) {
+            throw new IOException("not a game archive");
+        }
+        if (_map.getInt(4) != VERSION) {
+            throw new IOException("unknown archive version");
+        }
+        _gamesPerBlock = _map.getInt(8);
+        _blocks = _map.getInt(12);
+        long games = _map.getLong(16), index = _map.getLong(24);
+        if (games > Integer.MAX_VALUE || _gamesPerBlock <= 0
+            || index < HEADER_BYTES
+            || index + (long) _blocks * INDEX_BYTES > _map.limit()) {
+            throw new IOException("corrupt archive header");
+        }
+        _games = (int) games;
+        _index = (int) index;
+        _starts = new int[_gamesPerBlock + 1];
+    }
+
+    /** A reader sharing the mapping of READER. */
+    private GameArchiveReader(GameArchiveReader reader) {
+        _map = reader._map;
+        _gamesPerBlock = reader._gamesPerBlock;
+        _blocks = reader._blocks;
+        _games = reader._games;
+        _index = reader._index;
+        _starts = new int[_gamesPerBlock + 1];
+    }
+
+    /** Return a new reader of the same archive, for use by another
+     *  thread. */
+    GameArchiveReader copy() {
+        return new GameArchiveReader(this);
+    }
+
+    /** Release my decompressor.  I may not be used afterward.  Readers
+     *  made by copy() are not affected, and must be closed separately. */
+    @Override
+    public void close() {
+        _inflater.end();
+    }
+
+    /** Return the number of games in the archive. */
+    int size() {
+        return _games;
+    }
+
+    /** Return the number of moves in game number GAME (from 0). */
+    int moveCount(int game) {
+        int p = locate(game);
+        return _raw.getShort(p + setupBytes(p) + 1) & 0xffff;
+    }
+
+    /** Return the winner of game number GAME, or null if none. */
+    Piece winner(int game) {
+        int p = locate(game);
+        return GameArchive.winner(_raw.get(p));
+    }
+
+    /** Set BOARD to the end of game number GAME. */
+    void replay(int game, Board board) {
+        replay(game, Integer.MAX_VALUE, board);
+    }
+
+    /** Set BOARD to the position in game number GAME after its first
+     *  PLIES moves (or all of them, if fewer).  Throws
+     *  IllegalStateException if the game does not decode to a sequence
+     *  of moves. */
+    void replay(int game, int plies, Board board) {
+        int p = locate(game);
+        int flags = _raw.get(p);
+        p += 1;
+        if ((flags & HAS_SETUP) != 0) {
+            _raw.position(p);
+            board.initialize(Position.read(_raw));
+            p += Position.BYTES;
+        } else {
+            board.clear();
+        }
+        int n = Math.min(plies, _raw.getShort(p) & 0xffff);
+        p += 2;
+        for (int k = 0; k < n; k += 1) {
+            int code;
+            if (k % 2 == 0) {
+                code = (_raw.get(p) & 0xff) << 4
+                    | (_raw.get(p + 1) & 0xf0) >>> 4;
+            } else {
+                code = (_raw.get(p + 1) & 0x0f) << 8
+                    | _raw.get(p + 2) & 0xff;
+                p += 3;
+            }
+            Move move = decode(code, board);
+            if (move == null) {
+                throw new IllegalStateException("corrupt move in game "
+                                                + game);
+            }
+            board.makeMove(move);
+        }
+    }
+
+    /** Return the number of bytes of starting position in the game at
+     *  P in the current block. */
+    private int setupBytes(int p) {
+        return (_raw.get(p) & HAS_SETUP) != 0 ? Position.BYTES : 0;
+    }
+
+    /** Make the block holding game number GAME current, and return the
+     *  offset of that game in it. */
+    private int locate(int game) {
+        if (game < 0 || game >= _games) {
+            throw new IndexOutOfBoundsException("no game " + game);
+        }
+        int block = game / _gamesPerBlock;
+        if (block != _block) {
+            load(block);
+        }
+        return _starts[game % _gamesPerBlock];
+    }
+
+    /** Decompress block number BLOCK into _raw and find its games. */
+    private void load(int block) {
+        int entry = _index + block * INDEX_BYTES;
+        int offset = (int) _map.getLong(entry),
+            packed = _map.getInt(entry + Long.BYTES),
+            length = _map.getInt(entry + Long.BYTES + Integer.BYTES);
+        if (_raw == null || _raw.capacity() < length) {
+            _raw = ByteBuffer.allocate(length);
+        }
+        _raw.clear();
+        _raw.limit(length);
+        ByteBuffer input = _map.duplicate();
+        input.position(offset).limit(offset + packed);
+        _inflater.reset();
+        _inflater.setInput(input);
+        try {
+            while (_raw.hasRemaining() && !_inflater.finished()) {
+                if (_inflater.inflate(_raw) == 0 && _inflater.needsInput()) {
+                    break;
+                }
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalStateException("corrupt block " + block);
+        }
+        int p = 0;
+        int count = Math.min(_gamesPerBlock,
+                             _games - block * _gamesPerBlock);
+        for (int g = 0; g < count; g += 1) {
+            _starts[g] = p;
+            int n = _raw.getShort(p + 1 + setupBytes(p)) & 0xffff;
+            p += 1 + setupBytes(p) + 2 + n / 2 * 3 + n % 2 * 2;
+        }
+        _block = block;
+    }
+
+    /** The mapped file. */
+    private final MappedByteBuffer _map;
+    /** Number of games in each block but the last. */
+    private final int _gamesPerBlock;
+    /** Number of blocks. */
+    private final int _blocks;
+    /** Number of games. */
+    private final int _games;
+    /** Offset of the index. */
+    private final int _index;
+    /** Offsets in the current block of each of its games. */
+    private final int[] _starts;
+    /** Decompressor for blocks. */
+    private final Inflater _inflater = new Inflater();
+    /** The current block, uncompressed. */
+    private ByteBuffer _raw;
+    /** Number of the current block, or -1. */
+    private int _block = -1;
+
+}
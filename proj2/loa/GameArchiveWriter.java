@@ -0,0 +1,159 @@
+package loa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static java.nio.file.StandardOpenOption.*;
+import static loa.GameArchive.*;
+
+/** Writes a binary game archive (see GameArchive), one game at a time.
+ *  Games are gathered into blocks, which are compressed and written as
+ *  they fill; the index and header are written by close().
+ *  @author JuKyung Choi
+ */
+class GameArchiveWriter implements AutoCloseable {
+
+    /** A writer of a new archive in FILE (replacing any existing file). */
+    GameArchiveWriter(Path file) throws IOException {
+        _out = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE);
+        _out.position(HEADER_BYTES);
+    }
+
+    /** Add the game played on BOARD: all the moves it has made, from the
+     *  position before the first of them, and its winner, if any. */
+    void add(Board board) throws IOException {
+        Board start = new Board(board);
+        while (start.movesMade() > 0) {
+            start.retract();
+        }
+        int n = board.movesMade();
+        if (n > MAX_MOVES) {
+            throw new IllegalArgumentException("game too long");
+        }
+        Position setup = start.snapshot();
+        boolean standard = start.equals(INITIAL);
+        reserve(1 + (standard ? 0 : Position.BYTES) + 2 + 2 * n);
+        _raw.put((byte) (resultFlag(board.winner())
+                         | (standard ? 0 : HAS_SETUP)));
+        if (!standard) {
+            setup.write(_raw);
+        }
+        _raw.putShort((short) n);
+        for (int k = 0; k < n; k += 2) {
+            int code0 = encode(board.move(k));
+            if (k + 1 < n) {
+                int code1 = encode(board.move(k + 1));
+                _raw.put((byte) (code0 >>> 4))
+                    .put((byte) (code0 << 4 | code1 >>> 8))
+                    .put((byte) code1);
+            } else {
+                _raw.put((byte) (code0 >>> 4)).put((byte) (code0 << 4));
+            }
+        }
+        _games += 1;
+        if (_games % GAMES_PER_BLOCK == 0) {
+            writeBlock();
+        }
+    }
+
+    /** Add the game in RECORD, which must be a sequence of legal moves. */
+    void add(GameRecord record) throws IOException {
+        add(record.replay(true));
+    }
+
+    /** Return the number of games added. */
+    long size() {
+        return _games;
+    }
+
+    /** Write any partly full block, the index, and the header, and close
+     *  the file. */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (_raw.position() > 0) {
+                writeBlock();
+            }
+            long indexOffset = _out.position();
+            _index.flip();
+            writeFully(_index);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(GAMES_PER_BLOCK)
+                .putInt(_blocks).putLong(_games).putLong(indexOffset);
+            header.flip();
+            _out.position(0);
+            writeFully(header);
+        } finally {
+            _deflater.end();
+            _out.close();
+        }
+    }
+
+    /** Compress and write the current block, and add it to the index. */
+    private void writeBlock() throws IOException {
+        int length = _raw.position();
+        _deflater.reset();
+        _deflater.setInput(_raw.array(), 0, length);
+        _deflater.finish();
+        int packed = 0;
+        while (!_deflater.finished()) {
+            if (packed == _packed.length) {
+                _packed = Arrays.copyOf(_packed, 2 * packed);
+            }
+            packed += _deflater.deflate(_packed, packed,
+                                        _packed.length - packed);
+        }
+        if (_index.remaining() < INDEX_BYTES) {
+            ByteBuffer index = ByteBuffer.allocate(2 * _index.capacity());
+            _index.flip();
+            _index = index.put(_index);
+        }
+        _index.putLong(_out.position()).putInt(packed).putInt(length);
+        writeFully(ByteBuffer.wrap(_packed, 0, packed));
+        _blocks += 1;
+        _raw.clear();
+    }
+
+    /** Make sure that at least N more bytes fit in the current block. */
+    private void reserve(int n) {
+        if (_raw.remaining() < n) {
+            ByteBuffer raw =
+                ByteBuffer.allocate(Math.max(2 * _raw.capacity(),
+                                             _raw.position() + n));
+            _raw.flip();
+            _raw = raw.put(_raw);
+        }
+    }
+
+    /** Write all of BUF at the current position of the file. */
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            _out.write(buf);
+        }
+    }
+
+    /** Initial size of the block buffers. */
+    private static final int BLOCK_SIZE = 1 << 16;
+    /** The standard initial position. */
+    private static final Board INITIAL = new Board();
+
+    /** The file being written. */
+    private final FileChannel _out;
+    /** Compressor for blocks. */
+    private final Deflater _deflater = new Deflater();
+    /** Contents of the current block, uncompressed. */
+    private ByteBuffer _raw = ByteBuffer.allocate(BLOCK_SIZE);
+    /** Space for a compressed block. */
+    private byte[] _packed = new byte[BLOCK_SIZE];
+    /** Index entries of the blocks written. */
+    private ByteBuffer _index = ByteBuffer.allocate(BLOCK_SIZE);
+    /** Number of blocks written. */
+    private int _blocks;
+    /** Number of games added. */
+    private long _games;
+
+}
@@ -0,0 +1,130 @@
+package loa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A record of one game: a set of named tags (such as the players and the
+ *  result), the starting position, and the moves made from it, in the
+ *  standard notation.  Game records are read and written in a text format
+ *  by GameRecordReader and GameRecordWriter.  The starting position is
+ *  held in the tag SETUP, which is absent when it is the standard initial
+ *  position; the winner is held in the tag RESULT.
+ *  @author JuKyung Choi
+ */
+class GameRecord {
+
+    /** Name of the tag holding a non-standard starting position, in
+     *  position notation (see Notation). */
+    static final String SETUP = "Setup";
+    /** Name of the tag holding the winner ("black" or "white"), or "*" if
+     *  the game is unfinished. */
+    static final String RESULT = "Result";
+
+    /** An empty record of a game from the initial position. */
+    GameRecord() {
+    }
+
+    /** Return a record of the game played on BOARD: its starting position
+     *  (found by retracting all its moves on a copy), its moves, and its
+     *  result.  Throws IllegalArgumentException if BOARD was edited since
+     *  its first move (see Board.edited), so that there is no such
+     *  starting position. */
+    static GameRecord of(Board board) {
+        if (board.edited()) {
+            throw new IllegalArgumentException("board was edited after "
+                                               + "moves were made");
+        }
+        GameRecord record = new GameRecord();
+        Board start = new Board(board);
+        while (start.movesMade() > 0) {
+            start.retract();
+        }
+        record.setSetup(start.snapshot());
+        for (int k = 0; k < board.movesMade(); k += 1) {
+            record.addMove(board.move(k).toString());
+        }
+        Piece winner = board.winner();
+        record.setTag(RESULT, winner == null ? "*" : winner.fullName());
+        return record;
+    }
+
+    /** Return the value of tag NAME, or null if it is absent. */
+    String tag(String name) {
+        return _tags.get(name);
+    }
+
+    /** Set tag NAME to VALUE, or remove it if VALUE is null. */
+    void setTag(String name, String value) {
+        if (value == null) {
+            _tags.remove(name);
+        } else {
+            _tags.put(name, value);
+        }
+    }
+
+    /** Return my tags, in the order first set. */
+    Map<String, String> tags() {
+        return Collections.unmodifiableMap(_tags);
+    }
+
+    /** Return the starting position. */
+    Position setup() {
+        String setup = tag(SETUP);
+        if (setup == null) {
+            return INITIAL;
+        }
+        return Notation.parsePosition(setup);
+    }
+
+    /** Make POSITION the starting position. */
+    void setSetup(Position position) {
+        if (position.equals(INITIAL)) {
+            setTag(SETUP, null);
+        } else {
+            StringBuilder setup = new StringBuilder();
+            Notation.formatPosition(position, setup);
+            setTag(SETUP, setup.toString());
+        }
+    }
+
+    /** Return my moves, in the standard notation. */
+    List<String> moves() {
+        return Collections.unmodifiableList(_moves);
+    }
+
+    /** Append the move denoted by MOVE. */
+    void addMove(String move) {
+        _moves.add(move);
+    }
+
+    /** Return a new board on which the game has been replayed, each move
+     *  being made by makeMove from the starting position.  If CHECK, each
+     *  move must be legal; otherwise it is only required to denote a move
+     *  of some piece, which is much faster.  Throws
+     *  IllegalArgumentException if a move fails these requirements. */
+    Board replay(boolean check) {
+        Board board = new Board(setup());
+        for (int k = 0; k < _moves.size(); k += 1) {
+            Move move = Move.create(_moves.get(k), board);
+            if (move == null || (check && !board.isLegal(move))) {
+                throw new IllegalArgumentException(
+                    String.format("illegal move %d: %s", k + 1,
+                                  _moves.get(k)));
+            }
+            board.makeMove(move);
+        }
+        return board;
+    }
+
+    /** The standard initial position. */
+    private static final Position INITIAL = new Board().snapshot();
+
+    /** My tags, in the order first set. */
+    private final LinkedHashMap<String, String> _tags = new LinkedHashMap<>();
+    /** My moves. */
+    private final ArrayList<String> _moves = new ArrayList<>();
+
+}
@@ -0,0 +1,111 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/** Reads game records in the format written by GameRecordWriter, one
+ *  record at a time, so that archives of any size may be scanned in
+ *  memory proportional to the longest game.  Blank lines between records
+ *  and move numbers are ignored; a record may have no tags or no moves.
+ *  @author JuKyung Choi
+ */
+class GameRecordReader implements AutoCloseable {
+
+    /** A reader of records from INPUT. */
+    GameRecordReader(BufferedReader input) {
+        _input = input;
+    }
+
+    /** Return the next record, or null if there are no more.  Throws
+     *  IllegalArgumentException if the input is malformed. */
+    GameRecord next() throws IOException {
+        String line = readLine();
+        while (line != null && line.trim().isEmpty()) {
+            line = readLine();
+        }
+        if (line == null) {
+            return null;
+        }
+        GameRecord record = new GameRecord();
+        for (; line != null && line.startsWith("["); line = readLine()) {
+            parseTag(line, record);
+        }
+        for (; line != null && !line.startsWith("["); line = readLine()) {
+            if (line.trim().isEmpty()) {
+                if (!record.moves().isEmpty()) {
+                    break;
+                }
+                continue;
+            }
+            for (String word : line.trim().split("\\s+")) {
+                if (!word.endsWith(".")) {
+                    record.addMove(word);
+                }
+            }
+        }
+        _pushedBack = line;
+        return record;
+    }
+
+    /** Return the number of the line last read. */
+    int lineNumber() {
+        return _lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _input.close();
+    }
+
+    /** Add the tag in LINE, which has the form [Name "value"], to
+     *  RECORD. */
+    private void parseTag(String line, GameRecord record) {
+        line = line.trim();
+        int space = line.indexOf(' ');
+        if (space < 2 || !line.endsWith("\"]")
+            || line.charAt(space + 1) != '"') {
+            throw badTag();
+        }
+        StringBuilder value = new StringBuilder();
+        int end = line.length() - 2;
+        for (int i = space + 2; i < end; i += 1) {
+            char ch = line.charAt(i);
+            if (ch == '\\' && i + 1 < end) {
+                i += 1;
+                ch = line.charAt(i);
+            } else if (ch == '"') {
+                throw badTag();
+            }
+            value.append(ch);
+        }
+        record.setTag(line.substring(1, space), value.toString());
+    }
+
+    /** Return an exception reporting a malformed tag. */
+    private IllegalArgumentException badTag() {
+        return new IllegalArgumentException("bad tag at line " + _lineNumber);
+    }
+
+    /** Return the next line of input, or null at the end. */
+    private String readLine() throws IOException {
+        String line;
+        if (_pushedBack != null) {
+            line = _pushedBack;
+            _pushedBack = null;
+        } else {
+            line = _input.readLine();
+            if (line != null) {
+                _lineNumber += 1;
+            }
+        }
+        return line;
+    }
+
+    /** Source of records. */
+    private final BufferedReader _input;
+    /** A line read but not yet used, or null. */
+    private String _pushedBack;
+    /** Number of lines read. */
+    private int _lineNumber;
+
+}
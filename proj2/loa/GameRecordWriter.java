@@ -0,0 +1,77 @@
+package loa;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/** Writes game records, one after another, to a character stream.  Each
+ *  record is written as its tags, one to a line in the form
+ *
+ *      [Name "value"]
+ *
+ *  (with any " or \ in the value preceded by \), a blank line, the moves
+ *  numbered in pairs ("1. b1-b3 a2-c2 2. ..."), wrapped to lines of at
+ *  most LINE_LENGTH characters, and a blank line.
+ *  @author JuKyung Choi
+ */
+class GameRecordWriter implements AutoCloseable {
+
+    /** Maximum length of a line of moves. */
+    static final int LINE_LENGTH = 79;
+
+    /** A writer of records to OUT. */
+    GameRecordWriter(Writer out) {
+        _out = out;
+    }
+
+    /** Write RECORD. */
+    void write(GameRecord record) throws IOException {
+        for (Map.Entry<String, String> tag : record.tags().entrySet()) {
+            _out.write('[');
+            _out.write(tag.getKey());
+            _out.write(" \"");
+            String value = tag.getValue();
+            for (int i = 0; i < value.length(); i += 1) {
+                char ch = value.charAt(i);
+                if (ch == '"' || ch == '\\') {
+                    _out.write('\\');
+                }
+                _out.write(ch);
+            }
+            _out.write("\"]\n");
+        }
+        _out.write('\n');
+        int column = 0, k = 0;
+        for (String move : record.moves()) {
+            String word = k % 2 == 0 ? (k / 2 + 1) + ". " + move : move;
+            if (column > 0 && column + 1 + word.length() > LINE_LENGTH) {
+                _out.write('\n');
+                column = 0;
+            } else if (column > 0) {
+                _out.write(' ');
+                column += 1;
+            }
+            _out.write(word);
+            column += word.length();
+            k += 1;
+        }
+        if (column > 0) {
+            _out.write('\n');
+        }
+        _out.write('\n');
+    }
+
+    /** Flush any buffered output. */
+    void flush() throws IOException {
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _out.close();
+    }
+
+    /** Destination of records. */
+    private final Writer _out;
+
+}
@@ -0,0 +1,176 @@
+package loa;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ucb.util.CommandArgs;
+
+/** A server hosting many independent games at once, one for each client
+ *  connected to a port on the loopback interface.  Each connection is a
+ *  session that speaks the same line-based commands as the standard input
+ *  of the ordinary program, and has its own Game and Board.  Sessions,
+ *  which spend nearly all their time waiting for input, each run on a
+ *  single cheap thread of their own (a virtual thread where the Java
+ *  runtime provides them), which also reads the session's commands; AI
+ *  searches, which need the processors, run on a small shared pool.  The
+ *  time from reading each command to prompting for the next is recorded,
+ *  and its percentiles reported periodically and at shutdown.
+ *  @author JuKyung Choi
+ */
+class GameServer {
+
+    /** A server listening on PORT, running AI searches on THREADS
+     *  threads. */
+    GameServer(int port, int threads) {
+        _port = port;
+        _threads = Math.max(1, threads);
+    }
+
+    /** Accept and serve connections until the program is ended, writing
+     *  status reports on LOG. */
+    void run(PrintStream log) throws IOException {
+        Thread reporter = new Thread(() -> reportPeriodically(log),
+                                     "loa-report");
+        reporter.setDaemon(true);
+        reporter.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            report(log);
+        }));
+        try (ServerSocket server =
+             new ServerSocket(_port, BACKLOG,
+                              InetAddress.getLoopbackAddress())) {
+            log.printf("listening on %s%n", server.getLocalSocketAddress());
+            log.flush();
+            listen(server);
+        }
+    }
+
+    /** Accept connections on SERVER, starting a session for each, until
+     *  SERVER is closed. */
+    void listen(ServerSocket server) throws IOException {
+        ExecutorService searches = Executors.newFixedThreadPool(_threads);
+        ThreadFactory sessions = sessionThreads();
+        try {
+            while (true) {
+                Socket client = server.accept();
+                sessions.newThread(() -> serve(client, searches)).start();
+            }
+        } finally {
+            searches.shutdown();
+        }
+    }
+
+    /** Play games with the client connected to CLIENT until it quits or
+     *  disconnects, searching on SEARCHES. */
+    private void serve(Socket client, ExecutorService searches) {
+        _active.incrementAndGet();
+        _total.incrementAndGet();
+        try (Socket socket = client) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(
+                                       socket.getInputStream()), BUFFER_SIZE);
+            PrintStream out =
+                new PrintStream(new BufferedOutputStream(
+                                    socket.getOutputStream(), BUFFER_SIZE),
+                                true);
+            Game game = new Game(in, out, out);
+            game.readCommandsDirectly();
+            game.setSearchPool(searches);
+            game.setLatencyRecorder(_latency);
+            game.play();
+            out.flush();
+        } catch (IOException excp) {
+            /* The client went away; nothing more to do. */
+        } finally {
+            _active.decrementAndGet();
+        }
+    }
+
+    /** Write a report on LOG every REPORT_INTERVAL milliseconds. */
+    private void reportPeriodically(PrintStream log) {
+        try {
+            while (true) {
+                Thread.sleep(REPORT_INTERVAL);
+                report(log);
+            }
+        } catch (InterruptedException excp) {
+            /* Stop reporting. */
+        }
+    }
+
+    /** Write the numbers of sessions and the command latencies on LOG. */
+    private void report(PrintStream log) {
+        log.printf("sessions active %d total %d%n", _active.get(),
+                   _total.get());
+        _latency.report("latency", log);
+    }
+
+    /** Return a factory for session threads: virtual threads if this
+     *  runtime has them, and otherwise daemon platform threads with small
+     *  stacks.  (Found reflectively, so that the program still compiles
+     *  and runs on runtimes without them.) */
+    static ThreadFactory sessionThreads() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                .invoke(builder, "loa-session-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory")
+                .invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            AtomicInteger count = new AtomicInteger();
+            return (r) -> {
+                Thread thread =
+                    new Thread(null, r, "loa-session-"
+                               + count.getAndIncrement(), STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    /** Serve games as directed by the command-line options --server=PORT
+     *  and --threads in OPTIONS, until the program is ended. */
+    static void main(CommandArgs options) {
+        try {
+            new GameServer(options.getInt("--server"),
+                           options.contains("--threads")
+                           ? options.getInt("--threads")
+                           : Runtime.getRuntime().availableProcessors())
+                .run(System.out);
+        } catch (IOException | IllegalArgumentException excp) {
+            Main.error(1, "%s%n", excp.getMessage());
+        }
+    }
+
+    /** Size of the buffers of each connection. */
+    private static final int BUFFER_SIZE = 1024;
+    /** Stack size of platform session threads. */
+    private static final long STACK_SIZE = 256 * 1024;
+    /** Maximum number of connections waiting to be accepted. */
+    private static final int BACKLOG = 1024;
+    /** Milliseconds between reports. */
+    private static final long REPORT_INTERVAL = 10000;
+
+    /** Port on which to listen. */
+    private final int _port;
+    /** Number of search threads. */
+    private final int _threads;
+    /** Numbers of sessions now in progress and ever started. */
+    private final AtomicInteger _active = new AtomicInteger(),
+        _total = new AtomicInteger();
+    /** Latencies of commands in all sessions. */
+    private final LatencyRecorder _latency = new LatencyRecorder();
+
+}
@@ -0,0 +1,110 @@
+package loa;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A lock-free histogram of latencies, shared by many threads.  Each
+ *  latency goes into one of a fixed set of buckets whose bounds grow
+ *  geometrically (four to a power of two), so that percentiles are
+ *  reported to within about 19% at any scale with constant memory.
+ *  @author JuKyung Choi
+ */
+class LatencyRecorder {
+
+    /** Record a latency of NANOS nanoseconds. */
+    void record(long nanos) {
+        _counts.incrementAndGet(bucket(Math.max(nanos, 1)));
+        _max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /** Return the number of latencies recorded. */
+    long count() {
+        long n = 0;
+        for (int b = 0; b < BUCKETS; b += 1) {
+            n += _counts.get(b);
+        }
+        return n;
+    }
+
+    /** Return an upper bound, in nanoseconds, of the latency below which
+     *  a fraction P (0 < P <= 1) of those recorded lie, or 0 if none have
+     *  been recorded. */
+    long percentile(double p) {
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for (int b = 0; b < BUCKETS; b += 1) {
+            counts[b] = _counts.get(b);
+            n += counts[b];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b += 1) {
+            seen += counts[b];
+            if (seen >= rank) {
+                return Math.min(upperBound(b), _max.get());
+            }
+        }
+        return _max.get();
+    }
+
+    /** Write a one-line summary labeled LABEL on OUT. */
+    void report(String label, PrintStream out) {
+        out.printf("%s count %d p50 %s p90 %s p99 %s max %s%n", label,
+                   count(), format(percentile(0.5)), format(percentile(0.9)),
+                   format(percentile(0.99)), format(_max.get()));
+        out.flush();
+    }
+
+    /** Return NANOS as a short human-readable duration. */
+    static String format(long nanos) {
+        if (nanos < MICRO) {
+            return nanos + "ns";
+        } else if (nanos < MILLI) {
+            return String.format("%.1fus", (double) nanos / MICRO);
+        } else {
+            return String.format("%.1fms", (double) nanos / MILLI);
+        }
+    }
+
+    /** Return the bucket holding latency NANOS > 0. */
+    static int bucket(long nanos) {
+        int log = 63 - Long.numberOfLeadingZeros(nanos);
+        if (log < SUB_BITS) {
+            return (int) nanos;
+        }
+        int sub = (int) (nanos >>> (log - SUB_BITS)) & (SUB - 1);
+        return (log - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /** Return the largest latency that falls in bucket B. */
+    static long upperBound(int b) {
+        if (b < SUB) {
+            return b;
+        }
+        int log = b / SUB + SUB_BITS - 1, sub = b % SUB;
+        if (log >= 63) {
+            return Long.MAX_VALUE;
+        }
+        long low = (long) (SUB + sub) << (log - SUB_BITS);
+        return low + (1L << (log - SUB_BITS)) - 1;
+    }
+
+    /** Log base 2 of the number of buckets for each power of two. */
+    private static final int SUB_BITS = 2;
+    /** Number of buckets for each power of two. */
+    private static final int SUB = 1 << SUB_BITS;
+    /** Total number of buckets. */
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+    /** Nanoseconds per microsecond and per millisecond. */
+    private static final long MICRO = 1000, MILLI = 1000000;
+
+    /** Number of latencies recorded in each bucket. */
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    /** Largest latency recorded. */
+    private final AtomicLong _max = new AtomicLong();
+
+}
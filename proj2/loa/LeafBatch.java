@@ -0,0 +1,277 @@
+package loa;
+
+import java.util.Arrays;
+
+/** The classic evaluation (MachinePlayer.eval) of a batch of positions at
+ *  once, such as all the children of a node at the frontier of a search.
+ *  Positions are packed as pairs of bit masks (see Lines), and their
+ *  features are computed a pass at a time over parallel arrays, each
+ *  feature of each position by a few population counts against
+ *  precomputed masks rather than by visiting squares: piece counts and
+ *  coordinate sums first, then the centers of mass, then distance sums.
+ *  The values are exactly those of MachinePlayer.eval, with the weights
+ *  set by setWeights.
+ *  @author JuKyung Choi
+ */
+class LeafBatch {
+
+    /** An empty batch. */
+    LeafBatch() {
+        resize(INITIAL_CAPACITY);
+    }
+
+    /** Return the number of positions in the batch. */
+    int size() {
+        return _size;
+    }
+
+    /** Empty the batch. */
+    void clear() {
+        _size = 0;
+    }
+
+    /** Add the position in which SIDE has the pieces OWN and its opponent
+     *  has OTHER, to be evaluated for SIDE. */
+    void add(long own, long other) {
+        if (_size == _own.length) {
+            resize(2 * _size);
+        }
+        _own[_size] = own;
+        _other[_size] = other;
+        _size += 1;
+    }
+
+    /** Add the positions after each legal move of the side with the pieces
+     *  MINE, playing against THEIRS, to be evaluated for that side, in the
+     *  order in which Board's move iterator produces the moves (by
+     *  square, then direction).  The move to each position is given by
+     *  from() and to(). */
+    void addChildren(long mine, long theirs) {
+        long occupied = mine | theirs;
+        for (long rest = mine; rest != 0; rest &= rest - 1) {
+            int from = Long.numberOfTrailingZeros(rest);
+            long fromBit = 1L << from;
+            for (int d = 0; d < Lines.DIRS; d += 1) {
+                int[] targets = Lines.TARGET[from][d];
+                int n = Long.bitCount(occupied
+                                      & Lines.LINE[from][Lines.axis(d)]);
+                if (n > targets.length) {
+                    continue;
+                }
+                int to = targets[n - 1];
+                long toBit = 1L << to;
+                if ((mine & toBit) != 0
+                    || (theirs & Lines.BETWEEN[from][to]) != 0) {
+                    continue;
+                }
+                add(mine ^ fromBit ^ toBit, theirs & ~toBit);
+                _from[_size - 1] = from;
+                _to[_size - 1] = to;
+            }
+        }
+    }
+
+    /** Return the square from which the move to position K, added by
+     *  addChildren, was made. */
+    int from(int k) {
+        return _from[k];
+    }
+
+    /** Return the square to which the move to position K, added by
+     *  addChildren, was made. */
+    int to(int k) {
+        return _to[k];
+    }
+
+    /** Add the position after MOVE, a legal move for the side to move on
+     *  BOARD, to be evaluated for that side. */
+    void add(Board board, Move move) {
+        Piece side = board.turn();
+        long from = 1L << Lines.index(move.getCol0(), move.getRow0()),
+            to = 1L << Lines.index(move.getCol1(), move.getRow1());
+        add((board.pieces(side) & ~from) | to,
+            board.pieces(side.opposite()) & ~to);
+    }
+
+    /** Evaluate every position in the batch, making value(K) the value of
+     *  position K. */
+    void evaluate() {
+        evaluate(0, _size);
+    }
+
+    /** Evaluate positions LO to HI-1 of the batch, making value(K) the
+     *  value of position K for each. */
+    void evaluate(int lo, int hi) {
+        long[] own = _own, other = _other;
+        int[] count = _count, cols = _cols, rows = _rows;
+        for (int k = lo; k < hi; k += 1) {
+            for (int s = 0; s < 2; s += 1) {
+                long m = s == 0 ? own[k] : other[k];
+                int j = 2 * k + s;
+                count[j] = Long.bitCount(m);
+                cols[j] = coordinateSum(m, COL_BITS);
+                rows[j] = coordinateSum(m, ROW_BITS);
+            }
+        }
+        for (int j = 2 * lo; j < 2 * hi; j += 1) {
+            cols[j] /= count[j];
+            rows[j] /= count[j];
+        }
+        for (int k = lo; k < hi; k += 1) {
+            double value = 0;
+            for (int s = 0; s < 2; s += 1) {
+                long m = s == 0 ? own[k] : other[k];
+                int j = 2 * k + s;
+                int empty = distanceSum(m, cols[j], rows[j])
+                    - MachinePlayer.minDist(count[j], cols[j], rows[j]);
+                double part = _compact / empty + _center / centralSum(m);
+                value = s == 0 ? part : value - part;
+            }
+            if (_mobility != 0) {
+                value += _mobility
+                    * MachinePlayer.mobilityDifference(own[k], other[k]);
+            }
+            _value[k] = value;
+        }
+    }
+
+    /** Weight the terms of my values by COMPACT, CENTER, and MOBILITY, as
+     *  for MachinePlayer.eval(board, side, COMPACT, CENTER, MOBILITY). */
+    void setWeights(double compact, double center, double mobility) {
+        _compact = compact;
+        _center = center;
+        _mobility = mobility;
+    }
+
+    /** Return the pieces of the side for which position K is
+     *  evaluated. */
+    long own(int k) {
+        return _own[k];
+    }
+
+    /** Return the pieces of the other side in position K. */
+    long other(int k) {
+        return _other[k];
+    }
+
+    /** Return the value of position K after evaluate(). */
+    double value(int k) {
+        return _value[k];
+    }
+
+    /** Return the classic evaluation, for the side with the pieces OWN, of
+     *  the position in which its opponent has the pieces OTHER.  This is
+     *  the same computation as evaluate's for a single position. */
+    static double eval(long own, long other) {
+        return part(own) - part(other);
+    }
+
+    /** Return one side's part of the classic evaluation, given its pieces
+     *  M. */
+    private static double part(long m) {
+        int count = Long.bitCount(m);
+        int comCol = coordinateSum(m, COL_BITS) / count,
+            comRow = coordinateSum(m, ROW_BITS) / count;
+        int empty = distanceSum(m, comCol, comRow)
+            - MachinePlayer.minDist(count, comCol, comRow);
+        return 1.0 / empty + 1.0 / centralSum(m);
+    }
+
+    /** Return the sum of the columns (if BITS is COL_BITS) or rows (if it
+     *  is ROW_BITS) of the squares in M. */
+    private static int coordinateSum(long m, long[] bits) {
+        return Long.bitCount(m) + Long.bitCount(m & bits[0])
+            + 2 * Long.bitCount(m & bits[1]) + 4 * Long.bitCount(m & bits[2]);
+    }
+
+    /** Return the sum of the distances (in king moves) of the squares in M
+     *  from column C, row R. */
+    private static int distanceSum(long m, int c, int r) {
+        long[] box = BOX[Lines.index(c, r)];
+        int sum = 0;
+        for (int d = 0; d < Board.M - 1; d += 1) {
+            sum += Long.bitCount(m & ~box[d]);
+        }
+        return sum;
+    }
+
+    /** Return the sum of the distances (in king moves) of the squares in M
+     *  from the central four squares. */
+    private static int centralSum(long m) {
+        int sum = 0;
+        for (int d = 0; d < Board.M / 2 - 1; d += 1) {
+            sum += Long.bitCount(m & ~CENTER_BOX[d]);
+        }
+        return sum;
+    }
+
+    /** Set the capacity of the batch to CAPACITY positions. */
+    private void resize(int capacity) {
+        _own = Arrays.copyOf(_own, capacity);
+        _from = Arrays.copyOf(_from, capacity);
+        _to = Arrays.copyOf(_to, capacity);
+        _other = Arrays.copyOf(_other, capacity);
+        _value = Arrays.copyOf(_value, capacity);
+        _count = new int[2 * capacity];
+        _cols = new int[2 * capacity];
+        _rows = new int[2 * capacity];
+    }
+
+    /** Initial capacity of a batch. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** COL_BITS[B] is the set of squares whose column less 1 has bit B
+     *  set. */
+    private static final long[] COL_BITS = new long[3];
+    /** ROW_BITS[B] is the set of squares whose row less 1 has bit B set. */
+    private static final long[] ROW_BITS = new long[3];
+    /** BOX[SQ][D] is the set of squares within D king moves of SQ. */
+    private static final long[][] BOX = new long[Lines.SQUARES][Board.M];
+    /** CENTER_BOX[D] is the set of squares within D king moves of the
+     *  central four squares. */
+    private static final long[] CENTER_BOX = new long[Board.M / 2];
+
+    static {
+        for (int sq = 0; sq < Lines.SQUARES; sq += 1) {
+            int c = Lines.col(sq), r = Lines.row(sq);
+            for (int b = 0; b < 3; b += 1) {
+                if (((c - 1) & (1 << b)) != 0) {
+                    COL_BITS[b] |= 1L << sq;
+                }
+                if (((r - 1) & (1 << b)) != 0) {
+                    ROW_BITS[b] |= 1L << sq;
+                }
+            }
+            for (int t = 0; t < Lines.SQUARES; t += 1) {
+                int d = Math.max(Math.abs(Lines.col(t) - c),
+                                 Math.abs(Lines.row(t) - r));
+                for (int k = d; k < Board.M; k += 1) {
+                    BOX[sq][k] |= 1L << t;
+                }
+            }
+            int center = Math.max(Math.abs(2 * c - Board.M - 1),
+                                  Math.abs(2 * r - Board.M - 1)) / 2;
+            for (int k = center; k < Board.M / 2; k += 1) {
+                CENTER_BOX[k] |= 1L << sq;
+            }
+        }
+    }
+
+    /** The pieces of the side for which each position is evaluated. */
+    private long[] _own = new long[0];
+    /** The pieces of its opponent. */
+    private long[] _other = new long[0];
+    /** The squares from and to which the move to each position added by
+     *  addChildren was made. */
+    private int[] _from = new int[0], _to = new int[0];
+    /** The number of positions in the batch. */
+    private int _size;
+    /** Weights of the terms of the classic evaluation. */
+    private double _compact = 1, _center = 1, _mobility;
+    /** The value of each position, once evaluated. */
+    private double[] _value = new double[0];
+    /** Piece count, and then column and row sums and centers of mass, for
+     *  each side of each position: the side to be valued first. */
+    private int[] _count, _cols, _rows;
+
+}
@@ -0,0 +1,329 @@
+package loa;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/** A store of the results of past searches, kept in a file so that they
+ *  survive from game to game and from run to run.  Each entry holds a
+ *  key identifying a position (see Board.key()) and the evaluation with
+ *  which it was searched (see MachinePlayer), the depth searched, the
+ *  value found for the side to move, and the best move, together with its
+ *  age: the number of the game (counted over the life of the file) in
+ *  which it was last stored or used.  When there are more than capacity()
+ *  entries, the oldest are dropped.
+ *
+ *  There is one cache per file, shared by every player using it (see
+ *  open), until it is closed.  It is read into memory when first opened,
+ *  and written back, replacing the file atomically, on a background
+ *  thread after each game, when closed, and when the program exits.
+ *  The file is a header (MAGIC, VERSION, the number of the current game,
+ *  and the number of entries, all ints) followed by entries of
+ *  ENTRY_BYTES bytes: the key (a long), the value (a float), the age (an
+ *  int), the move's code (as in GameArchive, a short), and the depth (a
+ *  byte), all big-endian.
+ *  @author JuKyung Choi
+ */
+class LearningCache {
+
+    /** First four bytes of every cache file ("LOAL"). */
+    static final int MAGIC = 0x4c4f414c;
+    /** Format version. */
+    static final int VERSION = 1;
+    /** Size of the header. */
+    static final int HEADER_BYTES = 4 * Integer.BYTES;
+    /** Size of one entry. */
+    static final int ENTRY_BYTES =
+        Long.BYTES + Float.BYTES + Integer.BYTES + Short.BYTES + 1;
+    /** Default largest number of entries. */
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** One stored search result. */
+    static final class Entry {
+        /** A result of a search to DEPTH finding VALUE and the move with
+         *  code MOVE, last used in game AGE. */
+        Entry(int depth, double value, int move, int age) {
+            _depth = depth;
+            _value = value;
+            _move = move;
+            _age = age;
+        }
+
+        /** Return the depth searched. */
+        int depth() {
+            return _depth;
+        }
+
+        /** Return the value found, for the side to move. */
+        double value() {
+            return _value;
+        }
+
+        /** Return the best move found, if it is legal on BOARD (the
+         *  position searched), and otherwise null. */
+        Move move(Board board) {
+            Move move = GameArchive.decode(_move, board);
+            return move != null && board.isLegal(move) ? move : null;
+        }
+
+        /** Depth searched. */
+        private final int _depth;
+        /** Value found. */
+        private final double _value;
+        /** Code of the best move. */
+        private final int _move;
+        /** Number of the game in which I was last stored or used. */
+        private int _age;
+    }
+
+    /** A cache of up to CAPACITY entries kept in FILE, read from it if it
+     *  exists.  Throws IOException if FILE cannot be read or is not a
+     *  cache. */
+    LearningCache(Path file, int capacity) throws IOException {
+        _file = file;
+        _capacity = capacity;
+        if (Files.exists(file)) {
+            read();
+        }
+    }
+
+    /** Return the cache kept in FILE, shared with all other users of
+     *  FILE in this program.  Throws IOException if FILE cannot be read
+     *  or is not a cache. */
+    static LearningCache open(Path file) throws IOException {
+        Path path = file.toAbsolutePath().normalize();
+        synchronized (OPEN) {
+            LearningCache cache = OPEN.get(path);
+            if (cache == null) {
+                cache = new LearningCache(path, DEFAULT_CAPACITY);
+                OPEN.put(path, cache);
+                if (OPEN.size() == 1) {
+                    Runtime.getRuntime().addShutdownHook(
+                        new Thread(LearningCache::flushAll,
+                                   "loa-learning-exit"));
+                }
+            }
+            return cache;
+        }
+    }
+
+    /** Write me to my file if I have changed, and stop sharing me: a
+     *  later open() of my file reads it afresh, and I am no longer written
+     *  when the program exits. */
+    void close() throws IOException {
+        synchronized (OPEN) {
+            if (OPEN.get(_file) == this) {
+                OPEN.remove(_file);
+            }
+        }
+        flush();
+    }
+
+    /** Write every open cache that has changed. */
+    static void flushAll() {
+        ArrayList<LearningCache> caches;
+        synchronized (OPEN) {
+            caches = new ArrayList<>(OPEN.values());
+        }
+        for (LearningCache cache : caches) {
+            try {
+                cache.flush();
+            } catch (IOException excp) {
+                Main.error("cannot write %s: %s%n", cache._file,
+                           excp.getMessage());
+            }
+        }
+    }
+
+    /** Return the entry for the position whose key is KEY, or null if
+     *  none, marking it as used. */
+    synchronized Entry get(long key) {
+        Entry entry = _entries.get(key);
+        if (entry != null && entry._age != _game) {
+            entry._age = _game;
+            _changes += 1;
+        }
+        return entry;
+    }
+
+    /** Record that a search to DEPTH of the position whose key is KEY
+     *  found the value VALUE and the best move MOVE, unless I already
+     *  hold a deeper search of it. */
+    synchronized void put(long key, int depth, double value, Move move) {
+        Entry old = _entries.get(key);
+        if (old != null && old._depth > depth) {
+            old._age = _game;
+        } else {
+            _entries.put(key, new Entry(Math.min(depth, MAX_DEPTH), value,
+                                        GameArchive.encode(move), _game));
+        }
+        _changes += 1;
+        if (_entries.size() > 2 * _capacity) {
+            evict();
+        }
+    }
+
+    /** Return my number of entries. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return the largest number of entries I keep. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** End the current game, and write me to my file on a background
+     *  thread. */
+    void gameEnded() {
+        synchronized (this) {
+            _game += 1;
+            _changes += 1;
+        }
+        WRITER.execute(() -> {
+            try {
+                flush();
+            } catch (IOException excp) {
+                Main.error("cannot write %s: %s%n", _file,
+                           excp.getMessage());
+            }
+        });
+    }
+
+    /** Write me to my file, if I have changed since last written.  If
+     *  writing fails, I still count as changed. */
+    void flush() throws IOException {
+        synchronized (_writing) {
+            ByteBuffer out;
+            long changes;
+            synchronized (this) {
+                changes = _changes;
+                if (changes == _written) {
+                    return;
+                }
+                evict();
+                out = ByteBuffer.allocate(HEADER_BYTES
+                                          + _entries.size() * ENTRY_BYTES);
+                out.putInt(MAGIC).putInt(VERSION).putInt(_game)
+                    .putInt(_entries.size());
+                for (Map.Entry<Long, Entry> e : _entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    out.putLong(e.getKey()).putFloat((float) entry._value)
+                        .putInt(entry._age).putShort((short) entry._move)
+                        .put((byte) entry._depth);
+                }
+            }
+            out.flip();
+            Path temp = _file.resolveSibling(_file.getFileName() + ".tmp");
+            try (FileChannel channel =
+                 FileChannel.open(temp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+            Files.move(temp, _file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                _written = changes;
+            }
+        }
+    }
+
+    /** Read my entries from my file. */
+    private void read() throws IOException {
+        long size = Files.size(_file);
+        try (DataInputStream in =
+             new DataInputStream(new BufferedInputStream(
+                                     Files.newInputStream(_file)))) {
+            if (size < HEADER_BYTES || in.readInt() != MAGIC
+                || in.readInt() != VERSION) {
+                throw new IOException("not a learning cache");
+            }
+            _game = in.readInt();
+            int n = in.readInt();
+            if (n < 0 || size - HEADER_BYTES < (long) n * ENTRY_BYTES) {
+                throw new IOException("truncated learning cache");
+            }
+            for (int i = 0; i < n; i += 1) {
+                long key = in.readLong();
+                float value = in.readFloat();
+                int age = in.readInt();
+                int move = in.readUnsignedShort();
+                int depth = in.readUnsignedByte();
+                _entries.put(key, new Entry(depth, value, move, age));
+            }
+        }
+        evict();
+    }
+
+    /** Drop my oldest entries until I have at most _capacity. */
+    private synchronized void evict() {
+        int excess = _entries.size() - _capacity;
+        if (excess <= 0) {
+            return;
+        }
+        int[] ages = new int[_entries.size()];
+        int n = 0;
+        for (Entry entry : _entries.values()) {
+            ages[n] = entry._age;
+            n += 1;
+        }
+        Arrays.sort(ages);
+        int cutoff = ages[excess - 1], atCutoff = excess;
+        for (int k = 0; ages[k] < cutoff; k += 1) {
+            atCutoff -= 1;
+        }
+        for (Iterator<Entry> i = _entries.values().iterator();
+             i.hasNext();) {
+            Entry entry = i.next();
+            if (entry._age < cutoff) {
+                i.remove();
+            } else if (entry._age == cutoff && atCutoff > 0) {
+                i.remove();
+                atCutoff -= 1;
+            }
+        }
+    }
+
+    /** Largest depth recorded. */
+    private static final int MAX_DEPTH = 0xff;
+    /** The open caches, by file. */
+    private static final HashMap<Path, LearningCache> OPEN = new HashMap<>();
+    /** The thread on which caches are written after each game. */
+    private static final ExecutorService WRITER =
+        Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "loa-learning");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** The file in which I am kept. */
+    private final Path _file;
+    /** Held while writing my file. */
+    private final Object _writing = new Object();
+    /** Largest number of entries kept. */
+    private final int _capacity;
+    /** My entries, by position key. */
+    private final HashMap<Long, Entry> _entries = new HashMap<>();
+    /** Number of the current game. */
+    private int _game;
+    /** Number of changes made to me since I was read. */
+    private long _changes;
+    /** Value of _changes when I was last written successfully. */
+    private long _written;
+
+}
@@ -0,0 +1,104 @@
+package loa;
+
+import static loa.Board.M;
+import static loa.Direction.N;
+
+/** Precomputed geometry of the lines of action on an M x M board.
+ *  Squares are numbered 0 to M*M-1 by index(c, r), row by row from a1,
+ *  so that a set of squares fits in the bits of a long (bit SQ standing
+ *  for square SQ).  Directions are numbered 0 to 7 by Direction.index(),
+ *  and each direction lies along one of four axes.
+ *  @author JuKyung Choi
+ */
+final class Lines {
+
+    /** Not instantiable. */
+    private Lines() {
+    }
+
+    /** Number of squares. */
+    static final int SQUARES = M * M;
+    /** Number of (non-NOWHERE) directions. */
+    static final int DIRS = 8;
+    /** Number of axes (pairs of opposite directions). */
+    static final int AXES = 4;
+
+    /** Return the index of the square at column C, row R (1 <= C,R <= M). */
+    static int index(int c, int r) {
+        return (r - 1) * M + c - 1;
+    }
+
+    /** Return the column (1 to M) of square SQ. */
+    static int col(int sq) {
+        return sq % M + 1;
+    }
+
+    /** Return the row (1 to M) of square SQ. */
+    static int row(int sq) {
+        return sq / M + 1;
+    }
+
+    /** Return the axis (0 to AXES-1) containing direction DIR. */
+    static int axis(int dir) {
+        return dir % AXES;
+    }
+
+    /** LINE[SQ][A] is the set of squares on axis A through SQ, including
+     *  SQ itself.  The number of pieces in it is the length of any move
+     *  from SQ along A. */
+    static final long[][] LINE = new long[SQUARES][AXES];
+    /** BETWEEN[S0][S1] is the set of squares strictly between S0 and S1
+     *  when they share a line, and empty otherwise. */
+    static final long[][] BETWEEN = new long[SQUARES][SQUARES];
+    /** TARGET[SQ][D][K - 1] is the square K steps from SQ in direction D.
+     *  Its length is the number of squares there are in that direction. */
+    static final int[][][] TARGET = new int[SQUARES][DIRS][];
+    /** NEIGHBORS[SQ] is the set of squares adjacent to SQ, diagonals
+     *  included. */
+    static final long[] NEIGHBORS = new long[SQUARES];
+
+    static {
+        for (int sq = 0; sq < SQUARES; sq += 1) {
+            int c = col(sq), r = row(sq);
+            for (Direction dir = N; dir != null; dir = dir.succ()) {
+                int d = dir.index();
+                int n = 0;
+                while (inBounds(c + (n + 1) * dir.dc, r + (n + 1) * dir.dr)) {
+                    n += 1;
+                }
+                TARGET[sq][d] = new int[n];
+                long between = 0;
+                for (int k = 1; k <= TARGET[sq][d].length; k += 1) {
+                    int to = index(c + k * dir.dc, r + k * dir.dr);
+                    TARGET[sq][d][k - 1] = to;
+                    BETWEEN[sq][to] = between;
+                    between |= 1L << to;
+                }
+                LINE[sq][axis(d)] |= between | (1L << sq);
+                if (TARGET[sq][d].length > 0) {
+                    NEIGHBORS[sq] |= 1L << TARGET[sq][d][0];
+                }
+            }
+        }
+    }
+
+    /** Return the squares in MASK together with all squares adjacent to
+     *  them (diagonals included). */
+    static long adjacent(long mask) {
+        long notA = mask & ~COLUMN_A, notH = mask & ~COLUMN_H;
+        return mask | (mask << M) | (mask >>> M)
+            | (notH << 1) | (notA >>> 1)
+            | (notH << (M + 1)) | (notA << (M - 1))
+            | (notH >>> (M - 1)) | (notA >>> (M + 1));
+    }
+
+    /** The squares in the first and last columns. */
+    static final long
+        COLUMN_A = 0x0101010101010101L, COLUMN_H = 0x8080808080808080L;
+
+    /** Return true iff (C, R) denotes a square on the board. */
+    private static boolean inBounds(int c, int r) {
+        return 1 <= c && c <= M && 1 <= r && r <= M;
+    }
+
+}
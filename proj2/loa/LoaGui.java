@@ -109,13 +109,9 @@ class LoaGui extends TopLevel {
         } catch (NullPointerException e) {
             /* Ignore ILLEGALARGUMENTEXCEPTION. */
         }
-        if (_board.piecesContiguous(Piece.BP)
-                && _board.piecesContiguous(Piece.WP)) {
-            setLabel("Winner", _board.getTurn().opposite().fullName() + " won");
-        } else if (_board.piecesContiguous(Piece.BP)) {
-            setLabel("Winner", Piece.BP.fullName() + " won");
-        } else if (_board.piecesContiguous(Piece.WP)) {
-            setLabel("Winner", Piece.WP.fullName() + " won");
+        Piece winner = _board.winner();
+        if (winner != null) {
+            setLabel("Winner", winner.fullName() + " won");
         }
         _display.repaint();
         setLabel("ID", "Turn: " + _board.getTurn());
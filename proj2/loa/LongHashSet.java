@@ -0,0 +1,103 @@
+package loa;
+
+/** A set of 64-bit keys (such as those of Board.key()) in an
+ *  open-addressing table with linear probing, held off the Java heap (see
+ *  DirectLongArray).  The table has a power-of-2 number of slots, a key's
+ *  first slot is given by its low bits (so the keys must already be well
+ *  mixed), and an empty slot holds 0; the key 0 itself is recorded
+ *  separately.  The table doubles once more than MAX_LOAD of its slots
+ *  are full.
+ *  @author JuKyung Choi
+ */
+final class LongHashSet {
+
+    /** An empty set with room for about CAPACITY keys before growing. */
+    LongHashSet(long capacity) {
+        long slots = Long.highestOneBit(Math.max(MIN_SLOTS,
+                                                 capacity * 3 / 2) * 2 - 1);
+        _table = new DirectLongArray(slots);
+    }
+
+    /** Add KEY.  Return true iff it was not already present. */
+    boolean add(long key) {
+        if (key == 0) {
+            boolean added = !_hasZero;
+            _hasZero = true;
+            _size += added ? 1 : 0;
+            return added;
+        }
+        long mask = _table.length() - 1;
+        for (long k = key & mask;; k = (k + 1) & mask) {
+            long slot = _table.get(k);
+            if (slot == key) {
+                return false;
+            } else if (slot == 0) {
+                _table.set(k, key);
+                _size += 1;
+                _used += 1;
+                if (_used > _table.length() * MAX_LOAD) {
+                    grow();
+                }
+                return true;
+            }
+        }
+    }
+
+    /** Return true iff KEY is present. */
+    boolean contains(long key) {
+        if (key == 0) {
+            return _hasZero;
+        }
+        long mask = _table.length() - 1;
+        for (long k = key & mask;; k = (k + 1) & mask) {
+            long slot = _table.get(k);
+            if (slot == key) {
+                return true;
+            } else if (slot == 0) {
+                return false;
+            }
+        }
+    }
+
+    /** Return my number of keys. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the number of bytes I occupy off the heap. */
+    long bytes() {
+        return _table.bytes();
+    }
+
+    /** Move my keys to a table twice the size. */
+    private void grow() {
+        DirectLongArray old = _table;
+        _table = new DirectLongArray(old.length() * 2);
+        long mask = _table.length() - 1;
+        for (long i = 0; i < old.length(); i += 1) {
+            long key = old.get(i);
+            if (key != 0) {
+                long k = key & mask;
+                while (_table.get(k) != 0) {
+                    k = (k + 1) & mask;
+                }
+                _table.set(k, key);
+            }
+        }
+    }
+
+    /** Largest fraction of full slots. */
+    static final double MAX_LOAD = 2.0 / 3;
+    /** Smallest number of slots. */
+    private static final long MIN_SLOTS = 16;
+
+    /** The slots. */
+    private DirectLongArray _table;
+    /** Number of keys. */
+    private long _size;
+    /** Number of full slots. */
+    private long _used;
+    /** True iff the key 0 is present. */
+    private boolean _hasZero;
+
+}
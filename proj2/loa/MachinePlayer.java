@@ -1,21 +1,104 @@
 package loa;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
 /**
  * An automated Player.
  * @author JuKyung Choi
  */
 class MachinePlayer extends Player {
-    /** Depth of tree. */
-    private static final int DEPTH = 2;
-    /** Worst possible move value. */
+    /** Default depth of tree. */
+    static final int DEPTH = 2;
+    /** The settings that may be tuned by SpsaTuner, as NAME:VALUE:MIN:
+     *  MAX:STEP (see SpsaTuner.Parameter.parse). */
+    static final String TUNABLES =
+        "compact:1:0.1:4:0.25,center:1:0:4:0.25,mobility:0:0:0.2:0.02";
+    /** Worst possible move value (a loss).  A win is -WORST. */
     private static final double WORST = -100;
+    /** A bound beyond any move value. */
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
     /** Current turn. */
     private Piece _side;
-    /** Links a move to its value. */
-    private HashMap<Move, Double> _map = new HashMap<Move, Double>();
+    /** Value of the move last returned by findBestMove or guessBestMove
+     *  (for its side), or of the position if it returned null. */
+    private double _value;
     /** Current game. */
     private Game _game;
+    /** Number of plies to search. */
+    private int _depth = DEPTH;
+    /** Number of nodes between checks for a stop request (a power of 2). */
+    private static final int POLL_INTERVAL = 256;
+    /** Set (from any thread) to ask the current search to finish. */
+    private volatile boolean _stop;
+    /** True once the current search has seen _stop and is unwinding. */
+    private boolean _stopped;
+    /** Number of nodes visited by the current search. */
+    private long _nodes;
+    /** Time at which the current search started (in milliseconds). */
+    private long _startTime;
+    /** Limits on the time (in milliseconds) and nodes used by a search, or
+     *  0 if none. */
+    private long _moveTime, _nodeLimit;
+    /** Where to write progress information, or null. */
+    private volatile PrintStream _info;
+    /** The evaluation to use (see setOption). */
+    private String _evalName = "classic";
+    /** Weights for the nnue evaluation, or null for the standard ones. */
+    private NeuralEvaluator.Network _network;
+    /** Tables for the pattern evaluation, or null for the standard
+     *  ones. */
+    private Weights _weights;
+    /** The files and modification times from which _network and _weights
+     *  were loaded (see source), or "standard". */
+    private String _networkSource = "standard",
+        _weightsSource = "standard";
+    /** The evaluator of the board being searched, or null for the classic
+     *  evaluation. */
+    private Evaluator _evaluator;
+    /** Weights of the terms of the classic evaluation (see eval). */
+    private double _compact = 1, _center = 1, _mobility;
+    /** The network last loaded by loadNetwork, which is kept because
+     *  every automated player of a game or engine may ask for it. */
+    private static NeuralEvaluator.Network _loadedNetwork;
+    /** The file and modification time from which _loadedNetwork was
+     *  loaded. */
+    private static String _loadedNetworkKey;
+    /** The tables last loaded by loadWeights, which are kept because
+     *  every automated player of a game or engine may ask for them. */
+    private static Weights _loadedWeights;
+    /** The file and modification time from which _loadedWeights were
+     *  loaded. */
+    private static String _loadedWeightsKey;
+    /** The endgame table last loaded by loadEndgame, which is kept because
+     *  every automated player of a game or engine may ask for it. */
+    private static EndgameTable _loadedEndgame;
+    /** The file and modification time from which _loadedEndgame was
+     *  loaded. */
+    private static String _loadedEndgameKey;
+    /** The endgame table to probe during searches, or null. */
+    private EndgameTable _endgame;
+    /** The file and modification time from which _endgame was loaded
+     *  (see source), or "none". */
+    private String _endgameSource = "none";
+    /** The cache of search results to consult and add to, or null. */
+    private LearningCache _learning;
+    /** The amount by which a win from the endgame table is worth less for
+     *  each ply to the end of the game. */
+    private static final double DISTANCE_UNIT = 1e-3;
+    /** Number of positions evaluated at once by guessBestMove. */
+    private static final int LEAF_CHUNK = 8;
+    /** Scratch space for Board.hasWinningMove. */
+    private final long[] _groups = new long[Lines.SQUARES];
+    /** The positions after the moves from the frontier node being
+     *  searched, for the classic evaluation. */
+    private final LeafBatch _leafBatch = new LeafBatch();
 
     /** A MachinePlayer that plays the SIDE pieces in GAME. */
     MachinePlayer(Piece side, Game game) {
@@ -26,64 +109,628 @@ class MachinePlayer extends Player {
 
     @Override
     Move makeMove() {
-        Board copy = new Board(getBoard());
-        Move m = findBestMove(_side, copy, DEPTH, Double.MAX_VALUE);
-        if (m == null) {
-            m = getBoard().legalMoves().next();
+        _game.setThinking(this);
+        Move m;
+        try {
+            ExecutorService pool = _game.searchPool();
+            if (pool == null) {
+                m = search(getBoard());
+            } else {
+                m = _game.awaitSearch(pool.submit(() ->
+                                                  search(getBoard())));
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            stop();
+            return null;
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        } finally {
+            _game.setThinking(null);
         }
-        System.out.println(_side.abbrev().toUpperCase() + "::" + m);
+        _game.output().println(_side.abbrev().toUpperCase() + "::" + m);
         return m;
     }
 
-    /** Return best move DEPTH steps ahead on board START of turn SIDE
-     * using CUTOFF to prune. */
-    Move findBestMove(Piece side, Board start, int depth, double cutoff) {
-        if (start.piecesContiguous(side)) {
-            _map.put(null, Double.MAX_VALUE);
+    /** Return my choice of move for the side to move on BOARD, which is
+     *  left unchanged.  Searches to successively greater depths, up to my
+     *  depth limit, until my time or node limit is reached or stop() is
+     *  called, and writes a line of progress information to my info
+     *  stream (if any) after each depth.  Returns null only if there is no
+     *  legal move. */
+    Move search(Board board) {
+        Board copy = new Board(board);
+        _evaluator = newEvaluator();
+        if (_evaluator != null) {
+            copy.setListener(_evaluator);
+        }
+        Piece side = copy.turn();
+        _stop = false;
+        _stopped = false;
+        _nodes = 0;
+        _startTime = System.currentTimeMillis();
+        Move best = forcedMove(copy, side);
+        if (best != null) {
+            _value = copy.hasWinningMove(side) ? -WORST : 0;
+            report(0, best);
+            return best;
+        }
+        long learningKey = copy.key() ^ evalFingerprint();
+        LearningCache.Entry learned =
+            _learning == null ? null : _learning.get(learningKey);
+        if (learned != null) {
+            best = learned.move(copy);
+            if (best != null && learned.depth() >= _depth) {
+                _value = learned.value();
+                report(learned.depth(), best);
+                return best;
+            }
+        }
+        double completed = 0;
+        int reached = 0;
+        Move completedMove = null;
+        for (int depth = 1; depth <= _depth; depth += 1) {
+            Move move = searchRoot(side, copy, depth, best);
+            if (move != null) {
+                best = move;
+            }
+            if (_stopped) {
+                if (move == null) {
+                    _value = completed;
+                }
+                break;
+            }
+            completed = _value;
+            reached = depth;
+            completedMove = best;
+            report(depth, best);
+            if (Math.abs(_value) >= -WORST) {
+                break;
+            }
+        }
+        if (_learning != null && completedMove != null) {
+            _learning.put(learningKey, reached, completed, completedMove);
+        }
+        if (best == null) {
+            Iterator<Move> moves = board.legalMoves();
+            best = moves.hasNext() ? moves.next() : null;
+        }
+        return best;
+    }
+
+    /** Return the value, for the side that was to move, of the move
+     *  returned by my last search (or of its position, if it returned
+     *  null), as for eval. */
+    double value() {
+        return _value;
+    }
+
+    /** Return the best move DEPTH steps ahead for SIDE on START, trying
+     *  FIRST (if not null) before the other moves.  If the search is
+     *  stopped, returns the best of the moves searched completely. */
+    private Move searchRoot(Piece side, Board start, int depth, Move first) {
+        ArrayList<Move> moves = new ArrayList<>();
+        if (first != null) {
+            moves.add(first);
+        }
+        for (Move move : start) {
+            if (move != first) {
+                moves.add(move);
+            }
+        }
+        double value = Double.NEGATIVE_INFINITY;
+        Move bestFar = null;
+        for (Move move : moves) {
+            start.makeMove(move);
+            findBestMove(side.opposite(), start, depth - 1, -INFINITY,
+                         -value);
+            start.retract();
+            if (_stopped) {
+                break;
+            }
+            if (-_value > value) {
+                value = -_value;
+                bestFar = move;
+            }
+        }
+        _value = value;
+        return bestFar;
+    }
+
+    /** Set my option NAME to VALUE.  The options are
+     *      depth    The maximum number of plies to search (at least 1).
+     *      movetime The number of milliseconds after which to stop
+     *               searching (0 for no limit).
+     *      nodes    The number of nodes after which to stop searching
+     *               (0 for no limit).
+     *      eval     The evaluation to use: "classic" (the default),
+     *               "nnue" (see NeuralEvaluator), or "pattern" (see
+     *               PatternEvaluator).
+     *      nnue     A file of network weights for the nnue evaluation
+     *               (by default, NeuralEvaluator.Network.standard()),
+     *               which it also selects.
+     *      compact, center, mobility
+     *               The weights of the terms of the classic evaluation
+     *               (see eval; by default 1, 1, and 0).
+     *      weights  A file of tables for the pattern evaluation (see
+     *               Weights; by default, PatternEvaluator.standard()),
+     *               which it also selects.
+     *      endgame  A file holding an endgame table (see EndgameTable),
+     *               whose values replace searches of the positions it
+     *               covers, or "none" (the default).
+     *      learn    A file in which to keep the results of searches from
+     *               game to game (see LearningCache), or "none" (the
+     *               default).  A position found there, searched at least
+     *               as deeply as my depth limit, is not searched again.
+     *  Throws IllegalArgumentException if NAME or VALUE is invalid. */
+    void setOption(String name, String value) {
+        try {
+            switch (name.toLowerCase()) {
+            case "depth":
+                int depth = Integer.parseInt(value);
+                if (depth < 1) {
+                    throw new IllegalArgumentException("bad depth: " + value);
+                }
+                _depth = depth;
+                break;
+            case "movetime":
+                _moveTime = Math.max(0, Long.parseLong(value));
+                break;
+            case "nodes":
+                _nodeLimit = Math.max(0, Long.parseLong(value));
+                break;
+            case "eval":
+                switch (value) {
+                case "classic": case "nnue": case "pattern":
+                    _evalName = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown eval: "
+                                                       + value);
+                }
+                break;
+            case "nnue":
+                _network = loadNetwork(value);
+                _networkSource = source(value);
+                _evalName = "nnue";
+                break;
+            case "compact":
+                _compact = Double.parseDouble(value);
+                _leafBatch.setWeights(_compact, _center, _mobility);
+                break;
+            case "center":
+                _center = Double.parseDouble(value);
+                _leafBatch.setWeights(_compact, _center, _mobility);
+                break;
+            case "mobility":
+                _mobility = Double.parseDouble(value);
+                _leafBatch.setWeights(_compact, _center, _mobility);
+                break;
+            case "weights":
+                _weights = loadWeights(value);
+                _weightsSource = source(value);
+                _evalName = "pattern";
+                break;
+            case "endgame":
+                _endgame = value.equals("none") ? null : loadEndgame(value);
+                _endgameSource = _endgame == null ? "none" : source(value);
+                break;
+            case "learn":
+                _learning = value.equals("none") ? null : openLearning(value);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option: "
+                                                   + name);
+            }
+        } catch (NumberFormatException excp) {
+            throw new IllegalArgumentException("bad number: " + value);
+        }
+    }
+
+    /** Set my options from SPEC, a comma-separated list of NAME=VALUE
+     *  settings (see setOption).  An empty SPEC sets nothing. */
+    void setOptions(String spec) {
+        for (String setting : spec.split(",")) {
+            setting = setting.trim();
+            if (setting.isEmpty()) {
+                continue;
+            }
+            int eq = setting.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("bad setting: "
+                                                   + setting);
+            }
+            setOption(setting.substring(0, eq).trim(),
+                      setting.substring(eq + 1).trim());
+        }
+    }
+
+    /** Throw IllegalArgumentException if SPEC is not a valid setting of
+     *  the options of an automated player (see setOptions).  The files
+     *  SPEC names are loaded in the process, and kept as for any player,
+     *  so that players later given SPEC find them already loaded. */
+    static void checkOptions(String spec) {
+        new MachinePlayer(Piece.BP, null).setOptions(spec);
+    }
+
+    /** Return a move for SIDE on BOARD that needs no search, or null if
+     *  there is none: a move that wins at once, or the only move that
+     *  stops the opponent from winning at once. */
+    private Move forcedMove(Board board, Piece side) {
+        ArrayList<Move> wins = board.winningMoves(side);
+        if (!wins.isEmpty()) {
+            return wins.get(0);
+        }
+        Piece opp = side.opposite();
+        if (!board.hasWinningMove(opp)) {
+            return null;
+        }
+        Move defense = null;
+        for (Move move : board) {
+            board.makeMove(move);
+            boolean defends = board.winner() != opp
+                && !board.hasWinningMove(opp);
+            board.retract();
+            if (defends) {
+                if (defense != null) {
+                    return null;
+                }
+                defense = move;
+            }
+        }
+        return defense;
+    }
+
+    /** Return best move DEPTH steps ahead on board START of turn SIDE,
+     *  setting _value to its value for SIDE.  Values at or below ALPHA are
+     *  all alike to the caller, as are values at or above BETA, so the
+     *  search of a node stops as soon as it finds one of the latter.
+     *  START is restored before returning. */
+    Move findBestMove(Piece side, Board start, int depth, double alpha,
+                      double beta) {
+        Piece winner = start.winner();
+        if (winner != null) {
+            _value = winner == side ? -WORST : WORST;
             return null;
-        } else if (start.piecesContiguous(side.opposite())) {
-            _map.put(null, WORST);
+        } else if (start.hasWinningMove(side)) {
+            _value = -WORST;
+            return start.winningMoves(side).get(0);
+        } else if (_endgame != null
+                   && _endgame.covers(start.pieces(side),
+                                      start.pieces(side.opposite()))) {
+            _value = endgameValue(start.pieces(side),
+                                  start.pieces(side.opposite()));
             return null;
         } else if (depth == 0) {
-            return guessBestMove(side, start);
+            return guessBestMove(side, start, beta);
         }
-        double value = WORST;
+        double value = Double.NEGATIVE_INFINITY;
         Move bestFar = null;
         for (Move move : start) {
-            Board copy = makeCopyMove(start, move);
-            Move response = findBestMove(side.opposite(),
-                    copy, depth - 1, value);
-            if (-_map.get(response) > value) {
-                value = -_map.get(response);
+            if (shouldStop()) {
+                break;
+            }
+            start.makeMove(move);
+            findBestMove(side.opposite(), start, depth - 1, -beta,
+                         -Math.max(alpha, value));
+            start.retract();
+            if (_stopped) {
+                break;
+            }
+            if (-_value > value) {
+                value = -_value;
                 bestFar = move;
-                _map.put(bestFar, value);
-                if (value >= cutoff) {
+                if (value >= beta) {
                     break;
                 }
             }
         }
+        _value = bestFar == null && !_stopped ? 0 : value;
         return bestFar;
     }
 
-    /** Return best move at depth 0 on BOARD of SIDE. */
-    private Move guessBestMove(Piece side, Board board) {
+    /** Return best move at depth 0 on BOARD of SIDE, stopping at the first
+     *  whose value is at least BETA.  A move after which the opponent can
+     *  connect at once counts as lost, as if the search had been extended
+     *  by a ply.  With the classic evaluation, the positions after the
+     *  moves are generated and judged as bit masks in a LeafBatch, and
+     *  evaluated LEAF_CHUNK at a time, so that no move is made and only the
+     *  move chosen is created; otherwise each move is made and retracted,
+     *  so that the evaluator can follow it. */
+    private Move guessBestMove(Piece side, Board board, double beta) {
+        if (_evaluator == null) {
+            return guessBestLeaf(side, board, beta);
+        }
         Move bestFar = null;
-        double val = WORST;
+        double val = Double.NEGATIVE_INFINITY;
         for (Move move : board) {
+            if (shouldStop()) {
+                break;
+            }
             board.makeMove(move);
-            double eval = eval(board, side);
+            Piece winner = board.winner();
+            double eval;
+            if (winner == side) {
+                eval = -WORST;
+            } else if (winner != null
+                       || board.hasWinningMove(side.opposite())) {
+                eval = WORST;
+            } else {
+                eval = evaluate(board, side);
+            }
+            board.retract();
             if (eval > val) {
                 bestFar = move;
                 val = eval;
+                if (val >= beta) {
+                    break;
+                }
             }
-            board.retract();
         }
-        _map.put(bestFar, val);
+        _value = bestFar == null ? 0 : val;
         return bestFar;
     }
 
+    /** Return guessBestMove(SIDE, BOARD, BETA) for the classic
+     *  evaluation, using my LeafBatch. */
+    private Move guessBestLeaf(Piece side, Board board, double beta) {
+        LeafBatch batch = _leafBatch;
+        batch.clear();
+        batch.addChildren(board.pieces(side), board.pieces(side.opposite()));
+        int n = batch.size(), best = -1;
+        double val = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < n; k += 1) {
+            if (shouldStop()) {
+                break;
+            }
+            if (k % LEAF_CHUNK == 0) {
+                batch.evaluate(k, Math.min(k + LEAF_CHUNK, n));
+            }
+            double eval = leafValue(batch.own(k), batch.other(k),
+                                    batch.value(k));
+            if (eval > val) {
+                best = k;
+                val = eval;
+                if (val >= beta) {
+                    break;
+                }
+            }
+        }
+        if (best < 0) {
+            _value = 0;
+            return null;
+        }
+        _value = val;
+        int from = batch.from(best), to = batch.to(best);
+        return Move.create(Lines.col(from), Lines.row(from), Lines.col(to),
+                           Lines.row(to), board);
+    }
+
+    /** Return the value, for the side that has just moved and has the
+     *  pieces OWN, of the position in which the side to move has OTHER,
+     *  given its classic evaluation VALUE: a win if OWN is contiguous (even
+     *  if OTHER is too), and a loss if OTHER is or can be made so in one
+     *  move. */
+    private double leafValue(long own, long other, double value) {
+        if (Board.contiguous(own)) {
+            return -WORST;
+        } else if (Board.contiguous(other)
+                   || Board.hasWinningMove(other, own, _groups)) {
+            return WORST;
+        } else {
+            return value;
+        }
+    }
+
+    /** Write a line describing the search so far, which has completed
+     *  DEPTH plies and chosen BEST, to my info stream, if any. */
+    private void report(int depth, Move best) {
+        PrintStream info = _info;
+        if (info == null) {
+            return;
+        }
+        long time = System.currentTimeMillis() - _startTime;
+        String score =
+            _value >= -WORST ? "win" : _value <= WORST ? "loss"
+            : String.format("%.4f", _value);
+        info.printf("info depth %d score %s nodes %d time %d nps %d pv %s%n",
+                    depth, score, _nodes, time,
+                    _nodes * 1000 / Math.max(1, time), best);
+        info.flush();
+    }
+
+    @Override
+    void stop() {
+        _stop = true;
+    }
+
+    /** Count one node, and return true iff the search in progress must be
+     *  abandoned because of a stop request or my time or node limit.
+     *  These are only looked at every POLL_INTERVAL nodes; once one is
+     *  seen, it sticks until the next search. */
+    private boolean shouldStop() {
+        _nodes += 1;
+        if (!_stopped && (_nodes & (POLL_INTERVAL - 1)) == 0) {
+            _stopped = _stop
+                || (_nodeLimit > 0 && _nodes >= _nodeLimit)
+                || (_moveTime > 0
+                    && System.currentTimeMillis() - _startTime >= _moveTime);
+        }
+        return _stopped;
+    }
+
+    /** Make me write progress information during searches to INFO, or
+     *  nowhere if INFO is null. */
+    void setInfoStream(PrintStream info) {
+        _info = info;
+    }
+
+    /** Return the network stored in FILE.  Throws
+     *  IllegalArgumentException if it cannot be read. */
+    private static NeuralEvaluator.Network loadNetwork(String file) {
+        try {
+            Path path = Paths.get(file).toAbsolutePath();
+            String key = path + "@" + Files.getLastModifiedTime(path);
+            synchronized (MachinePlayer.class) {
+                if (!key.equals(_loadedNetworkKey)) {
+                    _loadedNetwork = NeuralEvaluator.Network.load(path);
+                    _loadedNetworkKey = key;
+                }
+                return _loadedNetwork;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("cannot load " + file + ": "
+                                               + excp.getMessage());
+        }
+    }
+
+    /** Return the tables stored in FILE, checking that the pattern
+     *  evaluation can use them.  Throws IllegalArgumentException if they
+     *  cannot be read or are unsuitable. */
+    private static Weights loadWeights(String file) {
+        try {
+            Path path = Paths.get(file).toAbsolutePath();
+            String key = path + "@" + Files.getLastModifiedTime(path);
+            synchronized (MachinePlayer.class) {
+                if (!key.equals(_loadedWeightsKey)) {
+                    Weights weights = Weights.load(path);
+                    new PatternEvaluator(weights);
+                    _loadedWeights = weights;
+                    _loadedWeightsKey = key;
+                }
+                return _loadedWeights;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("cannot load " + file + ": "
+                                               + excp.getMessage());
+        }
+    }
+
+    /** Return the endgame table stored in FILE.  Throws
+     *  IllegalArgumentException if it cannot be read. */
+    private static EndgameTable loadEndgame(String file) {
+        try {
+            Path path = Paths.get(file).toAbsolutePath();
+            String key = path + "@" + Files.getLastModifiedTime(path);
+            synchronized (MachinePlayer.class) {
+                if (!key.equals(_loadedEndgameKey)) {
+                    _loadedEndgame = new EndgameTable(path);
+                    _loadedEndgameKey = key;
+                }
+                return _loadedEndgame;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("cannot load " + file + ": "
+                                               + excp.getMessage());
+        }
+    }
+
+    /** Return the name and modification time of FILE, which identify the
+     *  weights loaded from it.  Throws IllegalArgumentException if it
+     *  cannot be read. */
+    private static String source(String file) {
+        try {
+            Path path = Paths.get(file).toAbsolutePath();
+            return path + "@" + Files.getLastModifiedTime(path);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("cannot load " + file + ": "
+                                               + excp.getMessage());
+        }
+    }
+
+    /** Return a fingerprint of my evaluation settings, including my
+     *  endgame table, which is combined with the keys of positions in my
+     *  learning cache so that players sharing the cache but evaluating
+     *  differently do not use each other's results. */
+    private long evalFingerprint() {
+        String settings;
+        switch (_evalName) {
+        case "nnue":
+            settings = "nnue " + _networkSource;
+            break;
+        case "pattern":
+            settings = "pattern " + _weightsSource;
+            break;
+        default:
+            settings = "classic " + _compact + " " + _center + " "
+                + _mobility;
+            break;
+        }
+        settings += " endgame " + _endgameSource;
+        long result = 0;
+        for (int i = 0; i < settings.length(); i += 1) {
+            result = Board.mix(result + settings.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return the learning cache kept in FILE.  Throws
+     *  IllegalArgumentException if it cannot be read. */
+    private static LearningCache openLearning(String file) {
+        try {
+            return LearningCache.open(Paths.get(file));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("cannot load " + file + ": "
+                                               + excp.getMessage());
+        }
+    }
+
+    /** Return my learning cache, or null if I have none. */
+    LearningCache learningCache() {
+        return _learning;
+    }
+
+    /** Return the value, from my endgame table, of the position with MINE
+     *  to move and THEIRS, for the side to move: a win in fewer plies
+     *  counts as slightly better than one in more, and a loss in fewer as
+     *  slightly worse. */
+    private double endgameValue(long mine, long theirs) {
+        int value = _endgame.value(mine, theirs);
+        if (value == EndgameTable.DRAW) {
+            return 0;
+        }
+        double win = -WORST - DISTANCE_UNIT * _endgame.distance(mine, theirs);
+        return value == EndgameTable.WIN ? win : -win;
+    }
+
+    /** Return a new evaluator for my evaluation, or null if it is the
+     *  classic one, which needs none. */
+    private Evaluator newEvaluator() {
+        switch (_evalName) {
+        case "nnue":
+            return new NeuralEvaluator(_network == null
+                                       ? NeuralEvaluator.Network.standard()
+                                       : _network);
+        case "pattern":
+            return new PatternEvaluator(_weights == null
+                                        ? PatternEvaluator.standard()
+                                        : _weights);
+        default:
+            return null;
+        }
+    }
+
+    /** Return my evaluation of BOARD, the board being searched, for
+     *  SIDE. */
+    private double evaluate(Board board, Piece side) {
+        return _evaluator == null
+            ? eval(board, side, _compact, _center, _mobility)
+            : _evaluator.evaluate(side);
+    }
+
     /** Return evaluation of BOARD of turn SIDE. */
-    private static double eval(Board board, Piece side) {
+    static double eval(Board board, Piece side) {
+        return eval(board, side, 1, 1, 0);
+    }
+
+    /** Return the evaluation of BOARD for SIDE with its terms weighted:
+     *  COMPACT times the reciprocal of each side's wasted distance from
+     *  its center of mass, CENTER times the reciprocal of its distance
+     *  from the center of the board, and MOBILITY times the difference
+     *  between SIDE's and its opponent's numbers of legal moves (weighted
+     *  as by Mobility.STANDARD), whoever is to move. */
+    static double eval(Board board, Piece side, double compact,
+                       double center, double mobility) {
         int[] com = com(board, side);
         int colCom = com[0];
         int rowCom = com[1];
@@ -91,7 +738,7 @@ class MachinePlayer extends Player {
         int distFromCom = distFromCOM(board, colCom, rowCom, side);
         int empSq = distFromCom - minDist(count, colCom, rowCom);
         int central = centralize(board, side);
-        double evalSide = 1.0 / empSq + 1.0 / central;
+        double evalSide = compact / empSq + center / central;
         Piece sideOp = side.opposite();
         int[] comOp = com(board, sideOp);
         int colComOp = comOp[0];
@@ -100,8 +747,23 @@ class MachinePlayer extends Player {
         int distFromComOp = distFromCOM(board, colComOp, rowComOp, sideOp);
         int empSqOp = distFromComOp - minDist(countOp, colComOp, rowComOp);
         int centralOp = centralize(board, sideOp);
-        double evalOp = 1.0 / empSqOp + 1.0 / centralOp;
-        return evalSide - evalOp;
+        double evalOp = compact / empSqOp + center / centralOp;
+        double value = evalSide - evalOp;
+        if (mobility != 0) {
+            long mine = board.pieces(side),
+                theirs = board.pieces(side.opposite());
+            value += mobility * mobilityDifference(mine, theirs);
+        }
+        return value;
+    }
+
+    /** Return the number of moves, weighted as by Mobility.STANDARD, of
+     *  the side with pieces MINE less that of its opponent, with pieces
+     *  THEIRS. */
+    static double mobilityDifference(long mine, long theirs) {
+        return (double) (Mobility.weighted(mine, theirs, Mobility.STANDARD)
+                         - Mobility.weighted(theirs, mine, Mobility.STANDARD))
+            / Mobility.SCALE;
     }
 
     /** Return the center of mass of SIDE on BOARD. */
@@ -188,13 +850,6 @@ class MachinePlayer extends Player {
         }
     }
 
-    /** Return the board after making MOVE on BOARD. */
-    private Board makeCopyMove(Board board, Move move) {
-        board.makeMove(move);
-        Board copy = new Board(board);
-        board.retract();
-        return copy;
-    }
     /** Return the side. */
     Piece getSide() {
         return _side;
@@ -23,14 +23,142 @@ public class Main {
      *                      messages up to level LEVEL.  0 indicates no
      *                      debugging messages (the default).  (This option
      *                      is not part of the spec.)
+     *      --match=N       Play a headless match of N games between two
+     *                      AI configurations and report the results,
+     *                      using the options below.
+     *      --first=SPEC, --second=SPEC
+     *                      AI settings (NAME=VALUE,...) for each side of
+     *                      a match.
+     *      --threads=N     Number of games of a match to play at once.
+     *      --plies=N       Number of random plies in each opening.
+     *      --seed=N        Seed for choosing openings.
+     *      --sprt=E0,E1[,A,B]
+     *                      Stop a match once a sequential probability
+     *                      ratio test decides between the first AI being
+     *                      E0 or E1 Elo stronger (error rates A and B).
+     *      --output=FILE   Write match results to FILE.
+     *      --engine        Drive the AI through the line-based engine
+     *                      protocol (see EngineProtocol) on the standard
+     *                      input and output.
+     *      --server=PORT   Host a separate game for each client connecting
+     *                      to PORT on the loopback interface (see
+     *                      GameServer), with AI searches on --threads
+     *                      threads.
+     *      --spectate=PORT Publish the moves of the game played on the
+     *                      standard input to spectators connecting to
+     *                      PORT on the loopback interface (see
+     *                      SpectatorServer).
+     *      --index=ARCHIVE Write an index of the positions in the games of
+     *                      the binary archive ARCHIVE (see PositionIndex)
+     *                      to --output (default ARCHIVE.idx), using
+     *                      --threads threads.
+     *      --weights=FILE  Make AI players use the pattern evaluation with
+     *                      the tables in FILE (see Weights), as with the
+     *                      AI setting weights=FILE.  With --tune, the
+     *                      tables from which to start instead.
+     *      --learn=FILE    Make AI players keep the results of their
+     *                      searches in FILE from game to game (see
+     *                      LearningCache), as with the AI setting
+     *                      learn=FILE.
+     *      --tune=ARCHIVE  Tune the tables of the pattern evaluation on
+     *                      the games of the binary archive ARCHIVE (see
+     *                      TexelTuner), writing them to --output (default
+     *                      ARCHIVE.weights), using --threads threads,
+     *                      for --epochs=N passes with step size --rate=R
+     *                      and logistic scale --scale=K (fitted if
+     *                      absent).
+     *      --spsa=N        Tune numeric AI settings by SPSA over N
+     *                      iterations of self-play (see SpsaTuner): those
+     *                      in --params=NAME:VALUE:MIN:MAX:STEP,... (by
+     *                      default MachinePlayer.TUNABLES), on top of the
+     *                      settings --first, playing --pairs=P pairs of
+     *                      games per iteration with --threads, --plies,
+     *                      and --seed as for --match, and resuming from
+     *                      and saving to --checkpoint=FILE (which keeps
+     *                      the seed; a different --seed is refused).
+     *      --generate=PREFIX
+     *                      Write --positions=N positions from self-play,
+     *                      with their search values and the results of
+     *                      their games, to shards named after PREFIX (see
+     *                      DataGenerator), searching --nodes=N nodes per
+     *                      move with the settings --first, and with
+     *                      --threads, --plies, and --seed as for --match.
+     *      --dedup=PREFIX  Copy the positions in the shards named after
+     *                      PREFIX to shards named after --output (default
+     *                      PREFIX.unique), dropping repeated positions
+     *                      (see Deduplicator).  This and --endgame use
+     *                      memory off the heap, which the JVM limits to
+     *                      the heap size (-Xmx) unless given
+     *                      -XX:MaxDirectMemorySize=SIZE.
+     *      --endgame=N     Solve all positions with 2 to N (at most 3)
+     *                      pieces per side by retrograde analysis (see
+     *                      EndgameSolver), writing the table to --output
+     *                      (default endgame-N.tbl), with distances to the
+     *                      end if --distances is given.  AI players
+     *                      probe such a table given by the AI setting
+     *                      endgame=FILE.
+     *      --bench[=N]     Report the speed of the evaluation functions
+     *                      over N positions (see Benchmark), chosen with
+     *                      --seed.
      */
     public static void main(String... args) {
         CommandArgs options =
-            new CommandArgs("--debug=(\\d+){0,1} --display{0,1}", args);
+            new CommandArgs("--debug=(\\d+){0,1} --display{0,1} "
+                            + "--match=(\\d+){0,1} --first=(.*){0,1} "
+                            + "--second=(.*){0,1} --threads=(\\d+){0,1} "
+                            + "--plies=(\\d+){0,1} --seed=(-?\\d+){0,1} "
+                            + "--sprt=(.*){0,1} --output=(.*){0,1} "
+                            + "--engine{0,1} --server=(\\d+){0,1} "
+                            + "--spectate=(\\d+){0,1} --index=(.*){0,1} "
+                            + "--bench=(\\d*){0,1} --weights=(.*){0,1} "
+                            + "--tune=(.*){0,1} --epochs=(\\d+){0,1} "
+                            + "--rate=(.*){0,1} --scale=(.*){0,1} "
+                            + "--spsa=(\\d+){0,1} --params=(.*){0,1} "
+                            + "--pairs=(\\d+){0,1} --checkpoint=(.*){0,1} "
+                            + "--generate=(.*){0,1} "
+                            + "--positions=(\\d+){0,1} --nodes=(\\d+){0,1} "
+                            + "--dedup=(.*){0,1} --endgame=(\\d+){0,1} "
+                            + "--distances{0,1} --learn=(.*){0,1}",
+                            args);
 
         if (!options.ok()) {
             usage();
         }
+        if (options.contains("--match")) {
+            Tournament.main(options);
+        }
+        if (options.contains("--spsa")) {
+            SpsaTuner.main(options);
+        }
+        if (options.contains("--tune")) {
+            TexelTuner.main(options);
+        }
+        if (options.contains("--generate")) {
+            DataGenerator.main(options);
+        }
+        if (options.contains("--dedup")) {
+            Deduplicator.main(options);
+        }
+        if (options.contains("--endgame")) {
+            EndgameSolver.main(options);
+        }
+        String machineOptions = options.contains("--weights")
+            ? "weights=" + options.getFirst("--weights") : "";
+        if (options.contains("--learn")) {
+            machineOptions += ",learn=" + options.getFirst("--learn");
+        }
+        if (options.contains("--engine")) {
+            engine(machineOptions);
+        }
+        if (options.contains("--bench")) {
+            Benchmark.main(options);
+        }
+        if (options.contains("--index")) {
+            PositionIndex.main(options);
+        }
+        if (options.contains("--server")) {
+            GameServer.main(options);
+        }
         System.out.printf("Lines of Action.  Version %s.%nType ? for help.%n",
                           VERSION);
 
@@ -46,7 +174,45 @@ public class Main {
         }
 
         Game game = new Game();
+        try {
+            game.setMachineOptions(machineOptions);
+        } catch (IllegalArgumentException excp) {
+            error(1, "%s%n", excp.getMessage());
+        }
+        if (options.contains("--spectate")) {
+            spectate(game, options.getInt("--spectate"));
+        }
         game.play();
+        System.exit(0);
+    }
+
+    /** Run the engine protocol on the standard input and output, with
+     *  the initial AI settings SPEC, and exit. */
+    static void engine(String spec) {
+        try {
+            EngineProtocol engine =
+                new EngineProtocol(new BufferedReader(
+                                       new InputStreamReader(System.in)),
+                                   System.out);
+            engine.setOptions(spec);
+            engine.run();
+        } catch (IOException excp) {
+            error(1, "unexpected I/O error on input");
+        } catch (IllegalArgumentException excp) {
+            error(1, "%s%n", excp.getMessage());
+        }
+        System.exit(0);
+    }
+
+    /** Publish the games played by GAME to spectators on PORT. */
+    static void spectate(Game game, int port) {
+        try {
+            SpectatorServer spectators = new SpectatorServer(port);
+            spectators.start();
+            game.setSpectators(spectators);
+        } catch (IOException excp) {
+            error(1, "cannot serve spectators: %s%n", excp.getMessage());
+        }
     }
 
     /** Print brief description of the command-line format. */
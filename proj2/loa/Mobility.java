@@ -0,0 +1,100 @@
+package loa;
+
+import java.util.Arrays;
+
+/** Counts of legal moves computed directly from the bit masks of the
+ *  pieces (see Lines), without generating Move objects or allocating
+ *  anything: for each piece and direction, the length of the move is the
+ *  number of pieces on its line, and the move is legal if its target is
+ *  on the board and not friendly and no enemy piece lies in between.
+ *  Moves may be weighted by whether they capture and whether their
+ *  targets lie on the edge of the board, as a table of four weights
+ *  indexed by CAPTURE and EDGE.
+ *  @author JuKyung Choi
+ */
+final class Mobility {
+
+    /** Not instantiable. */
+    private Mobility() {
+    }
+
+    /** Index bit in a table of weights for a move that captures. */
+    static final int CAPTURE = 1;
+    /** Index bit in a table of weights for a move to an edge square. */
+    static final int EDGE = 2;
+    /** Weights under which every move counts 1. */
+    static final int[] ONES = { 1, 1, 1, 1 };
+    /** Standard weights, in units of 1/SCALE of a move: a capture counts
+     *  double, and a move to the edge half. */
+    static final int[] STANDARD = { 2, 4, 1, 2 };
+    /** Number of units of STANDARD weights in one move. */
+    static final int SCALE = 2;
+
+    /** Return the number of legal moves of the side with the pieces MINE
+     *  when its opponent has the pieces THEIRS. */
+    static int count(long mine, long theirs) {
+        return weighted(mine, theirs, ONES);
+    }
+
+    /** Set COUNTS[K], for each index K of a table of weights, to the
+     *  number of legal moves of the side with the pieces MINE, when its
+     *  opponent has the pieces THEIRS, that would have weight WEIGHTS[K]
+     *  (see weighted). */
+    static void counts(long mine, long theirs, int[] counts) {
+        Arrays.fill(counts, 0);
+        long occupied = mine | theirs;
+        for (long rest = mine; rest != 0; rest &= rest - 1) {
+            int from = Long.numberOfTrailingZeros(rest);
+            for (int d = 0; d < Lines.DIRS; d += 1) {
+                int k = kind(from, d, mine, theirs, occupied);
+                if (k >= 0) {
+                    counts[k] += 1;
+                }
+            }
+        }
+    }
+
+    /** Return the sum over the legal moves of the side with the pieces
+     *  MINE, when its opponent has the pieces THEIRS, of WEIGHTS[K], where
+     *  K is the sum of CAPTURE if the move captures and EDGE if its target
+     *  is on the edge of the board. */
+    static int weighted(long mine, long theirs, int[] weights) {
+        long occupied = mine | theirs;
+        int sum = 0;
+        for (long rest = mine; rest != 0; rest &= rest - 1) {
+            int from = Long.numberOfTrailingZeros(rest);
+            for (int d = 0; d < Lines.DIRS; d += 1) {
+                int k = kind(from, d, mine, theirs, occupied);
+                if (k >= 0) {
+                    sum += weights[k];
+                }
+            }
+        }
+        return sum;
+    }
+
+    /** Return the index in a table of weights of the move from FROM in
+     *  direction D of the side with the pieces MINE, when its opponent has
+     *  the pieces THEIRS and OCCUPIED is their union, or -1 if there is no
+     *  such legal move. */
+    private static int kind(int from, int d, long mine, long theirs,
+                            long occupied) {
+        int[] targets = Lines.TARGET[from][d];
+        int n = Long.bitCount(occupied & Lines.LINE[from][Lines.axis(d)]);
+        if (n > targets.length) {
+            return -1;
+        }
+        int to = targets[n - 1];
+        long toBit = 1L << to;
+        if ((mine & toBit) != 0 || (theirs & Lines.BETWEEN[from][to]) != 0) {
+            return -1;
+        }
+        int k = (theirs & toBit) != 0 ? CAPTURE : 0;
+        return (EDGES & toBit) != 0 ? k | EDGE : k;
+    }
+
+    /** The squares on the edge of the board. */
+    static final long EDGES =
+        Lines.COLUMN_A | Lines.COLUMN_H | 0xffL | (0xffL << 56);
+
+}
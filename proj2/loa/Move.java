@@ -17,15 +17,7 @@ class Move {
     /** Return a move on BOARD denoted by a prefix of S (after trimming),
      *  or null if S denotes no valid move. */
     static Move create(String s, Board board) {
-        s = s.trim();
-        if (s.matches("[a-h][1-9]-[a-h][1-9]\\b.*")) {
-            String p1 = s.substring(0, 2);
-            String p2 = s.substring(3, 5);
-            return create(board.col(p1), board.row(p1),
-                          board.col(p2), board.row(p2), board);
-        } else {
-            return null;
-        }
+        return Notation.parseMove(s, board);
     }
 
     /** Return a move of the piece at COLUMN0, ROW0 to COLUMN1, ROW1, on
@@ -114,8 +106,12 @@ class Move {
 
     @Override
     public String toString() {
-        return String.format("%c%d-%c%d", (char) (_col0 - 1 + 'a'), _row0,
-                             (char) (_col1 - 1 + 'a'), _row1);
+        if (_name == null) {
+            StringBuilder name = new StringBuilder(Notation.MOVE_LENGTH);
+            Notation.format(this, name);
+            _name = name.toString();
+        }
+        return _name;
     }
 
     /** Column and row numbers of starting and ending points. */
@@ -124,6 +120,8 @@ class Move {
     private final Piece _moved;
     /** Piece replaced. */
     private final Piece _replaced;
+    /** My standard notation, once computed. */
+    private String _name;
 
     /** The set of all possible Moves, indexed by row and column of
      *  start, row and column of destination, piece moved and piece replaced. */
@@ -0,0 +1,243 @@
+package loa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static loa.Piece.*;
+
+/** A small neural-network evaluation in the style of NNUE, kept up to
+ *  date incrementally by listening to a Board.  The inputs are INPUTS
+ *  binary features, one for each (piece, square) seen from each side's
+ *  perspective: a piece is "own" or "other" and its square is flipped
+ *  top to bottom for White, so that both sides see themselves alike.  The
+ *  first layer, a weighted sum of the active features, is kept for each
+ *  perspective in an accumulator that is adjusted by one row of weights
+ *  for each piece that arrives or leaves.  The value of a position for a
+ *  side is then an output layer over the clipped accumulators, its own
+ *  first.  All weights are integers (see Network).
+ *  @author JuKyung Choi
+ */
+class NeuralEvaluator implements Evaluator {
+
+    /** Number of input features. */
+    static final int INPUTS = 2 * Lines.SQUARES;
+    /** Upper bound of the clipped activation of the first layer. */
+    static final int QA = 127;
+    /** Scale of the output weights. */
+    static final int QB = 64;
+    /** Largest magnitude of value returned by evaluate. */
+    static final double MAX_VALUE = 50;
+
+    /** The weights of an evaluation network, which may be shared by any
+     *  number of evaluators.  They are integers: the first layer's in units
+     *  of 1/QA of an activation, and the output layer's in units of 1/QB,
+     *  so that the output, divided by QA * QB, is a value. */
+    static final class Network {
+
+        /** A network with HIDDEN first-layer outputs, and weights W1
+         *  (INPUTS rows of HIDDEN), first-layer biases B1, output weights
+         *  W2 (2 * HIDDEN), and output bias B2. */
+        Network(int hidden, short[] w1, short[] b1, short[] w2, int b2) {
+            if (hidden <= 0 || w1.length != INPUTS * hidden
+                || b1.length != hidden || w2.length != 2 * hidden) {
+                throw new IllegalArgumentException("bad network shape");
+            }
+            _hidden = hidden;
+            _w1 = w1;
+            _b1 = b1;
+            _w2 = w2;
+            _b2 = b2;
+        }
+
+        /** Return the number of first-layer outputs. */
+        int hidden() {
+            return _hidden;
+        }
+
+        /** Return the network stored in FILE: MAGIC, VERSION, and the
+         *  number of hidden units (ints), then B1, W1, and W2 (shorts) and
+         *  B2 (an int), all big-endian. */
+        static Network load(Path file) throws IOException {
+            try (DataInputStream in =
+                 new DataInputStream(new BufferedInputStream(
+                                         Files.newInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("not a network file: " + file);
+                }
+                int hidden = in.readInt();
+                if (hidden <= 0 || hidden > MAX_HIDDEN) {
+                    throw new IOException("bad network size: " + hidden);
+                }
+                short[] b1 = readShorts(in, hidden),
+                    w1 = readShorts(in, INPUTS * hidden),
+                    w2 = readShorts(in, 2 * hidden);
+                return new Network(hidden, w1, b1, w2, in.readInt());
+            }
+        }
+
+        /** Write me to FILE in the form read by load. */
+        void save(Path file) throws IOException {
+            try (DataOutputStream out =
+                 new DataOutputStream(new BufferedOutputStream(
+                                          Files.newOutputStream(file)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(_hidden);
+                writeShorts(out, _b1);
+                writeShorts(out, _w1);
+                writeShorts(out, _w2);
+                out.writeInt(_b2);
+            }
+        }
+
+        /** Return N shorts read from IN. */
+        private static short[] readShorts(DataInputStream in, int n)
+            throws IOException {
+            short[] result = new short[n];
+            for (int i = 0; i < n; i += 1) {
+                result[i] = in.readShort();
+            }
+            return result;
+        }
+
+        /** Write VALUES to OUT. */
+        private static void writeShorts(DataOutputStream out, short[] values)
+            throws IOException {
+            for (short v : values) {
+                out.writeShort(v);
+            }
+        }
+
+        /** Return a small network built by hand, used when no trained
+         *  weights are supplied.  Its four hidden units measure the
+         *  centralization and number of each side's pieces, so that it
+         *  prefers compact, central groups and fewer pieces to connect. */
+        static Network standard() {
+            int hidden = 4;
+            short[] w1 = new short[INPUTS * hidden], b1 = new short[hidden];
+            for (int sq = 0; sq < Lines.SQUARES; sq += 1) {
+                int c = Lines.col(sq), r = Lines.row(sq);
+                int ring = Math.max(Math.max(c - 1, M - c),
+                                    Math.max(r - 1, M - r)) - M / 2;
+                int central = 3 * (M / 2 - 1 - ring);
+                w1[sq * hidden] = (short) central;
+                w1[sq * hidden + 2] = PIECE_UNIT;
+                w1[(Lines.SQUARES + sq) * hidden + 1] = (short) central;
+                w1[(Lines.SQUARES + sq) * hidden + 3] = PIECE_UNIT;
+            }
+            short[] w2 = { 2, -2, -3, 3, -2, 2, 3, -3 };
+            return new Network(hidden, w1, b1, w2, 0);
+        }
+
+        /** First four bytes of a network file ("LOAN"). */
+        static final int MAGIC = 0x4c4f414e;
+        /** Format version. */
+        static final int VERSION = 1;
+        /** Largest number of hidden units accepted from a file. */
+        static final int MAX_HIDDEN = 1024;
+        /** First-layer weight of one piece in the standard network. */
+        private static final short PIECE_UNIT = 10;
+        /** Size of a board. */
+        private static final int M = Board.M;
+
+        /** Number of first-layer outputs. */
+        private final int _hidden;
+        /** First-layer weights, HIDDEN for each input in turn. */
+        private final short[] _w1;
+        /** First-layer biases. */
+        private final short[] _b1;
+        /** Output weights: HIDDEN for the side to be valued, then HIDDEN
+         *  for its opponent. */
+        private final short[] _w2;
+        /** Output bias. */
+        private final int _b2;
+    }
+
+    /** An evaluator using the weights in NET. */
+    NeuralEvaluator(Network net) {
+        _net = net;
+        _hidden = net._hidden;
+        _acc = new int[2][_hidden];
+    }
+
+    /** Return the value of the current position for SIDE (positive if
+     *  good for SIDE), at most MAX_VALUE in magnitude. */
+    @Override
+    public double evaluate(Piece side) {
+        int[] us = _acc[side.ordinal()], them = _acc[1 - side.ordinal()];
+        short[] w2 = _net._w2;
+        long sum = _net._b2;
+        for (int i = 0; i < _hidden; i += 1) {
+            sum += clip(us[i]) * w2[i] + clip(them[i]) * w2[_hidden + i];
+        }
+        double value = (double) sum / (QA * QB);
+        return Math.max(-MAX_VALUE, Math.min(MAX_VALUE, value));
+    }
+
+    @Override
+    public void squareChanged(int sq, Piece from, Piece to) {
+        if (from != EMP) {
+            update(sq, from, -1);
+        }
+        if (to != EMP) {
+            update(sq, to, 1);
+        }
+    }
+
+    @Override
+    public void boardReset(Board board) {
+        for (int p = 0; p < 2; p += 1) {
+            for (int i = 0; i < _hidden; i += 1) {
+                _acc[p][i] = _net._b1[i];
+            }
+        }
+        for (Piece side : new Piece[] { BP, WP }) {
+            for (long m = board.pieces(side); m != 0; m &= m - 1) {
+                update(Long.numberOfTrailingZeros(m), side, 1);
+            }
+        }
+    }
+
+    /** Add SIGN times the weights of the features of a PIECE on SQ to
+     *  both accumulators. */
+    private void update(int sq, Piece piece, int sign) {
+        short[] w1 = _net._w1;
+        int black = feature(BP, piece, sq) * _hidden,
+            white = feature(WP, piece, sq) * _hidden;
+        int[] accB = _acc[BP.ordinal()], accW = _acc[WP.ordinal()];
+        for (int i = 0; i < _hidden; i += 1) {
+            accB[i] += sign * w1[black + i];
+            accW[i] += sign * w1[white + i];
+        }
+    }
+
+    /** Return the index of the input feature for a PIECE on SQ seen from
+     *  the perspective of SIDE. */
+    static int feature(Piece side, Piece piece, int sq) {
+        int relative = side == BP ? sq : sq ^ FLIP_ROWS;
+        return piece == side ? relative : Lines.SQUARES + relative;
+    }
+
+    /** Return the activation X clipped to [0, QA]. */
+    private static int clip(int x) {
+        return Math.max(0, Math.min(QA, x));
+    }
+
+    /** Exclusive-or mask that maps a square index to the square in the
+     *  same column with the row reflected. */
+    private static final int FLIP_ROWS = 0x38;
+
+    /** My weights. */
+    private final Network _net;
+    /** Number of hidden units. */
+    private final int _hidden;
+    /** Accumulated first-layer sums for the Black and White
+     *  perspectives. */
+    private final int[][] _acc;
+
+}
@@ -0,0 +1,224 @@
+package loa;
+
+/** Parsing and formatting of the standard notation for squares ("c4")
+ *  and moves ("c4-e6"), without regular expressions and without creating
+ *  objects, from and to character sequences and ranges of ASCII bytes.
+ *  A move is recognized as by the pattern [a-h][1-8]-[a-h][1-8]\b.* after
+ *  leading white space (characters no greater than ' '), so that trailing
+ *  text after a break, such as a comment, is ignored.
+ *
+ *  Also the one-line notation for whole positions: the rows from 8 down
+ *  to 1, separated by '/', each giving its squares from column a to h as
+ *  b (black), w (white), or a digit counting consecutive empty squares,
+ *  then white space and the side to move (b or w).  The initial position
+ *  is INITIAL_POSITION.
+ *  @author JuKyung Choi
+ */
+class Notation {
+
+    /** Length of a move in standard notation. */
+    static final int MOVE_LENGTH = 5;
+
+    /** The initial position in position notation. */
+    static final String INITIAL_POSITION =
+        "1bbbbbb1/w6w/w6w/w6w/w6w/w6w/w6w/1bbbbbb1 b";
+
+    /** Return the column (1-8) of the square named by SQ, or -1 if SQ does
+     *  not name a square. */
+    static int col(CharSequence sq) {
+        return sq.length() == 2 && row(sq.charAt(1)) > 0
+            ? col(sq.charAt(0)) : -1;
+    }
+
+    /** Return the row (1-8) of the square named by SQ, or -1 if SQ does
+     *  not name a square. */
+    static int row(CharSequence sq) {
+        return sq.length() == 2 && col(sq.charAt(0)) > 0
+            ? row(sq.charAt(1)) : -1;
+    }
+
+    /** Return the move on BOARD denoted by a prefix of S (after leading
+     *  white space), or null if there is none. */
+    static Move parseMove(CharSequence s, Board board) {
+        return parseMove(s, 0, s.length(), board);
+    }
+
+    /** Return the move on BOARD denoted by a prefix of S[START .. END-1]
+     *  (after leading white space), or null if there is none. */
+    static Move parseMove(CharSequence s, int start, int end, Board board) {
+        while (start < end && s.charAt(start) <= ' ') {
+            start += 1;
+        }
+        if (end - start < MOVE_LENGTH
+            || (end - start > MOVE_LENGTH
+                && isWordChar(s.charAt(start + MOVE_LENGTH)))) {
+            return null;
+        }
+        return move(s.charAt(start), s.charAt(start + 1),
+                    s.charAt(start + 2), s.charAt(start + 3),
+                    s.charAt(start + 4), board);
+    }
+
+    /** Return the move on BOARD denoted by a prefix of the ASCII text
+     *  BUF[START .. END-1] (after leading white space), or null if there is
+     *  none. */
+    static Move parseMove(byte[] buf, int start, int end, Board board) {
+        while (start < end && (buf[start] & 0xff) <= ' ') {
+            start += 1;
+        }
+        if (end - start < MOVE_LENGTH
+            || (end - start > MOVE_LENGTH
+                && isWordChar((char) (buf[start + MOVE_LENGTH] & 0xff)))) {
+            return null;
+        }
+        return move((char) buf[start], (char) buf[start + 1],
+                    (char) buf[start + 2], (char) buf[start + 3],
+                    (char) buf[start + 4], board);
+    }
+
+    /** Append the standard notation for MOVE to OUT. */
+    static void format(Move move, StringBuilder out) {
+        out.append(colName(move.getCol0())).append(rowName(move.getRow0()))
+            .append('-')
+            .append(colName(move.getCol1())).append(rowName(move.getRow1()));
+    }
+
+    /** Write the standard notation for MOVE, in ASCII, to BUF[POS ...],
+     *  returning the position just after it. */
+    static int format(Move move, byte[] buf, int pos) {
+        buf[pos] = (byte) colName(move.getCol0());
+        buf[pos + 1] = (byte) rowName(move.getRow0());
+        buf[pos + 2] = '-';
+        buf[pos + 3] = (byte) colName(move.getCol1());
+        buf[pos + 4] = (byte) rowName(move.getRow1());
+        return pos + MOVE_LENGTH;
+    }
+
+    /** Return the position denoted by S in position notation (ignoring
+     *  surrounding white space).  Throws IllegalArgumentException if S is
+     *  malformed. */
+    static Position parsePosition(CharSequence s) {
+        int k = 0, n = s.length();
+        while (k < n && s.charAt(k) <= ' ') {
+            k += 1;
+        }
+        long black = 0, white = 0;
+        for (int r = Board.M; r >= 1; r -= 1) {
+            int c = 1;
+            for (; k < n && c <= Board.M + 1; k += 1) {
+                char ch = s.charAt(k);
+                if (ch == 'b' || ch == 'w') {
+                    if (c > Board.M) {
+                        break;
+                    }
+                    long bit = 1L << Lines.index(c, r);
+                    if (ch == 'b') {
+                        black |= bit;
+                    } else {
+                        white |= bit;
+                    }
+                    c += 1;
+                } else if ('1' <= ch && ch <= '8') {
+                    c += ch - '0';
+                } else {
+                    break;
+                }
+            }
+            if (c != Board.M + 1) {
+                throw badPosition(s);
+            }
+            if (r > 1) {
+                if (k == n || s.charAt(k) != '/') {
+                    throw badPosition(s);
+                }
+                k += 1;
+            }
+        }
+        int end = n;
+        while (end > k && s.charAt(end - 1) <= ' ') {
+            end -= 1;
+        }
+        if (end - k < 2 || s.charAt(k) > ' ') {
+            throw badPosition(s);
+        }
+        char side = s.charAt(end - 1);
+        for (int i = k; i < end - 1; i += 1) {
+            if (s.charAt(i) > ' ') {
+                throw badPosition(s);
+            }
+        }
+        if (side != 'b' && side != 'w') {
+            throw badPosition(s);
+        }
+        return new Position(black, white, side == 'b' ? Piece.BP : Piece.WP);
+    }
+
+    /** Append the position notation for POSITION to OUT. */
+    static void formatPosition(Position position, StringBuilder out) {
+        for (int r = Board.M; r >= 1; r -= 1) {
+            int empty = 0;
+            for (int c = 1; c <= Board.M; c += 1) {
+                Piece p = position.get(c, r);
+                if (p == Piece.EMP) {
+                    empty += 1;
+                    continue;
+                }
+                if (empty > 0) {
+                    out.append((char) ('0' + empty));
+                    empty = 0;
+                }
+                out.append(p.abbrev());
+            }
+            if (empty > 0) {
+                out.append((char) ('0' + empty));
+            }
+            if (r > 1) {
+                out.append('/');
+            }
+        }
+        out.append(' ').append(position.turn().abbrev());
+    }
+
+    /** Return an exception reporting that S is not a valid position. */
+    private static IllegalArgumentException badPosition(CharSequence s) {
+        return new IllegalArgumentException("bad position: " + s);
+    }
+
+    /** Return the move on BOARD denoted by the characters C0, R0, DASH,
+     *  C1, R1, or null if there is none. */
+    private static Move move(char c0, char r0, char dash, char c1, char r1,
+                             Board board) {
+        int col0 = col(c0), row0 = row(r0), col1 = col(c1), row1 = row(r1);
+        if (col0 < 0 || row0 < 0 || dash != '-' || col1 < 0 || row1 < 0) {
+            return null;
+        }
+        return Move.create(col0, row0, col1, row1, board);
+    }
+
+    /** Return the column (1-8) named by CH, or -1 if none. */
+    private static int col(char ch) {
+        return 'a' <= ch && ch <= 'h' ? ch - 'a' + 1 : -1;
+    }
+
+    /** Return the row (1-8) named by CH, or -1 if none. */
+    private static int row(char ch) {
+        return '1' <= ch && ch <= '8' ? ch - '0' : -1;
+    }
+
+    /** Return the name of column C (1-8). */
+    private static char colName(int c) {
+        return (char) ('a' + c - 1);
+    }
+
+    /** Return the name of row R (1-8). */
+    private static char rowName(int r) {
+        return (char) ('0' + r);
+    }
+
+    /** Return true iff CH is a word character (as for \b in a regular
+     *  expression). */
+    private static boolean isWordChar(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_';
+    }
+
+}
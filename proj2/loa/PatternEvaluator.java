@@ -0,0 +1,259 @@
+package loa;
+
+import static loa.Piece.*;
+
+/** A table-driven evaluation, kept up to date incrementally by listening
+ *  to a Board.  Each piece is worth the sum of two table entries: one for
+ *  its square (the table SQUARE, seen from Black's side; White's squares
+ *  are transposed, as White's pieces start on the columns where Black's
+ *  start on the rows) and one for the contents of the eight squares
+ *  around it (the table PATTERN).  A neighborhood is encoded as a base-4
+ *  number whose digits, from the square to the southwest to that to the
+ *  northeast in row order, are EMPTY, OWN, OTHER, or OFF (off the board).
+ *  The value of a position for a side is the sum over its pieces less the
+ *  sum over its opponent's, plus the difference between its and its
+ *  opponent's legal moves weighted by the table MOBILITY (see Mobility),
+ *  in units of 1/UNIT.
+ *
+ *  A change to one square changes the entries of at most that square and
+ *  its eight neighbors, so the sums are adjusted in a few array reads per
+ *  change rather than recomputed for each position.
+ *  @author JuKyung Choi
+ */
+class PatternEvaluator implements Evaluator {
+
+    /** Name of the piece-square table (Lines.SQUARES entries). */
+    static final String SQUARE = "square";
+    /** Name of the neighborhood pattern table (PATTERNS entries). */
+    static final String PATTERN = "pattern";
+    /** Name of the table of weights of legal moves (Mobility.STANDARD.length
+     *  entries). */
+    static final String MOBILITY = "mobility";
+    /** Number of distinct neighborhoods. */
+    static final int PATTERNS = 1 << (2 * Lines.DIRS);
+    /** Digits of a neighborhood code. */
+    static final int EMPTY = 0, OWN = 1, OTHER = 2, OFF = 3;
+    /** Number of table units in one unit of value. */
+    static final int UNIT = 1000;
+    /** Largest magnitude of value returned by evaluate. */
+    static final double MAX_VALUE = 50;
+
+    /** An evaluator using the tables SQUARE, PATTERN, and MOBILITY in
+     *  WEIGHTS, or those of standard() for any that are missing.  The
+     *  tables are shared, not copied.  Throws IllegalArgumentException if
+     *  a table has the wrong size. */
+    PatternEvaluator(Weights weights) {
+        int[] square = weights.get(SQUARE, Lines.SQUARES),
+            pattern = weights.get(PATTERN, PATTERNS),
+            mobility = weights.get(MOBILITY, Mobility.STANDARD.length);
+        _square = square == null ? STANDARD.get(SQUARE) : square;
+        _pattern = pattern == null ? STANDARD.get(PATTERN) : pattern;
+        _mobility = mobility == null ? STANDARD.get(MOBILITY) : mobility;
+        boolean any = false;
+        for (int w : _mobility) {
+            any |= w != 0;
+        }
+        _useMobility = any;
+    }
+
+    /** Return the standard tables, built by hand, used when no tuned
+     *  weights are supplied: pieces are worth more near the center, and
+     *  more for each friendly neighbor, an isolated piece is worth less,
+     *  and each legal move is worth a little (as by Mobility.STANDARD).
+     *  They are shared, and must not be modified. */
+    static Weights standard() {
+        return STANDARD;
+    }
+
+    /** Return a new copy of the standard tables. */
+    private static Weights buildStandard() {
+        int[] square = new int[Lines.SQUARES];
+        for (int sq = 0; sq < Lines.SQUARES; sq += 1) {
+            int c = Lines.col(sq), r = Lines.row(sq);
+            int ring = Math.max(Math.max(c - 1, Board.M - c),
+                                Math.max(r - 1, Board.M - r)) - Board.M / 2;
+            square[sq] = CENTER_BONUS * (Board.M / 2 - 1 - ring);
+        }
+        int[] pattern = new int[PATTERNS];
+        for (int code = 0; code < PATTERNS; code += 1) {
+            int own = 0;
+            for (int k = 0; k < Lines.DIRS; k += 1) {
+                if (digit(code, k) == OWN) {
+                    own += 1;
+                }
+            }
+            pattern[code] = own == 0 ? ISOLATED : NEIGHBOR_BONUS * own;
+        }
+        Weights result = new Weights();
+        result.put(SQUARE, square);
+        result.put(PATTERN, pattern);
+        int[] mobility = new int[Mobility.STANDARD.length];
+        for (int k = 0; k < mobility.length; k += 1) {
+            mobility[k] = MOVE_BONUS * Mobility.STANDARD[k] / Mobility.SCALE;
+        }
+        result.put(MOBILITY, mobility);
+        return result;
+    }
+
+    /** Return the code of the neighborhood of SQ, seen by the side with
+     *  the pieces OWN when its opponent has the pieces OTHER. */
+    static int neighborhood(long own, long other, int sq) {
+        int code = 0;
+        for (int k = 0; k < Lines.DIRS; k += 1) {
+            int n = NEIGHBOR[sq][k];
+            int d = n < 0 ? OFF
+                : (own & (1L << n)) != 0 ? OWN
+                : (other & (1L << n)) != 0 ? OTHER : EMPTY;
+            code |= d << (2 * k);
+        }
+        return code;
+    }
+
+    /** Return the index in the table SQUARE for a piece of SIDE on SQ. */
+    static int squareIndex(Piece side, int sq) {
+        return side == BP ? sq : Symmetry.TRANSPOSE.apply(sq);
+    }
+
+    /** Return digit K of the neighborhood code CODE. */
+    static int digit(int code, int k) {
+        return (code >>> (2 * k)) & 3;
+    }
+
+    /** Return the neighborhood code CODE seen from the other side: with
+     *  the digits OWN and OTHER exchanged. */
+    static int swapSides(int code) {
+        return ((code & LOW_BITS) << 1) | ((code >>> 1) & LOW_BITS);
+    }
+
+    @Override
+    public double evaluate(Piece side) {
+        int s = side.ordinal();
+        int score = _score[s] - _score[1 - s];
+        if (_useMobility) {
+            long mine = _pieces[s], theirs = _pieces[1 - s];
+            score += Mobility.weighted(mine, theirs, _mobility)
+                - Mobility.weighted(theirs, mine, _mobility);
+        }
+        double value = (double) score / UNIT;
+        return Math.max(-MAX_VALUE, Math.min(MAX_VALUE, value));
+    }
+
+    @Override
+    public void squareChanged(int sq, Piece from, Piece to) {
+        if (from != EMP) {
+            _score[from.ordinal()] -= value(sq, from);
+            _pieces[from.ordinal()] &= ~(1L << sq);
+        }
+        int change = DIGIT[to.ordinal()] - DIGIT[from.ordinal()];
+        int[] neighbors = NEIGHBOR[sq];
+        for (int k = 0; k < Lines.DIRS; k += 1) {
+            int n = neighbors[k];
+            if (n < 0) {
+                continue;
+            }
+            Piece p = _content[n];
+            int shift = 2 * (Lines.DIRS - 1 - k);
+            if (p == EMP) {
+                _code[n] += change << shift;
+            } else {
+                _score[p.ordinal()] -= _pattern[code(n, p)];
+                _code[n] += change << shift;
+                _score[p.ordinal()] += _pattern[code(n, p)];
+            }
+        }
+        _content[sq] = to;
+        if (to != EMP) {
+            _score[to.ordinal()] += value(sq, to);
+            _pieces[to.ordinal()] |= 1L << sq;
+        }
+    }
+
+    @Override
+    public void boardReset(Board board) {
+        for (int sq = 0; sq < Lines.SQUARES; sq += 1) {
+            _content[sq] = board.get(Lines.col(sq), Lines.row(sq));
+        }
+        _score[BP.ordinal()] = _score[WP.ordinal()] = 0;
+        _pieces[BP.ordinal()] = board.pieces(BP);
+        _pieces[WP.ordinal()] = board.pieces(WP);
+        for (int sq = 0; sq < Lines.SQUARES; sq += 1) {
+            int code = 0;
+            for (int k = 0; k < Lines.DIRS; k += 1) {
+                int n = NEIGHBOR[sq][k];
+                int d = n < 0 ? OFF : DIGIT[_content[n].ordinal()];
+                code |= d << (2 * k);
+            }
+            _code[sq] = code;
+            if (_content[sq] != EMP) {
+                _score[_content[sq].ordinal()] += value(sq, _content[sq]);
+            }
+        }
+    }
+
+    /** Return the value of a PIECE on SQ, in the current position. */
+    private int value(int sq, Piece piece) {
+        return _square[squareIndex(piece, sq)] + _pattern[code(sq, piece)];
+    }
+
+    /** Return the code of the neighborhood of SQ, seen by PIECE. */
+    private int code(int sq, Piece piece) {
+        return piece == BP ? _code[sq] : swapSides(_code[sq]);
+    }
+
+    /** Value of a step toward the center in the standard tables. */
+    private static final int CENTER_BONUS = 20;
+    /** Value of each friendly neighbor in the standard tables. */
+    private static final int NEIGHBOR_BONUS = 15;
+    /** Value of a legal move in the standard tables. */
+    private static final int MOVE_BONUS = 4;
+    /** Value of an isolated piece in the standard tables. */
+    private static final int ISOLATED = -60;
+    /** The bits of the low halves of the digits of a code. */
+    private static final int LOW_BITS = 0x5555;
+
+    /** DIGIT[P.ordinal()] is the digit for a piece P seen by Black. */
+    private static final int[] DIGIT = { OWN, OTHER, EMPTY };
+    /** NEIGHBOR[SQ][K] is the neighbor of SQ for digit K of its code, or
+     *  -1 if it is off the board.  Neighbors are in row order, so that SQ
+     *  is the neighbor for digit DIRS - 1 - K of NEIGHBOR[SQ][K]. */
+    private static final int[][] NEIGHBOR =
+        new int[Lines.SQUARES][Lines.DIRS];
+    /** The standard tables. */
+    private static final Weights STANDARD;
+
+    static {
+        for (int sq = 0; sq < Lines.SQUARES; sq += 1) {
+            int c = Lines.col(sq), r = Lines.row(sq), k = 0;
+            for (int dr = -1; dr <= 1; dr += 1) {
+                for (int dc = -1; dc <= 1; dc += 1) {
+                    if (dc == 0 && dr == 0) {
+                        continue;
+                    }
+                    boolean on = 1 <= c + dc && c + dc <= Board.M
+                        && 1 <= r + dr && r + dr <= Board.M;
+                    NEIGHBOR[sq][k] = on ? Lines.index(c + dc, r + dr) : -1;
+                    k += 1;
+                }
+            }
+        }
+        STANDARD = buildStandard();
+    }
+
+    /** My piece-square table. */
+    private final int[] _square;
+    /** My neighborhood pattern table. */
+    private final int[] _pattern;
+    /** My weights of legal moves. */
+    private final int[] _mobility;
+    /** True iff any of my weights of legal moves is nonzero. */
+    private final boolean _useMobility;
+    /** The pieces of each side, by ordinal. */
+    private final long[] _pieces = new long[2];
+    /** The contents of each square. */
+    private final Piece[] _content = new Piece[Lines.SQUARES];
+    /** The code of the neighborhood of each square, seen by Black. */
+    private final int[] _code = new int[Lines.SQUARES];
+    /** The sum of the values of each side's pieces, by ordinal. */
+    private final int[] _score = new int[2];
+
+}
@@ -18,6 +18,12 @@ public abstract class Player {
      *  command stops play. */
     abstract Move makeMove();
 
+    /** Ask me to finish a makeMove() in progress as soon as possible with
+     *  the best move found so far.  May be called from any thread.  By
+     *  default, does nothing. */
+    void stop() {
+    }
+
     /** Return which side I'm playing. */
     Piece side() {
         return _side;
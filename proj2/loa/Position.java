@@ -0,0 +1,106 @@
+package loa;
+
+import java.nio.ByteBuffer;
+
+import static loa.Piece.*;
+
+/** An immutable snapshot of the contents of a board and the side to move,
+ *  without any move history.  Positions are values: two are equal iff they
+ *  have the same pieces on the same squares and the same side to move, so
+ *  they may serve as keys in maps and sets.  A Position is stored in BYTES
+ *  bytes by write() and read back by read().
+ *  @author JuKyung Choi
+ */
+final class Position {
+
+    /** Size in bytes of the serialized form of a Position: the black and
+     *  white masks (big-endian) followed by the side to move. */
+    static final int BYTES = 2 * Long.BYTES + 1;
+
+    /** The position with BLACK and WHITE pieces (bit masks as in Lines,
+     *  which must not overlap) and TURN to move. */
+    Position(long black, long white, Piece turn) {
+        if ((black & white) != 0 || (turn != BP && turn != WP)) {
+            throw new IllegalArgumentException("invalid position");
+        }
+        _black = black;
+        _white = white;
+        _turn = turn;
+    }
+
+    /** Return the squares holding SIDE's pieces, as a bit mask. */
+    long pieces(Piece side) {
+        return side == BP ? _black : _white;
+    }
+
+    /** Return the contents of column C, row R (1 <= C,R <= M). */
+    Piece get(int c, int r) {
+        long bit = 1L << Lines.index(c, r);
+        return (_black & bit) != 0 ? BP : (_white & bit) != 0 ? WP : EMP;
+    }
+
+    /** Return the side to move. */
+    Piece turn() {
+        return _turn;
+    }
+
+    /** Return my 64-bit hash key (the same as Board.key() for a board in
+     *  this position). */
+    long key() {
+        return Board.key(_black, _white, _turn);
+    }
+
+    /** Append my serialized form to OUT, which must have BYTES bytes
+     *  remaining. */
+    void write(ByteBuffer out) {
+        out.putLong(_black).putLong(_white).put((byte) _turn.ordinal());
+    }
+
+    /** Return my serialized form. */
+    byte[] toBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(BYTES);
+        write(buf);
+        return buf.array();
+    }
+
+    /** Return the Position serialized at the current position of IN,
+     *  advancing past it. */
+    static Position read(ByteBuffer in) {
+        long black = in.getLong(), white = in.getLong();
+        int turn = in.get();
+        if (turn != BP.ordinal() && turn != WP.ordinal()) {
+            throw new IllegalArgumentException("invalid position");
+        }
+        return new Position(black, white, Piece.values()[turn]);
+    }
+
+    /** Return the Position serialized in BYTES[OFFSET ...]. */
+    static Position fromBytes(byte[] bytes, int offset) {
+        return read(ByteBuffer.wrap(bytes, offset, BYTES));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Position)) {
+            return false;
+        }
+        Position p = (Position) obj;
+        return _black == p._black && _white == p._white && _turn == p._turn;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(key());
+    }
+
+    @Override
+    public String toString() {
+        return new Board(this).toString();
+    }
+
+    /** Squares holding black and white pieces. */
+    private final long _black, _white;
+    /** Side to move. */
+    private final Piece _turn;
+
+}
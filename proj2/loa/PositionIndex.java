@@ -0,0 +1,422 @@
+package loa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/** An index, on disk, of every position reached in the games of a game
+ *  archive, answering "which games passed through this position, and at
+ *  which ply?"  The index is a header (MAGIC, VERSION, and the number of
+ *  entries, as an int, int, and long) followed by entries of ENTRY_BYTES
+ *  bytes: a position's key (as from Board.key()), a game number, and the
+ *  number of moves made in that game on reaching the position.  Entries
+ *  are sorted by key, then game, then ply, so that lookups are a binary
+ *  search of the mapped file.  Indexes are limited to 2 GB.
+ *  @author JuKyung Choi
+ */
+class PositionIndex {
+
+    /** First four bytes of every index ("LOAI"). */
+    static final int MAGIC = 0x4c4f4149;
+    /** Format version. */
+    static final int VERSION = 1;
+    /** Size of the header. */
+    static final int HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES;
+    /** Size of one entry. */
+    static final int ENTRY_BYTES = Long.BYTES + 2 * Integer.BYTES;
+
+    /** One occurrence of a position in an archive. */
+    static class Hit {
+        /** An occurrence in game number GAME after PLY moves. */
+        Hit(int game, int ply) {
+            _game = game;
+            _ply = ply;
+        }
+
+        /** Return the game number. */
+        int game() {
+            return _game;
+        }
+
+        /** Return the number of moves made in the game on reaching the
+         *  position. */
+        int ply() {
+            return _ply;
+        }
+
+        @Override
+        public String toString() {
+            return _game + ":" + _ply;
+        }
+
+        /** Game number. */
+        private final int _game;
+        /** Moves made. */
+        private final int _ply;
+    }
+
+    /** An index read from FILE. */
+    PositionIndex(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("index too large");
+            }
+            _map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        }
+        if (_map.limit() < HEADER_BYTES || _map.getInt(0) != MAGIC
+            || _map.getInt(4) != VERSION) {
+            throw new IOException("not a position index");
+        }
+        long size = _map.getLong(8);
+        if (HEADER_BYTES + size * ENTRY_BYTES != _map.limit()) {
+            throw new IOException("corrupt position index");
+        }
+        _size = (int) size;
+    }
+
+    /** Return the number of entries. */
+    int size() {
+        return _size;
+    }
+
+    /** Return every occurrence of the position on BOARD, in order of game
+     *  and ply. */
+    List<Hit> find(Board board) {
+        return find(board.key());
+    }
+
+    /** Return every occurrence of a position with key KEY, in order of
+     *  game and ply. */
+    List<Hit> find(long key) {
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_map.getLong(offset(mid)) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        ArrayList<Hit> hits = new ArrayList<>();
+        for (int i = lo; i < _size && _map.getLong(offset(i)) == key;
+             i += 1) {
+            int p = offset(i) + Long.BYTES;
+            hits.add(new Hit(_map.getInt(p),
+                             _map.getInt(p + Integer.BYTES)));
+        }
+        return hits;
+    }
+
+    /** Return the offset of entry number I. */
+    private static int offset(int i) {
+        return HEADER_BYTES + i * ENTRY_BYTES;
+    }
+
+    /** Write to INDEX an index of every position in the games of the
+     *  archive ARCHIVE, replaying the games on THREADS threads.  Each
+     *  thread sorts its entries in runs of RUN_ENTRIES, which are written
+     *  to temporary files beside INDEX and then merged.  Every thread is
+     *  waited for, and all the temporary files deleted, even if one
+     *  fails.  Return the number of entries. */
+    static long build(Path archive, Path index, int threads)
+        throws IOException, InterruptedException {
+        try (GameArchiveReader reader = new GameArchiveReader(archive)) {
+            return build(reader, index, threads);
+        }
+    }
+
+    /** Write to INDEX an index of every position in the games read by
+     *  READER, as for build(Path, Path, int). */
+    private static long build(GameArchiveReader reader, Path index,
+                              int threads)
+        throws IOException, InterruptedException {
+        threads = Math.max(1, threads);
+        Path dir = index.toAbsolutePath().getParent();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<List<Path>>> parts = new ArrayList<>();
+        int n = reader.size();
+        for (int t = 0; t < threads; t += 1) {
+            int first = (int) ((long) n * t / threads),
+                last = (int) ((long) n * (t + 1) / threads);
+            GameArchiveReader games = reader.copy();
+            parts.add(pool.submit(() -> {
+                try (GameArchiveReader copy = games) {
+                    return sortedRuns(copy, first, last, dir);
+                }
+            }));
+        }
+        pool.shutdown();
+        ArrayList<Path> runs = new ArrayList<>();
+        try {
+            Throwable failure = null;
+            for (Future<List<Path>> part : parts) {
+                try {
+                    runs.addAll(part.get());
+                } catch (ExecutionException excp) {
+                    if (failure == null) {
+                        failure = excp.getCause();
+                    }
+                }
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+            return merge(runs, index);
+        } finally {
+            pool.shutdownNow();
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    /** Replay the games numbered FIRST to LAST-1 in GAMES, and write
+     *  sorted runs of entries for all their positions to new temporary
+     *  files in DIR, which are returned.  If this fails, the runs written
+     *  so far are deleted. */
+    private static List<Path> sortedRuns(GameArchiveReader games, int first,
+                                         int last, Path dir)
+        throws IOException {
+        ArrayList<Path> runs = new ArrayList<>();
+        try {
+            writeRuns(games, first, last, dir, runs);
+        } catch (IOException | RuntimeException | Error excp) {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            throw excp;
+        }
+        return runs;
+    }
+
+    /** Replay the games numbered FIRST to LAST-1 in GAMES, and write
+     *  sorted runs of entries for all their positions to new temporary
+     *  files in DIR, adding each to RUNS. */
+    private static void writeRuns(GameArchiveReader games, int first,
+                                  int last, Path dir, List<Path> runs)
+        throws IOException {
+        long[] keys = new long[RUN_ENTRIES], values = new long[RUN_ENTRIES];
+        int count = 0;
+        Board board = new Board();
+        for (int g = first; g < last; g += 1) {
+            games.replay(g, board);
+            for (int ply = board.movesMade(); ply >= 0; ply -= 1) {
+                if (count == RUN_ENTRIES) {
+                    runs.add(writeRun(keys, values, count, dir));
+                    count = 0;
+                }
+                keys[count] = board.key();
+                values[count] = (long) g << Integer.SIZE | ply;
+                count += 1;
+                if (ply > 0) {
+                    board.retract();
+                }
+            }
+        }
+        if (count > 0) {
+            runs.add(writeRun(keys, values, count, dir));
+        }
+    }
+
+    /** Sort the first COUNT entries of KEYS and VALUES (a game number in
+     *  the high half and a ply in the low half) and write them to a new
+     *  temporary file in DIR, which is returned (and deleted if it cannot
+     *  be written). */
+    private static Path writeRun(long[] keys, long[] values, int count,
+                                 Path dir) throws IOException {
+        sort(keys, values, 0, count);
+        Path run = Files.createTempFile(dir, "loa", ".run");
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                                      Files.newOutputStream(run),
+                                      BUFFER_SIZE))) {
+            for (int i = 0; i < count; i += 1) {
+                out.writeLong(keys[i]);
+                out.writeLong(values[i]);
+            }
+        } catch (IOException excp) {
+            Files.deleteIfExists(run);
+            throw excp;
+        }
+        return run;
+    }
+
+    /** Sort KEYS[LO .. HI-1] and VALUES[LO .. HI-1] together, by key and
+     *  then value. */
+    private static void sort(long[] keys, long[] values, int lo, int hi) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            long pk = keys[mid], pv = values[mid];
+            int i = lo, j = hi - 1;
+            while (i <= j) {
+                while (compare(keys[i], values[i], pk, pv) < 0) {
+                    i += 1;
+                }
+                while (compare(keys[j], values[j], pk, pv) > 0) {
+                    j -= 1;
+                }
+                if (i <= j) {
+                    long k = keys[i], v = values[i];
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    keys[j] = k;
+                    values[j] = v;
+                    i += 1;
+                    j -= 1;
+                }
+            }
+            if (j - lo < hi - i) {
+                sort(keys, values, lo, j + 1);
+                lo = i;
+            } else {
+                sort(keys, values, i, hi);
+                hi = j + 1;
+            }
+        }
+    }
+
+    /** Compare the entries (K0, V0) and (K1, V1), by key and then
+     *  value. */
+    private static int compare(long k0, long v0, long k1, long v1) {
+        int c = Long.compare(k0, k1);
+        return c != 0 ? c : Long.compare(v0, v1);
+    }
+
+    /** A cursor on a sorted run of entries. */
+    private static class Run implements Comparable<Run> {
+        /** A cursor on the run in FILE, positioned at its first entry. */
+        Run(Path file) throws IOException {
+            _in = new DataInputStream(new BufferedInputStream(
+                                          Files.newInputStream(file),
+                                          BUFFER_SIZE));
+        }
+
+        /** Move to the next entry, returning false (and closing the run)
+         *  if there is none. */
+        boolean advance() throws IOException {
+            try {
+                _key = _in.readLong();
+                _value = _in.readLong();
+                return true;
+            } catch (EOFException excp) {
+                _in.close();
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            return compare(_key, _value, other._key, other._value);
+        }
+
+        /** Source of entries. */
+        private final DataInputStream _in;
+        /** The current entry. */
+        private long _key, _value;
+    }
+
+    /** Merge the sorted RUNS into a complete index in INDEX, returning the
+     *  number of entries. */
+    private static long merge(List<Path> runs, Path index)
+        throws IOException {
+        PriorityQueue<Run> heads = new PriorityQueue<>();
+        try {
+            for (Path file : runs) {
+                Run run = new Run(file);
+                if (run.advance()) {
+                    heads.add(run);
+                }
+            }
+            long count = 0;
+            Path partial = Files.createTempFile(
+                index.toAbsolutePath().getParent(), "loa", ".idx");
+            try (DataOutputStream out =
+                 new DataOutputStream(new BufferedOutputStream(
+                                          Files.newOutputStream(partial),
+                                          BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(0);
+                while (!heads.isEmpty()) {
+                    Run run = heads.poll();
+                    out.writeLong(run._key);
+                    out.writeInt((int) (run._value >>> Integer.SIZE));
+                    out.writeInt((int) run._value);
+                    count += 1;
+                    if (run.advance()) {
+                        heads.add(run);
+                    }
+                }
+            }
+            try (FileChannel channel = FileChannel.open(partial, WRITE)) {
+                channel.write(ByteBuffer.allocate(Long.BYTES)
+                              .putLong(0, count), 2 * Integer.BYTES);
+            }
+            Files.move(partial, index,
+                       StandardCopyOption.REPLACE_EXISTING);
+            return count;
+        } finally {
+            for (Run run : heads) {
+                run._in.close();
+            }
+        }
+    }
+
+    /** Build an index as directed by the command-line options
+     *  --index=ARCHIVE, --output=INDEX (by default, ARCHIVE.idx), and
+     *  --threads in OPTIONS, and exit. */
+    static void main(CommandArgs options) {
+        Path archive = Path.of(options.getFirst("--index"));
+        Path index = Path.of(options.contains("--output")
+                             ? options.getFirst("--output")
+                             : archive + ".idx");
+        int threads = options.contains("--threads")
+            ? options.getInt("--threads")
+            : Runtime.getRuntime().availableProcessors();
+        try {
+            long start = System.currentTimeMillis();
+            long count = build(archive, index, threads);
+            System.out.printf("indexed %d positions in %d ms%n", count,
+                              System.currentTimeMillis() - start);
+        } catch (IOException excp) {
+            Main.error(1, "%s%n", excp.getMessage());
+        } catch (InterruptedException excp) {
+            Main.error(1, "interrupted%n");
+        }
+        System.exit(0);
+    }
+
+    /** Number of entries sorted in memory at once by each thread. */
+    static final int RUN_ENTRIES = 1 << 20;
+    /** Size of file buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The mapped file. */
+    private final MappedByteBuffer _map;
+    /** Number of entries. */
+    private final int _size;
+
+}
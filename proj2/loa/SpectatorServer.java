@@ -0,0 +1,262 @@
+package loa;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/** A live feed of one game for any number of spectators, who connect to
+ *  a port on the loopback interface and receive lines of text:
+ *
+ *      position PLY BLACK WHITE TURN
+ *                      The whole position after PLY moves: the squares
+ *                      of each side as 16 hexadecimal digits (bit masks
+ *                      as in Lines) and the side to move (b or w).
+ *      move PLY MOVE   The move that made ply PLY (standard notation).
+ *
+ *  A spectator first receives the current position, then each move as it
+ *  is made; a new game is announced by a fresh position.  All network
+ *  work is done by a single thread with a selector, so the game never
+ *  waits on a spectator.  Each update is encoded once and the same bytes
+ *  written to every spectator.  A spectator that falls more than
+ *  MAX_BACKLOG updates behind has its backlog discarded and is sent the
+ *  current position instead.  Likewise, if the serving thread itself
+ *  falls MAX_BACKLOG updates behind the game, the updates waiting for it
+ *  are replaced by the latest position, so that they never take more
+ *  than bounded space.
+ *  @author JuKyung Choi
+ */
+class SpectatorServer implements Runnable {
+
+    /** A feed to be served on PORT (0 for any free port). */
+    SpectatorServer(int port) {
+        _port = port;
+    }
+
+    /** Start listening and serving on a new daemon thread. */
+    void start() throws IOException {
+        _selector = Selector.open();
+        _server = ServerSocketChannel.open();
+        _server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                           _port));
+        _server.configureBlocking(false);
+        _server.register(_selector, SelectionKey.OP_ACCEPT);
+        Thread thread = new Thread(this, "loa-spectate");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Return the port on which I am listening, once started. */
+    int port() throws IOException {
+        return ((InetSocketAddress) _server.getLocalAddress()).getPort();
+    }
+
+    /** Publish the position on BOARD, just after MOVE was made, or as a
+     *  new position if MOVE is null.  Called from the playing thread. */
+    void publish(Board board, Move move) {
+        int ply = board.movesMade();
+        Position position = board.snapshot();
+        synchronized (_updates) {
+            if (_updates.size() >= MAX_BACKLOG) {
+                _updates.clear();
+                move = null;
+            }
+            _updates.add(new Update(ply, move, position));
+        }
+        _selector.wakeup();
+    }
+
+    /** Stop serving and close all connections. */
+    void close() {
+        _closed = true;
+        _selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!_closed) {
+                _selector.select();
+                ArrayList<Update> updates;
+                synchronized (_updates) {
+                    updates = new ArrayList<>(_updates);
+                    _updates.clear();
+                }
+                for (Update u : updates) {
+                    broadcast(u);
+                }
+                for (SelectionKey key : _selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isWritable()) {
+                        flush(key);
+                    }
+                }
+                _selector.selectedKeys().clear();
+            }
+            for (SelectionKey key : _selector.keys()) {
+                key.channel().close();
+            }
+            _selector.close();
+        } catch (IOException excp) {
+            Main.error("spectator feed failed: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Accept a pending connection, if any, and send it the current
+     *  position. */
+    private void accept() throws IOException {
+        SocketChannel channel = _server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Subscriber sub = new Subscriber();
+        SelectionKey key = channel.register(_selector, 0, sub);
+        sub._pending.add(snapshot().duplicate());
+        flush(key);
+    }
+
+    /** Record update U as the current state and queue it for every
+     *  spectator. */
+    private void broadcast(Update u) {
+        _ply = u._ply;
+        _position = u._position;
+        _snapshot = null;
+        ByteBuffer message = u._move == null ? snapshot()
+            : encode(String.format("move %d %s%n", u._ply, u._move));
+        for (SelectionKey key : _selector.keys()) {
+            if (!(key.attachment() instanceof Subscriber)) {
+                continue;
+            }
+            Subscriber sub = (Subscriber) key.attachment();
+            if (sub._pending.size() >= MAX_BACKLOG) {
+                ByteBuffer partial = sub._pending.peek();
+                sub._pending.clear();
+                if (partial.position() > 0) {
+                    sub._pending.add(partial);
+                }
+                sub._pending.add(snapshot().duplicate());
+                _dropped += 1;
+            } else {
+                sub._pending.add(message.duplicate());
+            }
+            flush(key);
+        }
+    }
+
+    /** Write as much as possible of the backlog of the spectator whose
+     *  key is KEY without blocking, and wait to be told when more can be
+     *  written iff something remains.  Disconnects the spectator on an
+     *  error.  A partly written message is always finished, so that
+     *  spectators see only whole lines. */
+    private void flush(SelectionKey key) {
+        Subscriber sub = (Subscriber) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        try {
+            while (!sub._pending.isEmpty()) {
+                ByteBuffer buf = sub._pending.peek();
+                channel.write(buf);
+                if (buf.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                sub._pending.poll();
+            }
+            key.interestOps(0);
+        } catch (IOException excp) {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException excp2) {
+                /* Ignore. */
+            }
+        }
+    }
+
+    /** Return the encoded current position (shared; callers must
+     *  duplicate it). */
+    private ByteBuffer snapshot() {
+        if (_snapshot == null) {
+            Position p = _position;
+            _snapshot =
+                encode(String.format("position %d %016x %016x %s%n", _ply,
+                                     p.pieces(Piece.BP), p.pieces(Piece.WP),
+                                     p.turn().abbrev()));
+        }
+        return _snapshot;
+    }
+
+    /** Return a read-only buffer holding the bytes of TEXT. */
+    private static ByteBuffer encode(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII))
+            .asReadOnlyBuffer();
+    }
+
+    /** Return the number of times a slow spectator's backlog has been
+     *  discarded. */
+    int dropped() {
+        return _dropped;
+    }
+
+    /** A change of position, as passed from the playing thread to the
+     *  serving thread. */
+    private static class Update {
+        /** An update to POSITION, reached after PLY moves, the last of
+         *  which was MOVE (null for a new position). */
+        Update(int ply, Move move, Position position) {
+            _ply = ply;
+            _move = move;
+            _position = position;
+        }
+
+        /** Number of moves made. */
+        private final int _ply;
+        /** The move made, or null. */
+        private final Move _move;
+        /** The resulting position. */
+        private final Position _position;
+    }
+
+    /** The state of one spectator's connection. */
+    private static class Subscriber {
+        /** Messages not yet completely written, oldest first.  Each is a
+         *  view of a shared buffer, with its own position. */
+        private final ArrayDeque<ByteBuffer> _pending = new ArrayDeque<>();
+    }
+
+    /** Number of updates a spectator, or the serving thread, may fall
+     *  behind before its backlog is replaced by a snapshot. */
+    static final int MAX_BACKLOG = 64;
+
+    /** Requested port. */
+    private final int _port;
+    /** Selector for all my channels. */
+    private Selector _selector;
+    /** The listening channel. */
+    private ServerSocketChannel _server;
+    /** Updates published but not yet sent, oldest first, at most
+     *  MAX_BACKLOG of them. */
+    private final ArrayDeque<Update> _updates = new ArrayDeque<>();
+    /** True once closed. */
+    private volatile boolean _closed;
+    /** The current position. */
+    private Position _position = new Board().snapshot();
+    /** Number of moves made in the current position. */
+    private int _ply;
+    /** The encoded current position, or null if not yet encoded. */
+    private ByteBuffer _snapshot;
+    /** Number of backlogs discarded. */
+    private volatile int _dropped;
+
+}
@@ -0,0 +1,349 @@
+package loa;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ucb.util.CommandArgs;
+
+/** Tuning of numeric AI settings (see MachinePlayer.setOption) by
+ *  simultaneous perturbation stochastic approximation (SPSA) from short
+ *  self-play matches.  Each iteration K perturbs every parameter at once
+ *  by +/- C_K times its step, each sign chosen at random, and plays a
+ *  match (see Tournament) between the two resulting configurations, the
+ *  "plus" one first.  The plus configuration's net score per game (wins
+ *  less losses, over games) is the difference of the two configurations'
+ *  expected scores, so, as in the standard method, each parameter then
+ *  moves by A_K times its step times that score times its sign over
+ *  2 C_K: toward the side that scored better, by A_K / 2 C_K of its step
+ *  for a perfect score.  The gains decay as
+ *  A_K = A / (K + 1 + STABILITY)**ALPHA and C_K = 1 / (K + 1)**GAMMA,
+ *  with the customary exponents.
+ *
+ *  The state (seed, iteration, and values) may be written to a
+ *  checkpoint file after each iteration and read back to resume a run;
+ *  the perturbations and openings of each iteration depend only on the
+ *  seed and the iteration number, so a resumed run continues as the
+ *  original would have.
+ *  @author JuKyung Choi
+ */
+class SpsaTuner {
+
+    /** A tuned parameter. */
+    static final class Parameter {
+
+        /** The parameter setting NAME, starting at VALUE, held between MIN
+         *  and MAX, and perturbed by STEP at first. */
+        Parameter(String name, double value, double min, double max,
+                  double step) {
+            if (!(min <= value && value <= max && step > 0)) {
+                throw new IllegalArgumentException("bad parameter: " + name);
+            }
+            _name = name;
+            _value = value;
+            _min = min;
+            _max = max;
+            _step = step;
+        }
+
+        /** Return the parameters declared by SPEC, a comma-separated list
+         *  of NAME:VALUE:MIN:MAX:STEP.  Throws IllegalArgumentException
+         *  if SPEC is malformed. */
+        static List<Parameter> parse(String spec) {
+            ArrayList<Parameter> result = new ArrayList<>();
+            for (String item : spec.split(",")) {
+                String[] parts = item.trim().split(":");
+                if (parts.length != 5) {
+                    throw new IllegalArgumentException("bad parameter: "
+                                                       + item);
+                }
+                try {
+                    result.add(new Parameter(parts[0],
+                                             Double.parseDouble(parts[1]),
+                                             Double.parseDouble(parts[2]),
+                                             Double.parseDouble(parts[3]),
+                                             Double.parseDouble(parts[4])));
+                } catch (NumberFormatException excp) {
+                    throw new IllegalArgumentException("bad parameter: "
+                                                       + item);
+                }
+            }
+            return result;
+        }
+
+        /** Return my name. */
+        String name() {
+            return _name;
+        }
+
+        /** Return my current value. */
+        double value() {
+            return _value;
+        }
+
+        /** Return V limited to my bounds. */
+        double clamp(double v) {
+            return Math.max(_min, Math.min(_max, v));
+        }
+
+        /** My name. */
+        private final String _name;
+        /** My current value. */
+        private double _value;
+        /** My bounds. */
+        private final double _min, _max;
+        /** My initial perturbation. */
+        private final double _step;
+    }
+
+    /** A tuner of PARAMS, added to the settings BASE of both engines,
+     *  playing PAIRS pairs of games with PLIES-ply openings per iteration
+     *  on THREADS threads, with random choices made from SEED. */
+    SpsaTuner(List<Parameter> params, String base, int pairs, int threads,
+              int plies, long seed) {
+        _params = new ArrayList<>(params);
+        _base = base;
+        _pairs = pairs;
+        _threads = threads;
+        _plies = plies;
+        _seed = seed;
+        MachinePlayer.checkOptions(settings());
+    }
+
+    /** Set the gain A (twice the size of the first steps, in steps of
+     *  each parameter, for a perfect score) and STABILITY (see
+     *  above). */
+    void setGains(double a, double stability) {
+        _a = a;
+        _stability = stability;
+    }
+
+    /** Return the number of iterations done. */
+    int iteration() {
+        return _iteration;
+    }
+
+    /** Return my parameters. */
+    List<Parameter> parameters() {
+        return _params;
+    }
+
+    /** Return the settings of the current parameters, each offset by
+     *  DELTA[I] times its step (or not at all if DELTA is null), as for
+     *  MachinePlayer.setOptions. */
+    private String settings(double[] delta) {
+        StringBuilder result = new StringBuilder(_base);
+        for (int i = 0; i < _params.size(); i += 1) {
+            Parameter p = _params.get(i);
+            double v = delta == null ? p._value
+                : p.clamp(p._value + delta[i] * p._step);
+            result.append(',').append(p._name).append('=').append(v);
+        }
+        return result.toString();
+    }
+
+    /** Return the settings of the current parameters, as for
+     *  MachinePlayer.setOptions. */
+    String settings() {
+        return settings(null);
+    }
+
+    /** Do one iteration, and return the plus configuration's net score
+     *  per game. */
+    double step() throws InterruptedException {
+        int k = _iteration;
+        Random random = new Random(_seed + k * SEED_STRIDE);
+        double ck = 1 / Math.pow(k + 1, GAMMA),
+            ak = _a / Math.pow(k + 1 + _stability, ALPHA);
+        double[] plus = new double[_params.size()],
+            minus = new double[_params.size()], sign = new double[plus.length];
+        for (int i = 0; i < plus.length; i += 1) {
+            sign[i] = random.nextBoolean() ? 1 : -1;
+            plus[i] = ck * sign[i];
+            minus[i] = -plus[i];
+        }
+        Tournament match =
+            new Tournament(2 * _pairs, _threads, settings(plus),
+                           settings(minus), _plies, random.nextLong());
+        match.run(NULL_STREAM);
+        int[] results = match.results();
+        int games = results[0] + results[1] + results[2];
+        double score = games == 0 ? 0
+            : (double) (results[2] - results[0]) / games;
+        for (int i = 0; i < plus.length; i += 1) {
+            Parameter p = _params.get(i);
+            p._value = p.clamp(p._value + ak * p._step * score * sign[i]
+                               / (2 * ck));
+        }
+        _iteration += 1;
+        _lastResults = results;
+        return score;
+    }
+
+    /** Return the results of the last iteration's match, as for
+     *  Tournament.results. */
+    int[] lastResults() {
+        return _lastResults.clone();
+    }
+
+    /** Write my state to FILE, replacing it atomically. */
+    void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out =
+             Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            out.write("seed " + _seed + "\n");
+            out.write("iteration " + _iteration + "\n");
+            for (Parameter p : _params) {
+                out.write(p._name + " " + p._value + "\n");
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Restore my state from FILE, as written by save.  Parameters it does
+     *  not mention keep their values.  FILE's seed replaces mine, unless
+     *  KEEPSEED, in which case they must agree.  Throws IOException if
+     *  FILE cannot be read or is malformed, or if its seed conflicts with
+     *  mine. */
+    void load(Path file, boolean keepSeed) throws IOException {
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber += 1;
+            String[] words = line.trim().split("\\s+");
+            if (words.length == 1 && words[0].isEmpty()) {
+                continue;
+            }
+            try {
+                if (words.length != 2) {
+                    throw new NumberFormatException();
+                } else if (words[0].equals("iteration")) {
+                    _iteration = Integer.parseInt(words[1]);
+                    continue;
+                } else if (words[0].equals("seed")) {
+                    long seed = Long.parseLong(words[1]);
+                    if (keepSeed && seed != _seed) {
+                        throw new IOException(
+                            String.format("%s: made with seed %d, not %d",
+                                          file, seed, _seed));
+                    }
+                    _seed = seed;
+                    continue;
+                }
+                for (Parameter p : _params) {
+                    if (p._name.equals(words[0])) {
+                        p._value = p.clamp(Double.parseDouble(words[1]));
+                    }
+                }
+            } catch (NumberFormatException excp) {
+                throw new IOException(String.format("%s:%d: bad line",
+                                                    file, lineNumber));
+            }
+        }
+    }
+
+    /** Run a tuning as directed by the command-line OPTIONS: --spsa=N
+     *  iterations in all, of the parameters --params (by default
+     *  MachinePlayer.TUNABLES) added to the settings --first, with
+     *  --pairs pairs of games per iteration, --plies, --seed, and
+     *  --threads as for matches.  If --checkpoint=FILE is given, the run
+     *  resumes from FILE if it exists (with its seed, which --seed, if
+     *  given, must match) and saves to it after each iteration.  Writes
+     *  one line of progress per iteration. */
+    static void main(CommandArgs options) {
+        try {
+            SpsaTuner tuner =
+                new SpsaTuner(Parameter.parse(options.contains("--params")
+                                              ? options.getFirst("--params")
+                                              : MachinePlayer.TUNABLES),
+                              options.contains("--first")
+                              ? options.getFirst("--first") : "",
+                              options.contains("--pairs")
+                              ? options.getInt("--pairs") : DEFAULT_PAIRS,
+                              options.contains("--threads")
+                              ? options.getInt("--threads")
+                              : Runtime.getRuntime().availableProcessors(),
+                              options.contains("--plies")
+                              ? options.getInt("--plies")
+                              : Tournament.DEFAULT_PLIES,
+                              options.contains("--seed")
+                              ? options.getLong("--seed") : 0);
+            int iterations = options.getInt("--spsa");
+            tuner.setGains(DEFAULT_GAIN, STABILITY_FRACTION * iterations);
+            Path checkpoint = options.contains("--checkpoint")
+                ? Path.of(options.getFirst("--checkpoint")) : null;
+            if (checkpoint != null && Files.exists(checkpoint)) {
+                tuner.load(checkpoint, options.contains("--seed"));
+                System.out.printf("resumed at iteration %d: %s%n",
+                                  tuner.iteration(), tuner.settings());
+            }
+            long start = System.currentTimeMillis();
+            while (tuner.iteration() < iterations) {
+                double score = tuner.step();
+                if (checkpoint != null) {
+                    tuner.save(checkpoint);
+                }
+                int[] results = tuner.lastResults();
+                StringBuilder values = new StringBuilder();
+                for (Parameter p : tuner.parameters()) {
+                    values.append(String.format(" %s=%.4f", p.name(),
+                                                p.value()));
+                }
+                System.out.printf("iteration %d score %+.3f (+%d =%d -%d)"
+                                  + "%s time %d ms%n", tuner.iteration(),
+                                  score, results[2], results[1], results[0],
+                                  values, System.currentTimeMillis() - start);
+                System.out.flush();
+            }
+        } catch (IllegalArgumentException | IOException excp) {
+            Main.error(1, "%s%n", excp.getMessage());
+        } catch (InterruptedException excp) {
+            Main.error(1, "interrupted%n");
+        }
+        System.exit(0);
+    }
+
+    /** Default number of pairs of games per iteration. */
+    static final int DEFAULT_PAIRS = 4;
+    /** Default gain A. */
+    static final double DEFAULT_GAIN = 1;
+    /** Default STABILITY, as a fraction of the number of iterations. */
+    static final double STABILITY_FRACTION = 0.1;
+    /** Exponents of the decay of the gains. */
+    static final double ALPHA = 0.602, GAMMA = 0.101;
+    /** Multiplier separating the seeds of successive iterations. */
+    private static final long SEED_STRIDE = 0x9e3779b97f4a7c15L;
+    /** A stream that discards everything written to it. */
+    private static final PrintStream NULL_STREAM =
+        new PrintStream(OutputStream.nullOutputStream());
+
+    /** The parameters. */
+    private final ArrayList<Parameter> _params;
+    /** Settings common to both engines. */
+    private final String _base;
+    /** Number of pairs of games per iteration. */
+    private final int _pairs;
+    /** Number of threads on which to play. */
+    private final int _threads;
+    /** Number of random plies per opening. */
+    private final int _plies;
+    /** Seed for random choices. */
+    private long _seed;
+    /** Gain A. */
+    private double _a = DEFAULT_GAIN;
+    /** STABILITY. */
+    private double _stability;
+    /** Number of iterations done. */
+    private int _iteration;
+    /** Results of the last iteration's match. */
+    private int[] _lastResults = new int[3];
+
+}
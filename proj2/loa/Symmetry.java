@@ -0,0 +1,183 @@
+package loa;
+
+import static loa.Board.M;
+import static loa.Piece.*;
+
+/** The eight symmetries of the board (rotations and reflections).  Each
+ *  one is, in order, an optional transposition (exchanging columns and
+ *  rows), an optional reversal of the columns, and an optional reversal
+ *  of the rows.  Positions related by a symmetry are equivalent, so a
+ *  table of positions need only hold the canonical member of each class:
+ *  see canonical() and canonicalKey().
+ *  @author JuKyung Choi
+ */
+enum Symmetry {
+
+    /** The symmetries, named by the operations they do, in order. */
+    IDENTITY(false, false, false), FLIP_ROWS(false, false, true),
+    /** Symmetries (continued). */
+    FLIP_COLUMNS(false, true, false), ROTATE_180(false, true, true),
+    /** Symmetries (continued). */
+    TRANSPOSE(true, false, false), ROTATE_RIGHT(true, false, true),
+    /** Symmetries (continued). */
+    ROTATE_LEFT(true, true, false), ANTI_TRANSPOSE(true, true, true);
+
+    /** The symmetry that transposes iff TRANSPOSE, and then reverses the
+     *  columns iff FLIPCOLS and the rows iff FLIPROWS. */
+    Symmetry(boolean transpose, boolean flipCols, boolean flipRows) {
+        _transpose = transpose;
+        _flipCols = flipCols;
+        _flipRows = flipRows;
+    }
+
+    /** Return the square (indexed as in Lines) to which I map SQ. */
+    int apply(int sq) {
+        return MAP[ordinal()][sq];
+    }
+
+    /** Return the image under me of the set of squares MASK (a bit mask
+     *  as in Lines). */
+    long apply(long mask) {
+        if (_transpose) {
+            mask = transpose(mask);
+        }
+        if (_flipCols) {
+            mask = flipColumns(mask);
+        }
+        if (_flipRows) {
+            mask = Long.reverseBytes(mask);
+        }
+        return mask;
+    }
+
+    /** Return the image of POSITION under me. */
+    Position apply(Position position) {
+        return new Position(apply(position.pieces(BP)),
+                            apply(position.pieces(WP)), position.turn());
+    }
+
+    /** Return a new Board whose contents are the image of BOARD's under me,
+     *  with the same side to move and no move history. */
+    Board apply(Board board) {
+        return new Board(apply(board.snapshot()));
+    }
+
+    /** Return the image under me of MOVE, as a move on BOARD, which should
+     *  be the image under me of the board on which MOVE was made. */
+    Move apply(Move move, Board board) {
+        int from = apply(Lines.index(move.getCol0(), move.getRow0())),
+            to = apply(Lines.index(move.getCol1(), move.getRow1()));
+        return Move.create(Lines.col(from), Lines.row(from),
+                           Lines.col(to), Lines.row(to), board);
+    }
+
+    /** Return the symmetry that undoes me. */
+    Symmetry inverse() {
+        return values()[INVERSE[ordinal()]];
+    }
+
+    /** Return the symmetry that takes BOARD to the canonical member of
+     *  its class: the one whose black mask, and then white mask, is least
+     *  when compared as unsigned numbers.  If BOARD is itself symmetric,
+     *  the first such symmetry in declaration order is returned. */
+    static Symmetry canonical(Board board) {
+        long black = board.pieces(BP), white = board.pieces(WP);
+        Symmetry best = IDENTITY;
+        long bestBlack = black, bestWhite = white;
+        for (Symmetry sym : values()) {
+            long b = sym.apply(black);
+            int cmp = Long.compareUnsigned(b, bestBlack);
+            if (cmp <= 0) {
+                long w = sym.apply(white);
+                if (cmp < 0 || Long.compareUnsigned(w, bestWhite) < 0) {
+                    best = sym;
+                    bestBlack = b;
+                    bestWhite = w;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Return a hash key for BOARD that is the same for all positions
+     *  equivalent to it under some symmetry (with the same side to move). */
+    static long canonicalKey(Board board) {
+        Symmetry sym = canonical(board);
+        return Board.key(sym.apply(board.pieces(BP)),
+                         sym.apply(board.pieces(WP)), board.turn());
+    }
+
+    /** Return MASK with columns and rows exchanged (reflected in the
+     *  a1-h8 diagonal). */
+    static long transpose(long mask) {
+        long t;
+        t = K4 & (mask ^ (mask << 28));
+        mask ^= t ^ (t >>> 28);
+        t = K2 & (mask ^ (mask << 14));
+        mask ^= t ^ (t >>> 14);
+        t = K1 & (mask ^ (mask << 7));
+        mask ^= t ^ (t >>> 7);
+        return mask;
+    }
+
+    /** Return MASK with the order of the columns reversed. */
+    static long flipColumns(long mask) {
+        mask = ((mask >>> 1) & H1) | ((mask & H1) << 1);
+        mask = ((mask >>> 2) & H2) | ((mask & H2) << 2);
+        mask = ((mask >>> 4) & H4) | ((mask & H4) << 4);
+        return mask;
+    }
+
+    /** Masks used by transpose. */
+    private static final long
+        K1 = 0x5500550055005500L, K2 = 0x3333000033330000L,
+        K4 = 0x0f0f0f0f00000000L;
+    /** Masks used by flipColumns. */
+    private static final long
+        H1 = 0x5555555555555555L, H2 = 0x3333333333333333L,
+        H4 = 0x0f0f0f0f0f0f0f0fL;
+
+    /** MAP[S][SQ] is the image of square SQ under symmetry number S. */
+    private static final int[][] MAP = new int[8][Lines.SQUARES];
+    /** INVERSE[S] is the number of the inverse of symmetry number S. */
+    private static final int[] INVERSE = new int[8];
+
+    static {
+        for (Symmetry sym : values()) {
+            for (int sq = 0; sq < Lines.SQUARES; sq += 1) {
+                int c = Lines.col(sq), r = Lines.row(sq);
+                if (sym._transpose) {
+                    int t = c;
+                    c = r;
+                    r = t;
+                }
+                if (sym._flipCols) {
+                    c = M + 1 - c;
+                }
+                if (sym._flipRows) {
+                    r = M + 1 - r;
+                }
+                MAP[sym.ordinal()][sq] = Lines.index(c, r);
+            }
+        }
+        for (Symmetry sym : values()) {
+            for (Symmetry inv : values()) {
+                boolean undoes = true;
+                for (int sq = 0; sq < Lines.SQUARES && undoes; sq += 1) {
+                    undoes = MAP[inv.ordinal()][MAP[sym.ordinal()][sq]] == sq;
+                }
+                if (undoes) {
+                    INVERSE[sym.ordinal()] = inv.ordinal();
+                }
+            }
+        }
+    }
+
+    /** True iff I start by exchanging columns and rows. */
+    private final boolean _transpose;
+    /** True iff I then reverse the order of the columns. */
+    private final boolean _flipCols;
+    /** True iff I then reverse the order of the rows. */
+    private final boolean _flipRows;
+
+}
@@ -0,0 +1,451 @@
+package loa;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ucb.util.CommandArgs;
+
+import static loa.Piece.*;
+
+/** Tuning of the tables of the pattern evaluation (see PatternEvaluator)
+ *  from the outcomes of games, in the manner of the "Texel" tuning method.
+ *  Every position of every decided game in a binary archive (see
+ *  GameArchive) is labeled with the game's result, and the evaluation's
+ *  prediction of that result, the logistic function of its value for
+ *  Black times a scale, is scored by its logistic (cross-entropy) loss.
+ *  As in PatternEvaluator, the value is clipped to at most MAX_VALUE in
+ *  magnitude.  Otherwise the evaluation is linear in its table entries,
+ *  so the gradient of the loss is found exactly (it is zero where the
+ *  value is clipped), and the entries are moved down it by the Adam
+ *  method, one step for each pass over the positions.
+ *
+ *  The positions are never held in memory.  Each pass streams them from
+ *  the archive, which is mapped rather than read, replaying each game and
+ *  then retracting its moves.  Passes are divided among the threads of a
+ *  fork-join pool by ranges of games; each thread accumulates its loss
+ *  and gradient privately, and these are summed at the end of the pass.
+ *  @author JuKyung Choi
+ */
+class TexelTuner {
+
+    /** Index of the first entry of the table PatternEvaluator.SQUARE in
+     *  the vector of parameters. */
+    static final int SQUARE_OFFSET = 0;
+    /** Index of the first entry of the table PatternEvaluator.PATTERN. */
+    static final int PATTERN_OFFSET = SQUARE_OFFSET + Lines.SQUARES;
+    /** Index of the first entry of the table PatternEvaluator.MOBILITY. */
+    static final int MOBILITY_OFFSET =
+        PATTERN_OFFSET + PatternEvaluator.PATTERNS;
+    /** Number of parameters. */
+    static final int PARAMETERS = MOBILITY_OFFSET + Mobility.STANDARD.length;
+
+    /** A tuner of the tables in INITIAL (or the standard ones, for any that
+     *  are missing) over the games in ARCHIVE (which close() closes),
+     *  using THREADS threads. */
+    TexelTuner(GameArchiveReader archive, Weights initial, int threads) {
+        _archive = archive;
+        _pool = new ForkJoinPool(threads);
+        load(initial, PatternEvaluator.SQUARE, SQUARE_OFFSET, Lines.SQUARES);
+        load(initial, PatternEvaluator.PATTERN, PATTERN_OFFSET,
+             PatternEvaluator.PATTERNS);
+        load(initial, PatternEvaluator.MOBILITY, MOBILITY_OFFSET,
+             Mobility.STANDARD.length);
+    }
+
+    /** Skip the first PLIES positions of each game, whose outcome is
+     *  least related to their contents. */
+    void setSkip(int plies) {
+        _skip = plies;
+    }
+
+    /** Use SCALE as the factor applied to values before the logistic
+     *  function. */
+    void setScale(double scale) {
+        _scale = scale;
+    }
+
+    /** Return the factor applied to values before the logistic
+     *  function. */
+    double scale() {
+        return _scale;
+    }
+
+    /** Use RATE as the step size of the Adam method, in table units. */
+    void setRate(double rate) {
+        _rate = rate;
+    }
+
+    /** Return the number of positions seen in the last pass. */
+    long positions() {
+        return _positions;
+    }
+
+    /** Return the mean loss over all positions with the current
+     *  parameters. */
+    double loss() {
+        return pass(null);
+    }
+
+    /** Take one step of the Adam method down the gradient of the mean
+     *  loss, and return the mean loss before it. */
+    double step() {
+        double[] gradient = new double[PARAMETERS];
+        double loss = pass(gradient);
+        _steps += 1;
+        double correct1 = 1 - Math.pow(BETA1, _steps),
+            correct2 = 1 - Math.pow(BETA2, _steps);
+        for (int i = 0; i < PARAMETERS; i += 1) {
+            double g = gradient[i] / Math.max(1, _positions);
+            _moment1[i] = BETA1 * _moment1[i] + (1 - BETA1) * g;
+            _moment2[i] = BETA2 * _moment2[i] + (1 - BETA2) * g * g;
+            _params[i] -= _rate * (_moment1[i] / correct1)
+                / (Math.sqrt(_moment2[i] / correct2) + EPSILON);
+        }
+        return loss;
+    }
+
+    /** Choose the scale that minimizes the mean loss with the current
+     *  parameters, by golden-section search of its logarithm, and return
+     *  that loss. */
+    double fitScale() {
+        double lo = Math.log(MIN_SCALE), hi = Math.log(MAX_SCALE);
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double a = hi - ratio * (hi - lo), b = lo + ratio * (hi - lo);
+        double fa = lossAt(a), fb = lossAt(b);
+        for (int k = 0; k < SCALE_ITERATIONS; k += 1) {
+            if (fa < fb) {
+                hi = b;
+                b = a;
+                fb = fa;
+                a = hi - ratio * (hi - lo);
+                fa = lossAt(a);
+            } else {
+                lo = a;
+                a = b;
+                fa = fb;
+                b = lo + ratio * (hi - lo);
+                fb = lossAt(b);
+            }
+        }
+        _scale = Math.exp((lo + hi) / 2);
+        return loss();
+    }
+
+    /** Return the mean loss with scale e**LOGSCALE. */
+    private double lossAt(double logScale) {
+        _scale = Math.exp(logScale);
+        return loss();
+    }
+
+    /** Return the current parameters, rounded, as tables for the pattern
+     *  evaluation. */
+    Weights weights() {
+        Weights result = new Weights();
+        result.put(PatternEvaluator.SQUARE,
+                   table(SQUARE_OFFSET, Lines.SQUARES));
+        result.put(PatternEvaluator.PATTERN,
+                   table(PATTERN_OFFSET, PatternEvaluator.PATTERNS));
+        result.put(PatternEvaluator.MOBILITY,
+                   table(MOBILITY_OFFSET, Mobility.STANDARD.length));
+        return result;
+    }
+
+    /** Release my threads and my readers of the archive, including the
+     *  one given to my constructor. */
+    void close() {
+        _pool.shutdown();
+        for (Worker worker : _workers) {
+            worker._reader.close();
+        }
+        _archive.close();
+    }
+
+    /** Set the LENGTH parameters starting at OFFSET to the table NAME in
+     *  WEIGHTS, or in the standard tables if WEIGHTS lacks it. */
+    private void load(Weights weights, String name, int offset,
+                      int length) {
+        int[] table = weights.get(name, length);
+        if (table == null) {
+            table = PatternEvaluator.standard().get(name);
+        }
+        for (int i = 0; i < length; i += 1) {
+            _params[offset + i] = table[i];
+        }
+    }
+
+    /** Return the LENGTH parameters starting at OFFSET, rounded. */
+    private int[] table(int offset, int length) {
+        int[] result = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = (int) Math.round(_params[offset + i]);
+        }
+        return result;
+    }
+
+    /** Make one pass over the positions, returning their mean loss and
+     *  adding the gradient of their total loss to GRADIENT, unless it is
+     *  null. */
+    private double pass(double[] gradient) {
+        _pool.invoke(new Pass(0, _archive.size(), gradient != null));
+        double loss = 0;
+        long count = 0;
+        for (Worker worker : _workers) {
+            loss += worker._loss;
+            count += worker._count;
+            if (gradient != null) {
+                for (int i = 0; i < PARAMETERS; i += 1) {
+                    gradient[i] += worker._gradient[i];
+                }
+            }
+            worker.reset();
+        }
+        _positions = count;
+        return loss / Math.max(1, count);
+    }
+
+    /** A pass over a range of games, divided among the threads of my
+     *  pool. */
+    private class Pass extends RecursiveAction {
+
+        /** A pass over games LO .. HI-1, computing the gradient iff
+         *  GRADIENT. */
+        Pass(int lo, int hi, boolean gradient) {
+            _lo = lo;
+            _hi = hi;
+            _gradient = gradient;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= GAMES_PER_TASK) {
+                _worker.get().run(_lo, _hi, _gradient);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Pass(_lo, mid, _gradient),
+                          new Pass(mid, _hi, _gradient));
+            }
+        }
+
+        /** The range of games. */
+        private final int _lo, _hi;
+        /** True iff the gradient is wanted. */
+        private final boolean _gradient;
+        /** Version of my serialized form (which is never used). */
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** The state of one thread of a pass. */
+    private class Worker {
+
+        /** A new worker, which is added to _workers. */
+        Worker() {
+            _workers.add(this);
+        }
+
+        /** Add the losses of the positions of games LO .. HI-1 to my totals,
+         *  and, if GRADIENT, their gradients. */
+        void run(int lo, int hi, boolean gradient) {
+            for (int g = lo; g < hi; g += 1) {
+                Piece winner = _reader.winner(g);
+                if (winner == null) {
+                    continue;
+                }
+                double result = winner == BP ? 1 : 0;
+                _reader.replay(g, _board);
+                while (_board.movesMade() >= _skip) {
+                    position(result, gradient);
+                    if (_board.movesMade() == 0) {
+                        break;
+                    }
+                    _board.retract();
+                }
+            }
+        }
+
+        /** Add the loss of the current position of my board, given the
+         *  RESULT of its game (1 if Black won, else 0), to my totals, and,
+         *  if GRADIENT, its gradient. */
+        private void position(double result, boolean gradient) {
+            long black = _board.pieces(BP), white = _board.pieces(WP);
+            int n = 0;
+            for (long m = black; m != 0; m &= m - 1) {
+                int sq = Long.numberOfTrailingZeros(m);
+                _features[n] = SQUARE_OFFSET
+                    + PatternEvaluator.squareIndex(BP, sq);
+                _features[n + 1] = PATTERN_OFFSET
+                    + PatternEvaluator.neighborhood(black, white, sq);
+                n += 2;
+            }
+            int blackFeatures = n;
+            for (long m = white; m != 0; m &= m - 1) {
+                int sq = Long.numberOfTrailingZeros(m);
+                _features[n] = SQUARE_OFFSET
+                    + PatternEvaluator.squareIndex(WP, sq);
+                _features[n + 1] = PATTERN_OFFSET
+                    + PatternEvaluator.neighborhood(white, black, sq);
+                n += 2;
+            }
+            Mobility.counts(black, white, _blackMoves);
+            Mobility.counts(white, black, _whiteMoves);
+
+            double[] params = _params;
+            double sum = 0;
+            for (int i = 0; i < n; i += 1) {
+                sum += i < blackFeatures
+                    ? params[_features[i]] : -params[_features[i]];
+            }
+            for (int k = 0; k < _blackMoves.length; k += 1) {
+                sum += params[MOBILITY_OFFSET + k]
+                    * (_blackMoves[k] - _whiteMoves[k]);
+            }
+            double value = sum / PatternEvaluator.UNIT;
+            boolean clipped = Math.abs(value) > PatternEvaluator.MAX_VALUE;
+            value = Math.max(-PatternEvaluator.MAX_VALUE,
+                             Math.min(PatternEvaluator.MAX_VALUE, value));
+            double p = 1 / (1 + Math.exp(-_scale * value));
+            p = Math.max(MIN_PROBABILITY, Math.min(1 - MIN_PROBABILITY, p));
+            _loss -= result * Math.log(p) + (1 - result) * Math.log(1 - p);
+            _count += 1;
+            if (gradient && !clipped) {
+                double d = (p - result) * _scale / PatternEvaluator.UNIT;
+                for (int i = 0; i < n; i += 1) {
+                    _gradient[_features[i]] += i < blackFeatures ? d : -d;
+                }
+                for (int k = 0; k < _blackMoves.length; k += 1) {
+                    _gradient[MOBILITY_OFFSET + k] +=
+                        d * (_blackMoves[k] - _whiteMoves[k]);
+                }
+            }
+        }
+
+        /** Clear my totals. */
+        void reset() {
+            _loss = 0;
+            _count = 0;
+            Arrays.fill(_gradient, 0);
+        }
+
+        /** My reader of the archive. */
+        private final GameArchiveReader _reader = _archive.copy();
+        /** The board on which I replay games. */
+        private final Board _board = new Board();
+        /** Total loss of the positions I have seen. */
+        private double _loss;
+        /** Number of positions I have seen. */
+        private long _count;
+        /** Gradient of the total loss of the positions I have seen. */
+        private final double[] _gradient = new double[PARAMETERS];
+        /** Indices of the parameters of the pieces of a position: those
+         *  of Black's pieces, then those of White's. */
+        private final int[] _features = new int[2 * Lines.SQUARES];
+        /** Numbers of each kind of move for each side (see Mobility). */
+        private final int[] _blackMoves = new int[Mobility.STANDARD.length],
+            _whiteMoves = new int[Mobility.STANDARD.length];
+    }
+
+    /** Tune the tables of the pattern evaluation as directed by the
+     *  command-line OPTIONS: on the games in the archive --tune, starting
+     *  from the tables in --weights (if any), for --epochs passes, using
+     *  --threads threads, writing the tables to --output (by default
+     *  ARCHIVE.weights) after each pass.  --scale fixes the scale, which
+     *  is otherwise fitted first, and --rate sets the step size. */
+    static void main(CommandArgs options) {
+        Path archive = Path.of(options.getFirst("--tune"));
+        Path output = Path.of(options.contains("--output")
+                              ? options.getFirst("--output")
+                              : archive + ".weights");
+        int threads = options.contains("--threads")
+            ? options.getInt("--threads")
+            : Runtime.getRuntime().availableProcessors();
+        int epochs = options.contains("--epochs")
+            ? options.getInt("--epochs") : DEFAULT_EPOCHS;
+        TexelTuner tuner = null;
+        try {
+            Weights initial = options.contains("--weights")
+                ? Weights.load(Path.of(options.getFirst("--weights")))
+                : new Weights();
+            tuner = new TexelTuner(new GameArchiveReader(archive), initial,
+                                   threads);
+            if (options.contains("--rate")) {
+                tuner.setRate(options.getDouble("--rate"));
+            }
+            long start = System.currentTimeMillis();
+            if (options.contains("--scale")) {
+                tuner.setScale(options.getDouble("--scale"));
+            } else {
+                double loss = tuner.fitScale();
+                System.out.printf("scale %.4f loss %.6f positions %d%n",
+                                  tuner.scale(), loss, tuner.positions());
+            }
+            for (int epoch = 1; epoch <= epochs; epoch += 1) {
+                double loss = tuner.step();
+                tuner.weights().save(output);
+                System.out.printf("epoch %d loss %.6f positions %d "
+                                  + "time %d ms%n", epoch, loss,
+                                  tuner.positions(),
+                                  System.currentTimeMillis() - start);
+            }
+            System.out.printf("final loss %.6f%n", tuner.loss());
+        } catch (IOException excp) {
+            Main.error(1, "%s%n", excp.getMessage());
+        } catch (IllegalArgumentException excp) {
+            Main.error(1, "%s%n", excp.getMessage());
+        } finally {
+            if (tuner != null) {
+                tuner.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    /** Default number of passes. */
+    static final int DEFAULT_EPOCHS = 100;
+    /** Default number of positions skipped at the start of each game. */
+    static final int DEFAULT_SKIP = 4;
+    /** Default step size, in table units. */
+    static final double DEFAULT_RATE = 1.0;
+    /** Bounds on the scale fitted by fitScale. */
+    private static final double MIN_SCALE = 0.01, MAX_SCALE = 100;
+    /** Number of steps of the search for the scale. */
+    private static final int SCALE_ITERATIONS = 24;
+    /** Number of games handled by one task of a pass. */
+    private static final int GAMES_PER_TASK = GameArchive.GAMES_PER_BLOCK;
+    /** Bound on predicted probabilities away from 0 and 1. */
+    private static final double MIN_PROBABILITY = 1e-12;
+    /** Decay rates of the Adam method's moment estimates. */
+    private static final double BETA1 = 0.9, BETA2 = 0.999;
+    /** Term keeping the Adam method's steps finite. */
+    private static final double EPSILON = 1e-8;
+
+    /** The games. */
+    private final GameArchiveReader _archive;
+    /** The threads that make passes. */
+    private final ForkJoinPool _pool;
+    /** The state of each thread that has taken part in a pass. */
+    private final ConcurrentLinkedQueue<Worker> _workers =
+        new ConcurrentLinkedQueue<>();
+    /** The state of the current thread. */
+    private final ThreadLocal<Worker> _worker =
+        ThreadLocal.withInitial(Worker::new);
+    /** The parameters: the table entries, as in PARAMETERS. */
+    private final double[] _params = new double[PARAMETERS];
+    /** The Adam method's estimates of the first and second moments of the
+     *  gradient. */
+    private final double[] _moment1 = new double[PARAMETERS],
+        _moment2 = new double[PARAMETERS];
+    /** Number of steps taken. */
+    private int _steps;
+    /** Number of positions seen in the last pass. */
+    private long _positions;
+    /** Number of positions skipped at the start of each game. */
+    private int _skip = DEFAULT_SKIP;
+    /** Factor applied to values before the logistic function. */
+    private double _scale = 1;
+    /** Step size. */
+    private double _rate = DEFAULT_RATE;
+
+}
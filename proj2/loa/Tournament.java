@@ -0,0 +1,299 @@
+package loa;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import ucb.util.CommandArgs;
+
+import static loa.Piece.*;
+
+/** A match of many headless games between two configurations of the
+ *  MachinePlayer ("first" and "second"), played on a pool of worker
+ *  threads.  Each game has its own Game and Board and reads and writes
+ *  nothing.  Openings are made by a few random plies from the initial
+ *  position; each opening is played twice, with colors exchanged.  The
+ *  match may stop early by a sequential probability ratio test (SPRT) of
+ *  the hypotheses that first is ELO0 or ELO1 Elo points stronger.
+ *  @author JuKyung Choi
+ */
+class Tournament {
+
+    /** A match of up to GAMES games between engines configured by FIRST
+     *  and SECOND (as for MachinePlayer.setOptions), run on THREADS
+     *  threads, using openings of PLIES random plies chosen with a
+     *  generator seeded by SEED. */
+    Tournament(int games, int threads, String first, String second,
+               int plies, long seed) {
+        _games = games;
+        _threads = Math.max(1, threads);
+        _first = first;
+        _second = second;
+        _plies = plies;
+        _seed = seed;
+        MachinePlayer.checkOptions(first);
+        MachinePlayer.checkOptions(second);
+    }
+
+    /** Stop the match as soon as an SPRT of H0: elo = ELO0 against
+     *  H1: elo = ELO1 concludes, with error rates ALPHA and BETA. */
+    void setSprt(double elo0, double elo1, double alpha, double beta) {
+        _sprt = true;
+        _elo0 = elo0;
+        _elo1 = elo1;
+        _lower = Math.log(beta / (1 - alpha));
+        _upper = Math.log((1 - beta) / alpha);
+    }
+
+    /** Set up the SPRT from SPEC, of the form ELO0,ELO1[,ALPHA,BETA]
+     *  (error rates default to 0.05). */
+    void setSprt(String spec) {
+        String[] parts = spec.split(",");
+        try {
+            if (parts.length == 2) {
+                setSprt(Double.parseDouble(parts[0]),
+                        Double.parseDouble(parts[1]), DEFAULT_ERROR,
+                        DEFAULT_ERROR);
+                return;
+            } else if (parts.length == 4) {
+                setSprt(Double.parseDouble(parts[0]),
+                        Double.parseDouble(parts[1]),
+                        Double.parseDouble(parts[2]),
+                        Double.parseDouble(parts[3]));
+                return;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw new IllegalArgumentException("bad SPRT parameters: " + spec);
+    }
+
+    /** Play the match, writing a summary to OUT. */
+    void run(PrintStream out) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        Random random = new Random(_seed);
+        for (int g = 0; g < _games; g += 2) {
+            Board opening = opening(random);
+            pool.execute(() -> playGame(opening, BP));
+            if (g + 1 < _games) {
+                pool.execute(() -> playGame(opening, WP));
+            }
+        }
+        pool.shutdown();
+        while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+            if (decided()) {
+                pool.shutdownNow();
+            }
+        }
+        report(out);
+    }
+
+    /** Return a fresh board made by _plies random moves from the initial
+     *  position, chosen with RANDOM, stopping short of any game-ending
+     *  move. */
+    private Board opening(Random random) {
+        Board board = new Board();
+        ArrayList<Move> moves = new ArrayList<>();
+        for (int k = 0; k < _plies; k += 1) {
+            moves.clear();
+            for (Iterator<Move> i = board.legalMoves(); i.hasNext();) {
+                Move move = i.next();
+                board.makeMove(move);
+                if (!board.gameOver()) {
+                    moves.add(move);
+                }
+                board.retract();
+            }
+            if (moves.isEmpty()) {
+                break;
+            }
+            board.makeMove(moves.get(random.nextInt(moves.size())));
+        }
+        return board;
+    }
+
+    /** Play one game from OPENING with the first engine playing FIRSTSIDE,
+     *  and record the result, unless the match has been decided. */
+    private void playGame(Board opening, Piece firstSide) {
+        if (decided()) {
+            return;
+        }
+        Game game = new Game(null, NULL_STREAM);
+        game.getBoard().copyFrom(opening);
+        MachinePlayer first = new MachinePlayer(firstSide, game),
+            second = new MachinePlayer(firstSide.opposite(), game);
+        first.setOptions(_first);
+        second.setOptions(_second);
+        game.setPlayer(firstSide, first);
+        game.setPlayer(firstSide.opposite(), second);
+        Piece winner = game.playOut(MAX_MOVES);
+        record(winner == null ? 1 : winner == firstSide ? 2 : 0);
+    }
+
+    /** Record a game in which the first engine scored HALFPOINTS half
+     *  points, unless the SPRT has already concluded, so that the results
+     *  are those on which it concluded. */
+    synchronized void record(int halfPoints) {
+        if (_decided) {
+            return;
+        }
+        _results[halfPoints] += 1;
+        if (_sprt) {
+            double llr = llr();
+            _decided = llr <= _lower || llr >= _upper;
+        }
+    }
+
+    /** Return the numbers of games so far in which the first engine
+     *  scored 0, 1, and 2 half points. */
+    synchronized int[] results() {
+        return _results.clone();
+    }
+
+    /** Return true iff the SPRT has reached a conclusion. */
+    synchronized boolean decided() {
+        return _decided;
+    }
+
+    /** Return the number of games recorded. */
+    private int played() {
+        return _results[0] + _results[1] + _results[2];
+    }
+
+    /** Return the first engine's mean score per game. */
+    private double score() {
+        return (_results[2] + 0.5 * _results[1]) / played();
+    }
+
+    /** Return the variance of the first engine's score per game. */
+    private double variance() {
+        double s = score();
+        return (_results[2] * (1 - s) * (1 - s)
+                + _results[1] * (0.5 - s) * (0.5 - s)
+                + _results[0] * s * s) / played();
+    }
+
+    /** Return the log-likelihood ratio of H1 to H0 for the results so far,
+     *  by the normal approximation to the generalized SPRT. */
+    synchronized double llr() {
+        double var = variance();
+        if (played() == 0 || var == 0) {
+            return 0;
+        }
+        double s0 = expectedScore(_elo0), s1 = expectedScore(_elo1);
+        return played() * (s1 - s0) * (2 * score() - s0 - s1) / (2 * var);
+    }
+
+    /** Return the expected score of a player ELO points stronger than its
+     *  opponent. */
+    static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /** Return the Elo difference corresponding to an expected SCORE. */
+    static double elo(double score) {
+        score = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /** Write a summary of the results so far on OUT. */
+    private synchronized void report(PrintStream out) {
+        int n = played();
+        out.printf("first: %s%nsecond: %s%n", _first, _second);
+        out.printf("games %d wins %d losses %d draws %d%n", n, _results[2],
+                   _results[0], _results[1]);
+        if (n > 0) {
+            double s = score(),
+                margin = 1.96 * Math.sqrt(variance() / n);
+            out.printf("score %.4f elo %.1f +/- %.1f%n", s, elo(s),
+                       (elo(s + margin) - elo(s - margin)) / 2);
+        }
+        if (_sprt) {
+            double llr = llr();
+            out.printf("sprt elo0 %.1f elo1 %.1f llr %.3f [%.3f, %.3f] %s%n",
+                       _elo0, _elo1, llr, _lower, _upper,
+                       llr >= _upper ? "H1" : llr <= _lower ? "H0"
+                       : "undecided");
+        }
+        out.flush();
+    }
+
+    /** Play a match as directed by the command-line options
+     *  --match=GAMES, --threads, --first, --second, --plies, --seed,
+     *  --sprt, and --output in OPTIONS, and exit. */
+    static void main(CommandArgs options) {
+        try {
+            Tournament match =
+                new Tournament(options.getInt("--match"),
+                               options.contains("--threads")
+                               ? options.getInt("--threads")
+                               : Runtime.getRuntime().availableProcessors(),
+                               optionOr(options, "--first", ""),
+                               optionOr(options, "--second", ""),
+                               options.contains("--plies")
+                               ? options.getInt("--plies") : DEFAULT_PLIES,
+                               options.contains("--seed")
+                               ? options.getLong("--seed") : 0);
+            if (options.contains("--sprt")) {
+                match.setSprt(options.getFirst("--sprt"));
+            }
+            if (options.contains("--output")) {
+                try (PrintStream out =
+                     new PrintStream(options.getFirst("--output"))) {
+                    match.run(out);
+                }
+            } else {
+                match.run(System.out);
+            }
+        } catch (IllegalArgumentException | IOException excp) {
+            Main.error(1, "%s%n", excp.getMessage());
+        } catch (InterruptedException excp) {
+            Main.error(1, "interrupted%n");
+        }
+        System.exit(0);
+    }
+
+    /** Return the value of option KEY in OPTIONS, or DFLT if absent. */
+    private static String optionOr(CommandArgs options, String key,
+                                   String dflt) {
+        return options.contains(key) ? options.getFirst(key) : dflt;
+    }
+
+    /** A stream that discards everything written to it. */
+    private static final PrintStream NULL_STREAM =
+        new PrintStream(OutputStream.nullOutputStream());
+
+    /** Moves after which a game is scored as a draw. */
+    static final int MAX_MOVES = 300;
+    /** Default number of random plies in an opening. */
+    static final int DEFAULT_PLIES = 4;
+    /** Default SPRT error rates. */
+    private static final double DEFAULT_ERROR = 0.05;
+
+    /** Maximum number of games. */
+    private final int _games;
+    /** Number of worker threads. */
+    private final int _threads;
+    /** Option settings of the two engines. */
+    private final String _first, _second;
+    /** Number of random plies per opening. */
+    private final int _plies;
+    /** Seed for choosing openings. */
+    private final long _seed;
+    /** Number of games in which the first engine scored 0, 1, or 2 half
+     *  points. */
+    private final int[] _results = new int[3];
+    /** True iff an SPRT is in use. */
+    private boolean _sprt;
+    /** The SPRT hypotheses (in Elo) and log-likelihood bounds. */
+    private double _elo0, _elo1, _lower, _upper;
+    /** True once the SPRT has concluded. */
+    private boolean _decided;
+
+}
@@ -2,6 +2,27 @@ package loa;
 
 import static org.junit.Assert.*;
 import org.junit.Test;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
 import static loa.Piece.*;
 
 public class UnitTest {
@@ -69,6 +90,1012 @@ public class UnitTest {
         Move move3 = Move.create("a2-e6", board);
         assertEquals(true, board.isLegal(move3));
     }
+    /** Test that the cached game status follows changes to the board. */
+    @Test
+    public void winnerTest() {
+        Board board = new Board();
+        assertEquals(null, board.winner());
+        assertEquals(false, board.gameOver());
+        for (int c = 2; c <= 7; c += 1) {
+            board.set(c, 8, EMP);
+        }
+        assertEquals(true, board.piecesContiguous(BP));
+        assertEquals(BP, board.winner());
+        board.set(4, 5, BP);
+        assertEquals(null, board.winner());
+        Board copy = new Board(board);
+        assertEquals(null, copy.winner());
+        copy.set(4, 5, EMP);
+        assertEquals(BP, copy.winner());
+        assertEquals(null, board.winner());
+        board.set(4, 5, EMP);
+        assertEquals(false, board.piecesContiguous(WP));
+        for (int r = 2; r <= 7; r += 1) {
+            board.set(8, r, EMP);
+        }
+        assertEquals(true, board.piecesContiguous(WP));
+        assertEquals(WP, board.winner());
+        board.setTurn(WP);
+        assertEquals(BP, board.winner());
+    }
+
+    /** Test the precomputed line tables and direction lookup. */
+    @Test
+    public void linesTest() {
+        assertEquals(Direction.NE, Direction.of(1, 1));
+        assertEquals(Direction.W, Direction.of(-1, 0));
+        assertEquals(Direction.NOWHERE, Direction.of(0, 0));
+        assertEquals(Direction.SW, Direction.between(5, 5, 2, 2));
+        for (Direction dir = Direction.N; dir != null; dir = dir.succ()) {
+            assertEquals(dir, Direction.fromIndex(dir.index()));
+        }
+        int a1 = Lines.index(1, 1), d4 = Lines.index(4, 4);
+        assertEquals(7, Lines.TARGET[a1][Direction.NE.index()].length);
+        assertEquals(0, Lines.TARGET[a1][Direction.S.index()].length);
+        assertEquals(d4, Lines.TARGET[a1][Direction.NE.index()][2]);
+        assertEquals((1L << Lines.index(2, 2)) | (1L << Lines.index(3, 3)),
+                     Lines.BETWEEN[a1][d4]);
+        assertEquals(0L, Lines.BETWEEN[a1][Lines.index(2, 3)]);
+        assertEquals(8, Long.bitCount(Lines.LINE[d4][0]));
+        assertEquals(7, Long.bitCount(Lines.LINE[d4][3]));
+        assertEquals(3, Long.bitCount(Lines.NEIGHBORS[a1]));
+        assertEquals(8, Long.bitCount(Lines.NEIGHBORS[d4]));
+    }
+
+    /** Test the board symmetries and canonical keys. */
+    @Test
+    public void symmetryTest() {
+        Board board = new Board();
+        assertEquals(board.key(), Symmetry.ROTATE_180.apply(board).key());
+        assertEquals(board.key(), Symmetry.FLIP_ROWS.apply(board).key());
+        board.makeMove(Move.create("b1-d3", board));
+        board.makeMove(Move.create("a2-c2", board));
+        long key = Symmetry.canonicalKey(board);
+        for (Symmetry sym : Symmetry.values()) {
+            Board image = sym.apply(board);
+            assertEquals(key, Symmetry.canonicalKey(image));
+            assertEquals(board.turn(), image.turn());
+            for (int sq = 0; sq < Lines.SQUARES; sq += 1) {
+                assertEquals(1L << sym.apply(sq), sym.apply(1L << sq));
+                assertEquals(sq, sym.inverse().apply(sym.apply(sq)));
+            }
+            Symmetry canon = Symmetry.canonical(image);
+            Board canonBoard = canon.apply(image);
+            Move move = Move.create("d3-d6", board);
+            Move imageMove = sym.apply(move, image);
+            assertEquals(true, image.isLegal(imageMove));
+            Move canonMove = canon.apply(imageMove, canonBoard);
+            assertEquals(true, canonBoard.isLegal(canonMove));
+            assertEquals(imageMove,
+                         canon.inverse().apply(canonMove, image));
+        }
+        assertEquals(false, board.key() == Symmetry.FLIP_ROWS.apply(board)
+                     .key());
+    }
+
+    /** Test Position snapshots, equality, and serialization. */
+    @Test
+    public void positionTest() {
+        Board board = new Board();
+        Position start = board.snapshot();
+        board.makeMove(Move.create("b1-d3", board));
+        Position after = board.snapshot();
+        assertEquals(false, start.equals(after));
+        assertEquals(WP, after.turn());
+        assertEquals(BP, after.get(4, 3));
+        Board copy = new Board(after);
+        assertEquals(board, copy);
+        assertEquals(board.hashCode(), copy.hashCode());
+        assertEquals(0, copy.movesMade());
+        assertEquals(after, copy.snapshot());
+        board.retract();
+        assertEquals(start, board.snapshot());
+        assertEquals(start.hashCode(), new Board().snapshot().hashCode());
+        byte[] bytes = after.toBytes();
+        assertEquals(Position.BYTES, bytes.length);
+        assertEquals(after, Position.fromBytes(bytes, 0));
+        HashSet<Position> set = new HashSet<>();
+        set.add(start);
+        set.add(after);
+        set.add(new Board().snapshot());
+        assertEquals(2, set.size());
+    }
+
+    /** Test winningMoves against trying every legal move, along random
+     *  games. */
+    @Test
+    public void winningMovesTest() {
+        Random random = new Random(61);
+        int found = 0;
+        for (int game = 0; game < 40; game += 1) {
+            Board board = new Board();
+            while (!board.gameOver()) {
+                Piece side = board.turn();
+                HashSet<Move> wins = new HashSet<>();
+                ArrayList<Move> moves = new ArrayList<>();
+                for (Iterator<Move> i = board.legalMoves(); i.hasNext();) {
+                    Move move = i.next();
+                    moves.add(move);
+                    board.makeMove(move);
+                    if (board.piecesContiguous(side)) {
+                        wins.add(move);
+                    }
+                    board.retract();
+                }
+                assertEquals(wins, new HashSet<>(board.winningMoves(side)));
+                assertEquals(!wins.isEmpty(), board.hasWinningMove(side));
+                found += wins.size();
+                if (moves.isEmpty()) {
+                    break;
+                }
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+        }
+        assertEquals(true, found > 0);
+    }
+
+    /** Test writing, reading, and replaying game records. */
+    @Test
+    public void gameRecordTest() throws IOException {
+        Random random = new Random(7);
+        Board first = new Board();
+        for (int k = 0; k < 40 && !first.gameOver(); k += 1) {
+            ArrayList<Move> moves = legalMoves(first);
+            first.makeMove(moves.get(random.nextInt(moves.size())));
+        }
+        Board second = new Board(first);
+        while (second.movesMade() > 0) {
+            second.retract();
+        }
+        second.set(1, 2, EMP, WP);
+        second.makeMove(Move.create("h4-f4", second));
+        GameRecord record = GameRecord.of(first);
+        record.setTag("Event", "a \"test\" \\ game");
+        StringWriter text = new StringWriter();
+        GameRecordWriter out = new GameRecordWriter(text);
+        out.write(record);
+        out.write(GameRecord.of(second));
+        GameRecordReader in =
+            new GameRecordReader(new BufferedReader(
+                                     new StringReader("\n" + text)));
+        GameRecord r1 = in.next(), r2 = in.next();
+        assertEquals(null, in.next());
+        assertEquals(record.tags(), r1.tags());
+        assertEquals(first.movesMade(), r1.moves().size());
+        assertEquals(first, r1.replay(true));
+        assertEquals(first, r1.replay(false));
+        assertEquals(second, r2.replay(true));
+        assertEquals(EMP, r2.setup().get(1, 2));
+        Board third = new Board(second);
+        assertFalse(third.edited());
+        third.set(1, 3, EMP);
+        assertTrue(third.edited());
+        try {
+            GameRecord.of(third);
+            fail("record made of a board edited after a move");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+        third.retract();
+        assertFalse(third.edited());
+        r2.addMove("a1-a2");
+        try {
+            r2.replay(true);
+            fail("illegal move replayed");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+
+    /** Test writing and randomly accessing a binary game archive. */
+    @Test
+    public void gameArchiveTest() throws IOException {
+        Random random = new Random(11);
+        ArrayList<Board> games = new ArrayList<>();
+        Path file = Files.createTempFile("loa", ".arc");
+        try (GameArchiveWriter out = new GameArchiveWriter(file)) {
+            for (int g = 0; g < 2 * GameArchive.GAMES_PER_BLOCK + 3; g += 1) {
+                Board board = new Board();
+                if (g % 5 == 0) {
+                    board.set(1, 2, EMP, BP);
+                }
+                for (int k = 0; k < g % 61 && !board.gameOver(); k += 1) {
+                    ArrayList<Move> moves = legalMoves(board);
+                    board.makeMove(moves.get(random.nextInt(moves.size())));
+                }
+                out.add(board);
+                games.add(board);
+            }
+        }
+        GameArchiveReader in = new GameArchiveReader(file);
+        assertEquals(games.size(), in.size());
+        Board board = new Board();
+        for (int k = 0; k < 4 * games.size(); k += 1) {
+            int g = random.nextInt(games.size());
+            in.replay(g, board);
+            assertEquals(games.get(g), board);
+            assertEquals(games.get(g).movesMade(), in.moveCount(g));
+            assertEquals(games.get(g).winner(), in.winner(g));
+        }
+        for (int g = 0; g < games.size(); g += 1) {
+            try (GameArchiveReader fresh = new GameArchiveReader(file)) {
+                assertEquals(games.get(g).winner(), fresh.winner(g));
+            }
+        }
+        Path index = Files.createTempFile("loa", ".idx");
+        try {
+            PositionIndex.build(file, index, 3);
+        } catch (InterruptedException excp) {
+            fail("interrupted");
+        }
+        PositionIndex positions = new PositionIndex(index);
+        int total = 0;
+        for (Board game : games) {
+            total += game.movesMade() + 1;
+        }
+        assertEquals(total, positions.size());
+        assertEquals(true, positions.find(new Board()).size() > 0);
+        for (int k = 0; k < 20; k += 1) {
+            int g = random.nextInt(games.size());
+            Board target = new Board(games.get(g));
+            int ply = random.nextInt(target.movesMade() + 1);
+            while (target.movesMade() > ply) {
+                target.retract();
+            }
+            boolean found = false;
+            for (PositionIndex.Hit hit : positions.find(target)) {
+                in.replay(hit.game(), hit.ply(), board);
+                assertEquals(target, board);
+                found |= hit.game() == g && hit.ply() == ply;
+            }
+            assertEquals(true, found);
+        }
+        in.close();
+        Files.delete(file);
+        Files.delete(index);
+    }
+
+    /** Return the move denoted by S on BOARD as Move.create formerly found
+     *  it, by regular expressions, or null. */
+    private static Move regexMove(String s, Board board) {
+        s = s.trim();
+        if (!s.matches("[a-h][1-9]-[a-h][1-9]\\b.*")
+            || !Board.ROW_COL.matcher(s.substring(0, 2)).matches()
+            || !Board.ROW_COL.matcher(s.substring(3, 5)).matches()) {
+            return null;
+        }
+        return Move.create(s.charAt(0) - 'a' + 1, s.charAt(1) - '0',
+                           s.charAt(3) - 'a' + 1, s.charAt(4) - '0', board);
+    }
+
+    /** Test the notation parser and formatter against regular
+     *  expressions. */
+    @Test
+    public void notationTest() {
+        Board board = new Board();
+        String alphabet = "abhi0189- _x#\t";
+        Random random = new Random(3);
+        byte[] buf = new byte[16];
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < 20000; k += 1) {
+            text.setLength(0);
+            if (k % 3 == 0) {
+                text.append("  ");
+            }
+            int n = 4 + random.nextInt(4);
+            for (int i = 0; i < n; i += 1) {
+                int ch = random.nextInt(alphabet.length());
+                text.append(alphabet.charAt(ch));
+                if (i == 2 && k % 2 == 0) {
+                    text.setCharAt(text.length() - 1, '-');
+                }
+            }
+            String s = text.toString();
+            Move expected = regexMove(s, board);
+            assertEquals(s, expected, Move.create(s, board));
+            for (int i = 0; i < s.length(); i += 1) {
+                buf[i + 1] = (byte) s.charAt(i);
+            }
+            assertEquals(s, expected,
+                         Notation.parseMove(buf, 1, s.length() + 1, board));
+        }
+        for (Iterator<Move> i = board.legalMoves(); i.hasNext();) {
+            Move move = i.next();
+            String name = String.format("%c%d-%c%d",
+                                        (char) (move.getCol0() - 1 + 'a'),
+                                        move.getRow0(),
+                                        (char) (move.getCol1() - 1 + 'a'),
+                                        move.getRow1());
+            assertEquals(name, move.toString());
+            assertEquals(Notation.MOVE_LENGTH + 2,
+                         Notation.format(move, buf, 2));
+            assertEquals(name, new String(buf, 2, Notation.MOVE_LENGTH));
+            assertEquals(move, Move.create(name + " # comment", board));
+            assertEquals(null, Move.create(name + "x", board));
+        }
+        assertEquals(3, Board.col("c7"));
+        assertEquals(7, Board.row("c7"));
+    }
+
+    /** Return the legal moves on BOARD, in the order of its iterator. */
+    private static ArrayList<Move> legalMoves(Board board) {
+        ArrayList<Move> moves = new ArrayList<>();
+        for (Iterator<Move> i = board.legalMoves(); i.hasNext();) {
+            moves.add(i.next());
+        }
+        return moves;
+    }
+
+    /** Take one step of a random walk on BOARD, with choices made by
+     *  RANDOM: start a new game if the game is over, or else retract the
+     *  last move with probability 1/RETRACT (never if RETRACT is 0), or
+     *  else make a random legal move. */
+    private static void randomWalk(Board board, Random random,
+                                   int retract) {
+        ArrayList<Move> moves = legalMoves(board);
+        if (moves.isEmpty() || board.gameOver()) {
+            board.clear();
+        } else if (retract > 0 && board.movesMade() > 0
+                   && random.nextInt(retract) == 0) {
+            board.retract();
+        } else {
+            board.makeMove(moves.get(random.nextInt(moves.size())));
+        }
+    }
+
+    /** Test reading and writing position notation. */
+    @Test
+    public void positionStringTest() {
+        Board board = new Board();
+        assertEquals(Notation.INITIAL_POSITION, board.positionString());
+        Random random = new Random(5);
+        for (int k = 0; k < 200; k += 1) {
+            randomWalk(board, random, 0);
+            Board copy = new Board();
+            copy.initialize(" " + board.positionString() + "\n");
+            assertEquals(board, copy);
+            assertEquals(board.positionString(), copy.positionString());
+        }
+        board.initialize("8/8/3b4/8/2w1w3/8/8/8 w");
+        assertEquals(BP, board.get(4, 6));
+        assertEquals(WP, board.get(5, 4));
+        assertEquals(WP, board.turn());
+        String[] bad = {
+            "8/8/8/8/8/8/8 b", "8/8/8/8/8/8/8/8", "9/8/8/8/8/8/8/8 b",
+            "8/8/8/8/8/8/8/7 b", "8/8/8/8/8/8/8/8b b", "8/8/8/8/8/8/8/8 x",
+            "8/8/8/8/8/8/8/44b b"
+        };
+        for (String s : bad) {
+            try {
+                board.initialize(s);
+                fail("accepted " + s);
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    /** Check that the incrementally updated accumulators of a
+     *  NeuralEvaluator agree with those computed from scratch, and that
+     *  networks survive being saved and loaded. */
+    @Test
+    public void neuralEvaluatorTest() throws IOException {
+        NeuralEvaluator.Network net = NeuralEvaluator.Network.standard();
+        NeuralEvaluator incremental = new NeuralEvaluator(net),
+            fresh = new NeuralEvaluator(net);
+        Board board = new Board();
+        board.setListener(incremental);
+        Random random = new Random(7);
+        for (int k = 0; k < 300; k += 1) {
+            randomWalk(board, random, 4);
+            fresh.boardReset(board);
+            for (Piece side : new Piece[] { BP, WP }) {
+                assertEquals(fresh.evaluate(side),
+                             incremental.evaluate(side), 1e-9);
+            }
+        }
+        Path file = Files.createTempFile("loa", ".nn");
+        try {
+            net.save(file);
+            NeuralEvaluator loaded =
+                new NeuralEvaluator(NeuralEvaluator.Network.load(file));
+            loaded.boardReset(board);
+            assertEquals(fresh.evaluate(BP), loaded.evaluate(BP), 1e-9);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Check that the incrementally updated sums of a PatternEvaluator
+     *  agree with those computed from scratch, and that tables survive
+     *  being written and read as Weights. */
+    @Test
+    public void patternEvaluatorTest() throws IOException {
+        Weights weights = new Weights();
+        Random random = new Random(11);
+        int[] square = new int[Lines.SQUARES],
+            pattern = new int[PatternEvaluator.PATTERNS];
+        for (int i = 0; i < square.length; i += 1) {
+            square[i] = random.nextInt(201) - 100;
+        }
+        for (int i = 0; i < pattern.length; i += 1) {
+            pattern[i] = random.nextInt(201) - 100;
+        }
+        weights.put(PatternEvaluator.SQUARE, square);
+        weights.put(PatternEvaluator.PATTERN, pattern);
+        StringWriter text = new StringWriter();
+        weights.write(text);
+        Weights copy = Weights.read(new StringReader("# comment\n" + text));
+        assertArrayEquals(square, copy.get(PatternEvaluator.SQUARE));
+        assertArrayEquals(pattern, copy.get(PatternEvaluator.PATTERN));
+
+        PatternEvaluator incremental = new PatternEvaluator(copy),
+            fresh = new PatternEvaluator(weights);
+        Board board = new Board();
+        board.setListener(incremental);
+        for (int k = 0; k < 300; k += 1) {
+            randomWalk(board, random, 4);
+            fresh.boardReset(board);
+            assertEquals(fresh.evaluate(BP), incremental.evaluate(BP), 1e-9);
+            assertEquals(fresh.evaluate(WP), incremental.evaluate(WP), 1e-9);
+        }
+        assertEquals(0, PatternEvaluator.swapSides(0));
+        assertEquals(0xffff, PatternEvaluator.swapSides(0xffff));
+        assertEquals(0x2, PatternEvaluator.swapSides(0x1));
+    }
+
+    /** Check that a LeafBatch evaluates the children of random positions
+     *  exactly as MachinePlayer.eval does. */
+    @Test
+    public void leafBatchTest() {
+        Board board = new Board();
+        LeafBatch batch = new LeafBatch();
+        Random random = new Random(13);
+        for (int k = 0; k < 200; k += 1) {
+            randomWalk(board, random, 0);
+            ArrayList<Move> moves = legalMoves(board);
+            if (moves.isEmpty() || board.gameOver()) {
+                continue;
+            }
+            batch.clear();
+            for (Move move : moves) {
+                batch.add(board, move);
+            }
+            batch.evaluate();
+            assertEquals(moves.size(), batch.size());
+            Piece side = board.turn();
+            for (int j = 0; j < moves.size(); j += 1) {
+                board.makeMove(moves.get(j));
+                double expected = MachinePlayer.eval(board, side);
+                assertEquals(expected, batch.value(j), 0.0);
+                assertEquals(expected,
+                             LeafBatch.eval(board.pieces(side),
+                                            board.pieces(side.opposite())),
+                             0.0);
+                board.retract();
+            }
+            batch.clear();
+            long mine = board.pieces(side),
+                theirs = board.pieces(side.opposite());
+            batch.addChildren(mine, theirs);
+            assertEquals(moves.size(), batch.size());
+            for (int j = 0; j < moves.size(); j += 1) {
+                Move move = moves.get(j);
+                assertEquals(Lines.index(move.getCol0(), move.getRow0()),
+                             batch.from(j));
+                assertEquals(Lines.index(move.getCol1(), move.getRow1()),
+                             batch.to(j));
+                board.makeMove(move);
+                assertEquals(board.pieces(side), batch.own(j));
+                assertEquals(board.pieces(side.opposite()), batch.other(j));
+                board.retract();
+            }
+            assertEquals(board.hasWinningMove(side),
+                         Board.hasWinningMove(mine, theirs,
+                                              new long[Lines.SQUARES]));
+        }
+    }
+
+    /** Check Mobility's counts against the legal moves of random
+     *  positions, and the mobility term of the classic evaluation. */
+    @Test
+    public void mobilityTest() {
+        Board board = new Board();
+        assertEquals(36, Mobility.count(board.pieces(BP), board.pieces(WP)));
+        Random random = new Random(17);
+        LeafBatch batch = new LeafBatch();
+        batch.setWeights(0.5, 2, 0.05);
+        for (int k = 0; k < 200; k += 1) {
+            randomWalk(board, random, 0);
+            ArrayList<Move> moves = legalMoves(board);
+            if (moves.isEmpty() || board.gameOver()) {
+                continue;
+            }
+            Piece side = board.turn();
+            long mine = board.pieces(side),
+                theirs = board.pieces(side.opposite());
+            int weighted = 0;
+            for (Move move : moves) {
+                int to = Lines.index(move.getCol1(), move.getRow1());
+                int w = move.replacedPiece() == EMP ? 1 : 10;
+                if ((Mobility.EDGES & (1L << to)) != 0) {
+                    w += 100;
+                }
+                weighted += w;
+            }
+            assertEquals(moves.size(), Mobility.count(mine, theirs));
+            assertEquals(weighted,
+                         Mobility.weighted(mine, theirs,
+                                           new int[] { 1, 10, 101, 110 }));
+            batch.clear();
+            batch.add(board, moves.get(0));
+            batch.evaluate();
+            board.makeMove(moves.get(0));
+            assertEquals(MachinePlayer.eval(board, side, 0.5, 2, 0.05),
+                         batch.value(0), 0.0);
+            board.retract();
+        }
+    }
+
+    /** Check that TexelTuner reduces the loss over a small archive of
+     *  random games, and produces tables the pattern evaluation accepts. */
+    @Test
+    public void texelTunerTest() throws IOException {
+        Random random = new Random(19);
+        Path file = Files.createTempFile("loa", ".arc");
+        try {
+            try (GameArchiveWriter out = new GameArchiveWriter(file)) {
+                for (int g = 0; g < 40; g += 1) {
+                    Board board = new Board();
+                    for (int k = 0; k < 300 && !board.gameOver(); k += 1) {
+                        ArrayList<Move> moves = new ArrayList<>();
+                        for (Iterator<Move> i = board.legalMoves();
+                             i.hasNext();) {
+                            moves.add(i.next());
+                        }
+                        board.makeMove(moves.get(random.nextInt(
+                                                     moves.size())));
+                    }
+                    out.add(board);
+                }
+            }
+            TexelTuner tuner =
+                new TexelTuner(new GameArchiveReader(file), new Weights(), 2);
+            try {
+                tuner.setRate(5);
+                double before = tuner.loss();
+                assertTrue(tuner.positions() > 0);
+                for (int k = 0; k < 5; k += 1) {
+                    tuner.step();
+                }
+                assertTrue(tuner.loss() < before);
+                Weights weights = tuner.weights();
+                new PatternEvaluator(weights);
+                assertEquals(Lines.SQUARES,
+                             weights.get(PatternEvaluator.SQUARE).length);
+            } finally {
+                tuner.close();
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Check SpsaTuner's parameter declarations, an iteration, and its
+     *  checkpoints. */
+    @Test
+    public void spsaTunerTest() throws Exception {
+        List<SpsaTuner.Parameter> params =
+            SpsaTuner.Parameter.parse(MachinePlayer.TUNABLES);
+        assertEquals(3, params.size());
+        try {
+            SpsaTuner.Parameter.parse("mobility:1:0");
+            fail("accepted a short declaration");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+        SpsaTuner tuner = new SpsaTuner(params, "depth=1", 1, 1, 4, 5);
+        tuner.step();
+        assertEquals(1, tuner.iteration());
+        Path file = Files.createTempFile("loa", ".spsa");
+        try {
+            tuner.save(file);
+            SpsaTuner copy =
+                new SpsaTuner(SpsaTuner.Parameter.parse(MachinePlayer
+                                                        .TUNABLES),
+                              "depth=1", 1, 1, 4, 5);
+            copy.load(file, true);
+            assertEquals(1, copy.iteration());
+            assertEquals(tuner.settings(), copy.settings());
+            SpsaTuner other =
+                new SpsaTuner(SpsaTuner.Parameter.parse(MachinePlayer
+                                                        .TUNABLES),
+                              "depth=1", 1, 1, 4, 6);
+            try {
+                other.load(file, true);
+                fail("resumed with a different seed");
+            } catch (IOException excp) {
+                /* Expected. */
+            }
+            other.load(file, false);
+            other.step();
+            copy.step();
+            assertEquals(copy.settings(), other.settings());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Check the shards written by DataGenerator. */
+    @Test
+    public void dataGeneratorTest() throws Exception {
+        Path dir = Files.createTempDirectory("loa");
+        String prefix = dir.resolve("data").toString();
+        try {
+            DataGenerator generator =
+                new DataGenerator(prefix, 50, 16, 1, 200, "", 4, 3);
+            generator.run();
+            assertEquals(50, generator.positions());
+            assertEquals(4, generator.shards());
+            Path last = DataShardWriter.shard(prefix + "-0", 3);
+            assertEquals(2 * DataShard.RECORD_BYTES, Files.size(last));
+            ByteBuffer shard = ByteBuffer.wrap(
+                Files.readAllBytes(DataShardWriter.shard(prefix + "-0", 0)));
+            assertEquals(16, DataShard.size(shard));
+            for (int k = 0; k < DataShard.size(shard); k += 1) {
+                Position p = DataShard.position(shard, k);
+                assertEquals(DataShard.black(shard, k), p.pieces(BP));
+                assertEquals(DataShard.turn(shard, k), p.turn());
+                assertTrue(Math.abs(DataShard.value(shard, k)) <= 100);
+            }
+            assertEquals(DataShard.turn(shard, 0).opposite(),
+                         DataShard.turn(shard, 1));
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator) {
+                    Files.delete(f);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    /** Check BloomFilter, LongHashSet, and the two passes of
+     *  Deduplicator. */
+    @Test
+    public void deduplicatorTest() {
+        BloomFilter filter = new BloomFilter(1000, 3);
+        assertEquals(1024, filter.bits());
+        LongHashSet set = new LongHashSet(4);
+        HashSet<Long> expected = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i += 1) {
+            long key = Board.key(random.nextInt(300), 0, BP);
+            filter.add(key);
+            assertTrue(filter.mightContain(key));
+            assertEquals(expected.add(key), set.add(key));
+            assertTrue(set.contains(key));
+        }
+        assertEquals(expected.size(), set.size());
+        assertTrue(expected.contains(0L));
+        assertTrue(!set.add(0) && set.contains(0));
+        Deduplicator dedup = new Deduplicator(6, 0.01);
+        long[] keys = { 5, 9, 5, 0, 9, 5 };
+        for (long key : keys) {
+            dedup.scan(Board.key(key, 0, BP));
+        }
+        boolean[] kept = new boolean[keys.length];
+        for (int i = 0; i < keys.length; i += 1) {
+            kept[i] = dedup.keep(Board.key(keys[i], 0, BP));
+        }
+        assertTrue(kept[0] && kept[1] && !kept[2] && kept[3] && !kept[4]
+                   && !kept[5]);
+    }
+
+    /** Check the endgame table's indexing, and that a table solved and
+     *  written by EndgameSolver reads back with the same values. */
+    @Test
+    public void endgameTest() throws IOException {
+        long mask = 0b11;
+        for (long rank = 0; rank < EndgameTable.BINOMIAL[64][2];
+             rank += 1, mask = EndgameTable.next(mask)) {
+            assertEquals(rank, EndgameTable.index(mask, 0));
+        }
+        assertEquals(3, EndgameTable.MAX_PIECES);
+        try {
+            new EndgameSolver(EndgameTable.MAX_PIECES + 1);
+            fail("accepted a table too large to map");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+        EndgameSolver solver = new EndgameSolver(2);
+        solver.solve(new PrintStream(OutputStream.nullOutputStream()));
+        Path file = Files.createTempFile("loa", ".tbl");
+        try {
+            solver.write(file, true);
+            EndgameTable table = new EndgameTable(file);
+            assertEquals(2, table.maxPieces());
+            Random random = new Random(11);
+            for (int i = 0; i < 1000; i += 1) {
+                long mine = 0, theirs = 0;
+                while (Long.bitCount(mine) < 2) {
+                    mine |= 1L << random.nextInt(64);
+                }
+                while (Long.bitCount(theirs) < 2) {
+                    theirs |= ~mine & 1L << random.nextInt(64);
+                }
+                assertTrue(table.covers(mine, theirs));
+                assertEquals(solver.value(mine, theirs),
+                             table.value(mine, theirs));
+                assertEquals(solver.distance(mine, theirs),
+                             table.distance(mine, theirs));
+                Board board = new Board(new Position(mine, theirs, BP));
+                if (board.winner() == null) {
+                    assertEquals(board.hasWinningMove(BP),
+                                 table.value(mine, theirs)
+                                 == EndgameTable.WIN
+                                 && table.distance(mine, theirs) == 1);
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Check that a LearningCache keeps the deeper of two results, drops
+     *  its oldest entries, and reads back what it wrote. */
+    @Test
+    public void learningCacheTest() throws IOException {
+        Path file = Files.createTempFile("loa", ".learn");
+        Files.delete(file);
+        try {
+            Board board = new Board();
+            Move move = board.legalMoves().next();
+            LearningCache cache = new LearningCache(file, 2);
+            cache.put(1, 3, 0.5, move);
+            cache.gameEnded();
+            cache.put(2, 4, -0.25, move);
+            cache.put(3, 2, 1, move);
+            cache.put(3, 1, 0, move);
+            cache.flush();
+            LearningCache copy = new LearningCache(file, 2);
+            assertEquals(2, copy.size());
+            assertNull(copy.get(1));
+            assertEquals(4, copy.get(2).depth());
+            assertEquals(-0.25, copy.get(2).value(), 0);
+            assertEquals(move, copy.get(2).move(board));
+            assertEquals(2, copy.get(3).depth());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Check that players with different evaluation settings keep
+     *  separate entries in a shared learning cache. */
+    @Test
+    public void learningSettingsTest() throws IOException {
+        Path file = Files.createTempFile("loa", ".learn");
+        Files.delete(file);
+        LearningCache cache = null;
+        try {
+            Board board = new Board();
+            String[] settings = { "compact=1", "compact=2", "compact=1" };
+            int[] sizes = { 1, 2, 2 };
+            for (int k = 0; k < settings.length; k += 1) {
+                MachinePlayer player = new MachinePlayer(BP, null);
+                player.setOptions("depth=1,learn=" + file + ","
+                                  + settings[k]);
+                player.search(board);
+                cache = player.learningCache();
+                assertEquals(sizes[k], cache.size());
+            }
+        } finally {
+            if (cache != null) {
+                cache.close();
+            }
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Check that MachinePlayer.checkOptions accepts valid AI settings and
+     *  rejects invalid ones. */
+    @Test
+    public void checkOptionsTest() {
+        MachinePlayer.checkOptions("");
+        MachinePlayer.checkOptions("depth=3, eval=pattern,mobility=0.5");
+        String[] bad = { "depth=0", "eval=magic", "speed=1", "depth",
+                         "nodes=many", "weights=/no/such/file" };
+        for (String spec : bad) {
+            try {
+                MachinePlayer.checkOptions(spec);
+                fail("accepted " + spec);
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    /** Check that a spectator receives the current position, then moves
+     *  and new positions, and that one who does not read has its backlog
+     *  replaced by the current position. */
+    @Test
+    public void spectatorTest() throws IOException {
+        SpectatorServer server = new SpectatorServer(0);
+        server.start();
+        try (Socket client = new Socket()) {
+            client.setReceiveBufferSize(1024);
+            client.connect(new InetSocketAddress(
+                               InetAddress.getLoopbackAddress(),
+                               server.port()));
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(
+                                       client.getInputStream()));
+            Board board = new Board();
+            String initial = in.readLine();
+            assertEquals(position(board), initial);
+            Move move = board.legalMoves().next();
+            board.makeMove(move);
+            server.publish(board, move);
+            assertEquals("move 1 " + move, in.readLine());
+            Board fresh = new Board();
+            server.publish(fresh, null);
+            assertEquals(initial, in.readLine());
+
+            long deadline = System.currentTimeMillis() + 30000;
+            while (server.dropped() == 0
+                   && System.currentTimeMillis() < deadline) {
+                server.publish(board, move);
+            }
+            assertTrue(server.dropped() > 0);
+            server.publish(fresh, null);
+            int positions = 0;
+            for (String line = in.readLine(); !line.equals(initial);
+                 line = in.readLine()) {
+                if (line.startsWith("position ")) {
+                    assertEquals(position(board), line);
+                    positions += 1;
+                } else {
+                    assertEquals("move 1 " + move, line);
+                }
+            }
+            assertTrue(positions > 0);
+        } finally {
+            server.close();
+        }
+    }
+
+    /** Return the line with which a SpectatorServer announces the
+     *  position on BOARD. */
+    private static String position(Board board) {
+        Position p = board.snapshot();
+        return String.format("position %d %016x %016x %s", board.movesMade(),
+                             p.pieces(BP), p.pieces(WP), p.turn().abbrev());
+    }
+
+    /** Check that the sessions of a GameServer play separate games. */
+    @Test
+    public void gameServerTest() throws IOException {
+        ServerSocket listener =
+            new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            try {
+                new GameServer(0, 1).listen(listener);
+            } catch (IOException excp) {
+                /* Closed. */
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        try (Socket a = new Socket(
+                 listener.getInetAddress(), listener.getLocalPort());
+             Socket b = new Socket(
+                 listener.getInetAddress(), listener.getLocalPort())) {
+            PrintStream outA = new PrintStream(a.getOutputStream(), true);
+            PrintStream outB = new PrintStream(b.getOutputStream(), true);
+            BufferedReader inA =
+                new BufferedReader(new InputStreamReader(a.getInputStream()));
+            BufferedReader inB =
+                new BufferedReader(new InputStreamReader(b.getInputStream()));
+            Board changed = new Board();
+            changed.set(4, 4, BP);
+            changed.setTurn(WP);
+            outA.println("set d4 b");
+            outA.println("dump");
+            assertEquals(changed.toString(), readDump(inA));
+            outB.println("dump");
+            assertEquals(new Board().toString(), readDump(inB));
+            outB.println("start");
+            outB.println("b1-b3");
+            String line;
+            do {
+                line = inB.readLine();
+            } while (!line.contains("W::"));
+            outA.println("dump");
+            assertEquals(changed.toString(), readDump(inA));
+            outA.println("quit");
+            outB.println("quit");
+        } finally {
+            listener.close();
+        }
+    }
+
+    /** Return the next board printed by dump on IN, as in
+     *  Board.toString(), skipping any prompts. */
+    private static String readDump(BufferedReader in) throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+        } while (!line.endsWith("==="));
+        StringBuilder result = new StringBuilder("===");
+        do {
+            line = in.readLine();
+            result.append(System.lineSeparator()).append(line);
+        } while (!line.equals("==="));
+        return result.toString();
+    }
+
+    /** Check the Elo conversions and the SPRT statistic of Tournament,
+     *  and that results after the SPRT concludes are ignored. */
+    @Test
+    public void sprtTest() {
+        assertEquals(0.5, Tournament.expectedScore(0), 1e-12);
+        assertEquals(10.0 / 11, Tournament.expectedScore(400), 1e-12);
+        assertEquals(0, Tournament.elo(0.5), 1e-9);
+        assertEquals(-123.4,
+                     Tournament.elo(Tournament.expectedScore(-123.4)),
+                     1e-9);
+        Tournament match = new Tournament(100, 1, "", "", 0, 0);
+        match.setSprt(0, 10, 0.05, 0.05);
+        assertEquals(0, match.llr(), 0);
+        match.record(0);
+        match.record(1);
+        match.record(2);
+        double s1 = Tournament.expectedScore(10);
+        assertEquals(-9 * (s1 - 0.5) * (s1 - 0.5), match.llr(), 1e-12);
+        for (int k = 0; !match.decided(); k += 1) {
+            assertTrue(k < 10000);
+            match.record(k % 3 == 0 ? 1 : 2);
+        }
+        int[] results = match.results();
+        double llr = match.llr();
+        match.record(0);
+        assertArrayEquals(results, match.results());
+        assertEquals(llr, match.llr(), 0);
+    }
+
+    /** Check a tiny match between shallow engines. */
+    @Test
+    public void tournamentTest() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Tournament match =
+            new Tournament(2, 1, "depth=1", "depth=1", 2, 5);
+        match.run(new PrintStream(bytes, true));
+        int[] results = match.results();
+        assertEquals(2, results[0] + results[1] + results[2]);
+        assertTrue(bytes.toString().contains("games 2 "));
+    }
+
+    /** Check that position and go stop an infinite search. */
+    @Test
+    public void engineProtocolTest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        String commands = "go infinite\nposition startpos moves b1-b3\n"
+            + "go depth 1\nquit\n";
+        EngineProtocol protocol =
+            new EngineProtocol(new BufferedReader(
+                                   new StringReader(commands)), out);
+        protocol.run();
+        int bestmoves = 0;
+        for (String line : bytes.toString().split("\n")) {
+            assertFalse(line, line.startsWith("info string error"));
+            if (line.startsWith("bestmove ")) {
+                bestmoves += 1;
+            }
+        }
+        assertEquals(2, bestmoves);
+    }
+
     /** main method. */
     public static void main(String[] args) {
         System.exit(ucb.junit.textui.runClasses(UnitTest.class));
@@ -0,0 +1,161 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/** A set of named tables of integer weights for an evaluation function,
+ *  such as those produced by a tuner.  In a weights file, each table is
+ *  a name (which does not start with a digit or sign) followed by its
+ *  values, separated by white space; '#' begins a comment that extends
+ *  to the end of the line.  For example,
+ *  <pre>
+ *      # Piece-square table, row 1 first.
+ *      square
+ *        0  0  0  0  0  0  0  0
+ *        ...
+ *      mobility 3
+ *  </pre>
+ *  Each evaluation picks out the tables it uses by name and ignores the
+ *  rest, so one file may hold the weights of several.
+ *  @author JuKyung Choi
+ */
+class Weights {
+
+    /** An empty set of tables. */
+    Weights() {
+    }
+
+    /** Return the tables in FILE.  Throws IOException if it cannot be read
+     *  or is malformed. */
+    static Weights load(Path file) throws IOException {
+        try (Reader in = Files.newBufferedReader(file,
+                                                 StandardCharsets.UTF_8)) {
+            return read(in);
+        }
+    }
+
+    /** Return the tables read from IN. Throws IOException if it cannot be
+     *  read or is malformed. */
+    static Weights read(Reader in) throws IOException {
+        Weights result = new Weights();
+        BufferedReader lines = new BufferedReader(in);
+        String name = null;
+        int[] values = new int[0];
+        int count = 0;
+        int lineNumber = 0;
+        for (String line = lines.readLine(); line != null;
+             line = lines.readLine()) {
+            lineNumber += 1;
+            int hash = line.indexOf('#');
+            if (hash >= 0) {
+                line = line.substring(0, hash);
+            }
+            for (String token : line.trim().split("\\s+")) {
+                if (token.isEmpty()) {
+                    continue;
+                }
+                char first = token.charAt(0);
+                if (Character.isDigit(first) || first == '-'
+                    || first == '+') {
+                    if (name == null) {
+                        throw new IOException(String.format("line %d: value "
+                                                            + "before name",
+                                                            lineNumber));
+                    }
+                    if (count == values.length) {
+                        values = Arrays.copyOf(values, 2 * count + 1);
+                    }
+                    try {
+                        values[count] = Integer.parseInt(token);
+                    } catch (NumberFormatException excp) {
+                        throw new IOException(String.format("line %d: bad "
+                                                            + "value: %s",
+                                                            lineNumber,
+                                                            token));
+                    }
+                    count += 1;
+                } else {
+                    if (name != null) {
+                        result.put(name, Arrays.copyOf(values, count));
+                    }
+                    name = token;
+                    count = 0;
+                }
+            }
+        }
+        if (name != null) {
+            result.put(name, Arrays.copyOf(values, count));
+        }
+        return result;
+    }
+
+    /** Write me to FILE in the form read by load. */
+    void save(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file,
+                                                  StandardCharsets.UTF_8)) {
+            write(out);
+        }
+    }
+
+    /** Write me to OUT in the form read by read, each table's values
+     *  PER_LINE to a line. */
+    void write(Writer out) throws IOException {
+        BufferedWriter buffered = new BufferedWriter(out);
+        for (String name : _tables.keySet()) {
+            int[] values = _tables.get(name);
+            buffered.write(name);
+            for (int i = 0; i < values.length; i += 1) {
+                buffered.write(i % PER_LINE == 0 ? "\n   " : " ");
+                buffered.write(String.format("%4d", values[i]));
+            }
+            buffered.write("\n");
+        }
+        buffered.flush();
+    }
+
+    /** Return the table named NAME, or null if there is none. */
+    int[] get(String name) {
+        return _tables.get(name);
+    }
+
+    /** Return the table named NAME, which must have LENGTH values, or null
+     *  if there is none.  Throws IllegalArgumentException if it has the
+     *  wrong length. */
+    int[] get(String name, int length) {
+        int[] values = _tables.get(name);
+        if (values != null && values.length != length) {
+            throw new IllegalArgumentException(
+                String.format("table %s has %d values, not %d",
+                              name, values.length, length));
+        }
+        return values;
+    }
+
+    /** Make VALUES the table named NAME, replacing any existing one. */
+    void put(String name, int[] values) {
+        _tables.put(name, values);
+    }
+
+    /** Return the names of my tables, in the order first put. */
+    Set<String> names() {
+        return Collections.unmodifiableSet(_tables.keySet());
+    }
+
+    /** Number of values written on each line. */
+    private static final int PER_LINE = 8;
+
+    /** My tables, in the order first put. */
+    private final LinkedHashMap<String, int[]> _tables =
+        new LinkedHashMap<>();
+
+}